@@ -27,9 +27,9 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
-//import java.util.*;
+import java.util.*;
 
-public class Connection {
+public class Connection implements Copyable {
 	private GenericPatch gp;
 	private ModuleOutputJack sourceJack;
 	private ModuleInputJack targetJack;
@@ -81,4 +81,13 @@ public class Connection {
 		sb.append("</connection>");
 		return sb.toString();
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		Connection c = (Connection)super.clone();
+		copies.put(this, c);
+		c.gp = (GenericPatch)Util.copyOf(gp, copies);
+		c.sourceJack = (ModuleOutputJack)Util.copyOf(sourceJack, copies);
+		c.targetJack = (ModuleInputJack)Util.copyOf(targetJack, copies);
+		return c;
+	}
 }
@@ -0,0 +1,77 @@
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * The kinds of connection a synth's matrix mods can make, keyed by
+ * source module type and jack and by destination module type and jack
+ * prefix.  Each matrix mod adds its pairs once, so asking whether any
+ * matrix mod allows a connection type is a single lookup rather than a
+ * search of every matrix mod's jack lists.
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.util.*;
+
+class ConnectionTypeIndex {
+	private HashMap destTypes; // source key -> HashSet of dest keys
+
+	ConnectionTypeIndex(ArrayList matrixMods) {
+		destTypes = new HashMap();
+		for (int i = 0; i < matrixMods.size(); i++) {
+			((MatrixMod)matrixMods.get(i)).addAllowedModTypes(this);
+		}
+	}
+
+	/**
+	 * Record that a source module type and jack can connect to a
+	 * destination module type and jack prefix
+	 */
+	void add(String sourceModType, String sourceModJack, String destModType,
+			String destModJackPrefix) {
+		Long key = key(SymbolTable.intern(sourceModType), SymbolTable.intern(sourceModJack));
+		HashSet dests = (HashSet)destTypes.get(key);
+
+		if (dests == null) {
+			dests = new HashSet();
+			destTypes.put(key, dests);
+		}
+		dests.add(key(SymbolTable.intern(destModType), SymbolTable.intern(destModJackPrefix)));
+	}
+
+	/**
+	 * @return true if some matrix mod allows this type of connection, with
+	 * types, jack and prefix given as SymbolTable ids; see
+	 * MatrixMod.seeIfModTypeIsAllowed()
+	 */
+	boolean isAllowed(int sourceModType, int sourceModJack, int destModType,
+			int destModJackPrefix) {
+		HashSet dests = (HashSet)destTypes.get(key(sourceModType, sourceModJack));
+
+		if (dests == null) {
+			return false;
+		}
+		return dests.contains(key(destModType, destModJackPrefix));
+	}
+
+	private static Long key(int modType, int jack) {
+		return new Long(((long)modType << 32) | (jack & 0xffffffffL));
+	}
+}
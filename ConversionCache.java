@@ -0,0 +1,259 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * Cache of conversion results, so converting a dump which has been seen
+ * before (such as a factory bank uploaded again) skips the conversion.
+ * Results are keyed by a 64-bit hash of the input (the sysex bytes for
+ * toXML(), or the XML for toSysex()) and the class of the SynthPatch doing
+ * the conversion, so one cache can be shared by converters for different
+ * synths.  The channel byte of a sysex dump can be left out of its hash, in
+ * which case a dump which differs from an earlier one only by channel gets
+ * the earlier one's XML.
+ * <p>
+ * The most recently used results are kept in memory.  When there are more
+ * than that, the least recently used ones are written to a PatchStore
+ * spill file (if there is one), from which they're read back on a later
+ * hit.  close() writes the rest to the spill file too.
+ * <p>
+ * A cache can be shared between threads, as long as each thread converts
+ * with its own SynthPatch.  Conversions aren't done while holding the
+ * cache's lock, so two threads converting the same input at once may both
+ * miss.
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.io.*;
+import java.util.*;
+
+public class ConversionCache {
+	// FNV-1a hash; XML is hashed with a different starting value, so a
+	// sysex dump and XML can't share a key
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	private static final long XML_OFFSET = FNV_OFFSET ^ 0x584D4CL;
+	private LinkedHashMap entries; // Long hash -> String XML or byte[] sysex
+	private PatchStore spill;
+	private int channelOffset;
+	private long hits;
+	private long spillHits;
+	private long misses;
+
+	/**
+	 * @param maxEntries number of results kept in memory
+	 * @param spillPath path of spill files (see PatchStore), or null to
+	 * just drop results which don't fit in memory
+	 * @param pChannelOffset offset of sysex channel byte to leave out of
+	 * the hash, or -1 to hash every byte
+	 */
+	ConversionCache(final int maxEntries, String spillPath, int pChannelOffset)
+			throws IOException {
+		channelOffset = pChannelOffset;
+		if (spillPath != null) {
+			spill = new PatchStore(spillPath);
+		}
+		entries = new LinkedHashMap(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry e) {
+				if (size() <= maxEntries) {
+					return false;
+				}
+				spill((Long)e.getKey(), e.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * write the results still in memory to the spill file (if there is
+	 * one), and close it
+	 */
+	public synchronized void close() throws IOException {
+		if (spill != null) {
+			Iterator it = entries.entrySet().iterator();
+			Map.Entry e;
+			while (it.hasNext()) {
+				e = (Map.Entry)it.next();
+				spill((Long)e.getKey(), e.getValue());
+			}
+			spill.close();
+		}
+	}
+
+	/**
+	 * Convert a sysex dump to XML, as sp.fromSysex() and sp.toXML() do.
+	 * Only dumps which pass sp.isValid() are cached.  On a hit, sp isn't
+	 * used at all, so its sysex, generic patch and isValid() still describe
+	 * whatever it last converted; callers which need them must convert
+	 * with sp themselves.
+	 */
+	public String toXML(SynthPatch sp, byte syx[]) throws PatchDefinitionException {
+		if (sp.matchSysex(syx) == false) {
+			sp.fromSysex(syx); // to report it
+			return null;
+		}
+		Long key = key(sp, hash(syx, channelOffset));
+		String xml = (String)get(key, false);
+		if (xml == null) {
+			sp.fromSysex(syx);
+			xml = sp.toXML();
+			if (sp.isValid()) {
+				put(key, xml);
+			}
+		}
+		return xml;
+	}
+
+	/**
+	 * Convert XML to a sysex dump, as sp.fromXML() does.  Only XML which
+	 * converts to a patch passing sp.isValid() is cached.  On a hit, sp
+	 * isn't used at all (see toXML()).
+	 * @return sysex, or null if the XML couldn't be converted
+	 */
+	public byte[] toSysex(SynthPatch sp, String xml) throws PatchDefinitionException {
+		Long key = key(sp, hash(xml));
+		byte syx[] = (byte[])get(key, true);
+		if (syx == null) {
+			if (sp.fromXML(xml) == false || sp.getSysex() == null ||
+					sp.isValid() == false) {
+				return null;
+			}
+			syx = sp.getSysex().clone();
+			put(key, syx);
+		}
+		return syx.clone();
+	}
+
+	/**
+	 * @return number of lookups found in memory or the spill file
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of hits which were read from the spill file
+	 */
+	public synchronized long getSpillHits() {
+		return spillHits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return fraction of lookups which were hits
+	 */
+	public synchronized double getHitRate() {
+		if (hits + misses == 0) {
+			return 0;
+		}
+		return (double)hits / (hits + misses);
+	}
+
+	/**
+	 * look for a result in memory, then in the spill file
+	 */
+	private synchronized Object get(Long key, boolean isSysex) {
+		Object o = entries.get(key);
+		if (o == null && spill != null) {
+			int rec = spill.find(Long.toHexString(key.longValue()), null, null);
+			if (rec != -1) {
+				try {
+					if (isSysex) {
+						o = spill.getSysex(rec);
+					} else {
+						o = spill.getSourceXML(rec);
+					}
+				} catch (IOException e) {
+					e.printStackTrace(System.err);
+				}
+				if (o != null) {
+					spillHits++;
+					entries.put(key, o);
+				}
+			}
+		}
+		if (o == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return o;
+	}
+
+	private synchronized void put(Long key, Object value) {
+		entries.put(key, value);
+	}
+
+	/**
+	 * write a result evicted from memory to the spill file, unless it's
+	 * there already
+	 */
+	private void spill(Long key, Object value) {
+		String name = Long.toHexString(key.longValue());
+		if (spill == null || spill.find(name, null, null) != -1) {
+			return;
+		}
+		try {
+			if (value instanceof String) {
+				spill.add(name, null, null, null, (String)value, null);
+			} else {
+				spill.add(name, null, null, (byte[])value, null, null);
+			}
+		} catch (IOException e) {
+			e.printStackTrace(System.err);
+		}
+	}
+
+	/**
+	 * mix the class of sp into hash h of the input
+	 */
+	private static Long key(SynthPatch sp, long h) {
+		String type = sp.getClass().getName();
+		for (int i = 0; i < type.length(); i++) {
+			h = (h ^ type.charAt(i)) * FNV_PRIME;
+		}
+		return new Long(h);
+	}
+
+	/**
+	 * @param skip offset of byte to leave out, or -1
+	 */
+	static long hash(byte b[], int skip) {
+		long h = FNV_OFFSET;
+		for (int i = 0; i < b.length; i++) {
+			if (i != skip) {
+				h = (h ^ (b[i] & 0xFF)) * FNV_PRIME;
+			}
+		}
+		return h;
+	}
+
+	static long hash(String s) {
+		long h = XML_OFFSET;
+		for (int i = 0; i < s.length(); i++) {
+			h = (h ^ s.charAt(i)) * FNV_PRIME;
+		}
+		return h;
+	}
+}
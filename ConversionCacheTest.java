@@ -0,0 +1,190 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * JUnit tests for ConversionCache
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.io.*;
+import java.util.*;
+import junit.framework.*;
+
+public class ConversionCacheTest extends TestCase {
+	private File dir;
+	private String path;
+
+	public ConversionCacheTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(ConversionCacheTest.class);
+	}
+
+	protected void setUp() throws IOException {
+		dir = File.createTempFile("cache", "");
+		dir.delete();
+		dir.mkdir();
+		path = new File(dir, "spill").getPath();
+	}
+
+	protected void tearDown() {
+		new File(path + ".dat").delete();
+		new File(path + ".idx").delete();
+		dir.delete();
+	}
+
+	private byte[] program(int resonance) throws PatchDefinitionException {
+		NordLead2Prog nl2 = NordLead2Prog.newPatch();
+		nl2.fromSysex(NordLead2Prog.INIT_SYSEX);
+		nl2.findPgmParm("Resonance").setValue(resonance);
+		nl2.toSysex();
+		return nl2.getSysex().clone();
+	}
+
+	public void testToXML() throws IOException, PatchDefinitionException {
+		ConversionCache cc = new ConversionCache(10, null, -1);
+		NordLead2Prog nl2 = NordLead2Prog.newPatch();
+		byte syx[] = program(5);
+		String xml = cc.toXML(nl2, syx);
+		NordLead2Prog nl2b = NordLead2Prog.newPatch();
+		nl2b.fromSysex(syx);
+		assertEquals(nl2b.toXML(), xml);
+		assertEquals(0, cc.getHits());
+		assertEquals(1, cc.getMisses());
+		assertSame(xml, cc.toXML(NordLead2Prog.newPatch(), syx));
+		assertEquals(1, cc.getHits());
+		assertEquals(0.5, cc.getHitRate(), 0.0001);
+		cc.toXML(NordLead2Prog.newPatch(), program(6));
+		assertEquals(2, cc.getMisses());
+		cc.close();
+	}
+
+	public void testChannel() throws IOException, PatchDefinitionException {
+		byte syx[] = program(5);
+		byte syx2[] = syx.clone();
+		syx2[NordLead2Prog.CHANNEL_OFFSET] = 3;
+		ConversionCache cc = new ConversionCache(10, null, -1);
+		cc.toXML(NordLead2Prog.newPatch(), syx);
+		cc.toXML(NordLead2Prog.newPatch(), syx2);
+		assertEquals(0, cc.getHits());
+		cc = new ConversionCache(10, null, NordLead2Prog.CHANNEL_OFFSET);
+		cc.toXML(NordLead2Prog.newPatch(), syx);
+		cc.toXML(NordLead2Prog.newPatch(), syx2);
+		assertEquals(1, cc.getHits());
+	}
+
+	public void testToSysex() throws IOException, PatchDefinitionException {
+		ConversionCache cc = new ConversionCache(10, null, -1);
+		byte syx[] = program(7);
+		String xml = cc.toXML(NordLead2Prog.newPatch(), syx);
+		byte syx2[] = cc.toSysex(NordLead2Prog.newPatch(), xml);
+		assertTrue(Arrays.equals(syx, syx2));
+		assertEquals(2, cc.getMisses());
+		syx2[10] = 0; // caller's copy
+		assertTrue(Arrays.equals(syx, cc.toSysex(NordLead2Prog.newPatch(), xml)));
+		assertEquals(1, cc.getHits());
+	}
+
+	public void testFailedConversion() throws IOException, PatchDefinitionException {
+		ConversionCache cc = new ConversionCache(10, null, -1);
+		byte syx[] = program(8);
+
+		// XML which can't be converted mustn't return or cache the sysex
+		// of the patch the converter did before
+		NordLead2Prog nl2 = NordLead2Prog.newPatch();
+		String xml = cc.toXML(nl2, syx);
+		assertNotNull(cc.toSysex(nl2, xml));
+		assertNull(cc.toSysex(nl2, "<garbage/>"));
+		assertNull(cc.toSysex(NordLead2Prog.newPatch(), "<garbage/>"));
+		assertEquals(0, cc.getHits());
+
+		// a dump which fails validation isn't cached, so the next
+		// conversion of it is a miss and gets cached
+		cc = new ConversionCache(10, null, -1);
+		final boolean valid[] = { false };
+		NordLead2Prog checked = new NordLead2Prog() {
+			public boolean isValid() {
+				return valid[0];
+			}
+		};
+		assertEquals(xml, cc.toXML(checked, syx));
+		valid[0] = true;
+		checked.reset();
+		assertEquals(xml, cc.toXML(checked, syx));
+		assertEquals(0, cc.getHits());
+		assertEquals(xml, cc.toXML(checked, syx));
+		assertEquals(1, cc.getHits());
+	}
+
+	public void testPatchType() throws IOException, PatchDefinitionException {
+		ConversionCache cc = new ConversionCache(10, null, -1);
+		byte syx[] = program(9);
+		String xml = cc.toXML(NordLead2Prog.newPatch(), syx);
+		NordLead2Prog other = new NordLead2Prog() {
+			public String toXML() {
+				return "<other/>";
+			}
+		};
+		assertEquals("<other/>", cc.toXML(other, syx));
+		assertEquals(0, cc.getHits());
+		assertEquals(xml, cc.toXML(NordLead2Prog.newPatch(), syx));
+		assertEquals(1, cc.getHits());
+	}
+
+	public void testSpill() throws IOException, PatchDefinitionException {
+		ConversionCache cc = new ConversionCache(2, path, -1);
+		String xml[] = new String[5];
+		for (int i = 0; i < xml.length; i++) {
+			xml[i] = cc.toXML(NordLead2Prog.newPatch(), program(i));
+		}
+		assertEquals(0, cc.getHits());
+		for (int i = 0; i < xml.length; i++) {
+			assertEquals(xml[i], cc.toXML(NordLead2Prog.newPatch(), program(i)));
+		}
+		assertEquals(5, cc.getHits());
+		assertTrue(cc.getSpillHits() >= 3);
+		cc.close();
+
+		// results spilled to disk are still there next time
+		cc = new ConversionCache(2, path, -1);
+		assertEquals(xml[0], cc.toXML(NordLead2Prog.newPatch(), program(0)));
+		assertEquals(1, cc.getSpillHits());
+		cc.close();
+	}
+
+	public void testCloseWritesEntries() throws IOException, PatchDefinitionException {
+		ConversionCache cc = new ConversionCache(10, path, -1);
+		String xml = cc.toXML(NordLead2Prog.newPatch(), program(3));
+		byte syx[] = cc.toSysex(NordLead2Prog.newPatch(), xml);
+		cc.close();
+
+		// nothing was evicted, but close() saved both results
+		cc = new ConversionCache(10, path, -1);
+		assertEquals(xml, cc.toXML(NordLead2Prog.newPatch(), program(3)));
+		assertTrue(Arrays.equals(syx, cc.toSysex(NordLead2Prog.newPatch(), xml)));
+		assertEquals(2, cc.getSpillHits());
+		assertEquals(0, cc.getMisses());
+		cc.close();
+	}
+}
@@ -0,0 +1,39 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package PatchConversion;
+
+/**
+ * Object which can be copied as part of a patch definition graph.  The
+ * copy map holds the copy already made of each object, so objects which
+ * are referenced from several places (a parm used by a translator and by
+ * an XML tag, a jack and its connection, etc) are copied only once and
+ * the copied graph has the same shape as the original.  Immutable
+ * objects such as validators and sysex parm locations are shared rather
+ * than copied.
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.util.*;
+
+interface Copyable extends Cloneable {
+	Object copy(IdentityHashMap copies) throws CloneNotSupportedException;
+}
@@ -33,9 +33,10 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.io.*;
 import java.util.*;
 
-public class GenericPatch {
+public class GenericPatch implements Copyable {
 	private String patchName = "No Name";
 	private String patchNumber;
 	private String patchBank;
@@ -44,14 +45,42 @@ public class GenericPatch {
 	private String synthGenericVersion;
 	private ArrayList modules; // oscillators, filters, etc which make up a patch
 	private ArrayList connections; // all connections between modules
+	private int nextModuleId; // see Module.getId()
+	// kept between findJacksAndModulesUsed() calls
+	private BitSet modulesVisited;
+	private ModuleJack usageStack[];
+	// lower-case module name -> Integer index in modules, built by
+	// findModuleIndex() when null
+	private volatile HashMap moduleIndex;
+	// connection types our matrix mods allow, built by
+	// seeIfMatrixModTypeIsAllowed() when null
+	private volatile ConnectionTypeIndex matrixModTypes;
 	private ArrayList matrixMods; // allowable matrix modulations (if applicable)
 	private GenericPatch inputGP;
+	// state saved by saveState(), see SynthPatchAbstract.reset()
+	private String savedPatchName;
+	private String savedPatchNumber;
+	private String savedPatchBank;
+	private String savedPatchComment;
+	private ArrayList savedModules;
+	private ArrayList savedConnections;
+	private int savedNextModuleId;
+	// module match plans by input topology; shared by copies, see convertXML().
+	// Only the most recently used MAX_MATCH_PLANS are kept.
+	private static final int MAX_MATCH_PLANS = 1000;
+	private LinkedHashMap matchPlans;
+	private int matchThreads = 1; // threads trying trial matches, see setMatchThreads()
 
 	GenericPatch(String s) {
 		synthGenericVersion = s;
 		modules = new ArrayList();
 		connections = new ArrayList();
 		matrixMods = new ArrayList();
+		matchPlans = new LinkedHashMap(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry e) {
+				return size() > MAX_MATCH_PLANS;
+			}
+		};
 	}
 
 	/**
@@ -115,13 +144,28 @@ public class GenericPatch {
 	}
 
 	public void readInfoXML(String xml) {
-		String s = XMLReader.getTagValue(xml, "patch_name");
+		readInfoXML(new XMLTagIndex(xml), -1);
+	}
+
+	/**
+	 * read patch name, etc from element number within of an XML index
+	 */
+	void readInfoXML(XMLTagIndex index, int within) {
+		String s = getInfoValue(index, "patch_name", within);
 		if (s != null) {
 			setPatchName(s);
 		}
-		setPatchNumber(XMLReader.getTagValue(xml, "patch_number"));
-		setPatchBank(XMLReader.getTagValue(xml, "patch_bank"));
-		setPatchComment(XMLReader.getTagValue(xml, "patch_comment"));
+		setPatchNumber(getInfoValue(index, "patch_number", within));
+		setPatchBank(getInfoValue(index, "patch_bank", within));
+		setPatchComment(getInfoValue(index, "patch_comment", within));
+	}
+
+	private String getInfoValue(XMLTagIndex index, String name, int within) {
+		int e = index.find(name, within);
+		if (e == -1) {
+			return null;
+		}
+		return index.getText(e);
 	}
 
 	public ArrayList getModules() {
@@ -141,18 +185,39 @@ public class GenericPatch {
 	}
 
 	public void addModule(Module mod) {
+		HashMap index = moduleIndex;
+		String key;
+
 		modules.add(mod);
 		mod.setGp(this);
+		mod.setId(nextModuleId++);
+		if (index != null) {
+			key = mod.getName().toLowerCase();
+			if (index.containsKey(key) == false) {
+				index.put(key, new Integer(modules.size() - 1));
+			}
+		}
 	}
 
 	public void addModule(int i, Module mod) {
 		modules.add(i, mod);
 		mod.setGp(this);
+		mod.setId(nextModuleId++);
+		moduleIndex = null; // later modules have moved
 	}
 
 	public void removeModule(Module mod) {
 		modules.remove(mod);
 		mod.setGp(null);
+		moduleIndex = null; // later modules have moved
+	}
+
+	/**
+	 * Called when a module is renamed, so findModuleIndex() will rebuild
+	 * its name index
+	 */
+	void clearModuleIndex() {
+		moduleIndex = null;
 	}
 
 	public void addConnection(Connection conn) {
@@ -186,6 +251,7 @@ public class GenericPatch {
 	public void addMatrixMod(MatrixMod mm) {
 		matrixMods.add(mm);
 		mm.setGp(this);
+		matrixModTypes = null;
 	}
 
 	public boolean addConnectionIfNotFound(String sourceModName, String sourceMjName,
@@ -222,6 +288,126 @@ public class GenericPatch {
 		return true;
 	}
 
+	/**
+	 * Save the current modules, connections and matrix mod state, so
+	 * restoreState() can undo whatever converting a patch did to them
+	 */
+	void saveState() {
+		int i;
+		savedPatchName = patchName;
+		savedPatchNumber = patchNumber;
+		savedPatchBank = patchBank;
+		savedPatchComment = patchComment;
+		savedModules = new ArrayList(modules);
+		savedConnections = new ArrayList(connections);
+		savedNextModuleId = nextModuleId;
+		for (i = 0; i < modules.size(); i++) {
+			((Module)modules.get(i)).saveState();
+		}
+		for (i = 0; i < matrixMods.size(); i++) {
+			((MatrixMod)matrixMods.get(i)).saveState();
+		}
+	}
+
+	void restoreState() {
+		int i;
+		patchName = savedPatchName;
+		patchNumber = savedPatchNumber;
+		patchBank = savedPatchBank;
+		patchComment = savedPatchComment;
+		inputGP = null; // only built while reading a generic patch
+		Util.restoreList(modules, savedModules);
+		Util.restoreList(connections, savedConnections);
+		nextModuleId = savedNextModuleId;
+		moduleIndex = null;
+		for (i = 0; i < modules.size(); i++) {
+			((Module)modules.get(i)).setGp(this);
+			((Module)modules.get(i)).restoreState();
+		}
+		for (i = 0; i < connections.size(); i++) {
+			((Connection)connections.get(i)).setGp(this);
+		}
+		for (i = 0; i < matrixMods.size(); i++) {
+			((MatrixMod)matrixMods.get(i)).restoreState();
+		}
+	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		GenericPatch gp = (GenericPatch)super.clone();
+		copies.put(this, gp);
+		gp.modules = Util.copyList(modules, copies);
+		gp.connections = Util.copyList(connections, copies);
+		gp.moduleIndex = null;
+		gp.modulesVisited = null;
+		gp.usageStack = null;
+		gp.matrixMods = Util.copyList(matrixMods, copies);
+		gp.inputGP = (GenericPatch)Util.copyOf(inputGP, copies);
+		gp.savedModules = Util.copyList(savedModules, copies);
+		gp.savedConnections = Util.copyList(savedConnections, copies);
+		return gp;
+	}
+
+	/**
+	 * Describes the modules, jacks, parms and connections of this patch,
+	 * ignoring parm values.  Patches with equal signatures get the same
+	 * module matches in convertXML().
+	 */
+	String topologySignature() {
+		StringBuffer sb = new StringBuffer();
+		Module mod;
+		ModuleInputJack mij;
+		Connection conn;
+		int i, j;
+
+		for (i = 0; i < modules.size(); i++) {
+			mod = (Module)modules.get(i);
+			sb.append(mod.getType()).append('\0').append(mod.getName());
+			for (j = 0; j < mod.getParms().size(); j++) {
+				sb.append("\0p").append(((ModuleParm)mod.getParms().get(j)).getName());
+			}
+			for (j = 0; j < mod.getInputJacks().size(); j++) {
+				mij = (ModuleInputJack)mod.getInputJacks().get(j);
+				sb.append("\0i").append(mij.getName()).append('\0').append(mij.getType());
+				if (mij.getAttenuator() != null) {
+					sb.append("\0a").append(mij.getAttenuator().getName());
+				}
+				conn = findConnectionToTarget(mij);
+				if (conn != null) {
+					sb.append("\0c").append(modules.indexOf(conn.getSourceJack().getMod()));
+					sb.append('\0').append(conn.getSourceJack().getName());
+				}
+			}
+			for (j = 0; j < mod.getOutputJacks().size(); j++) {
+				sb.append("\0o").append(((ModuleOutputJack)mod.getOutputJacks().get(j)).getName());
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	public int getMatchThreads() {
+		return matchThreads;
+	}
+
+	/**
+	 * With more than one thread, trial module matches are tried at the same
+	 * time.  The threads share this patch, which trials don't change; each
+	 * trial records the matrix mod routes it needs in its own TrialRoutes,
+	 * and only the winning trial's routes are applied.  The match found is
+	 * the same as with one thread.
+	 */
+	public void setMatchThreads(int threads) {
+		matchThreads = Math.max(1, threads);
+	}
+
+	/**
+	 * @param withValues false for a fingerprint of the wiring alone
+	 * @see PatchFingerprint
+	 */
+	public PatchFingerprint getFingerprint(boolean withValues) throws PatchDefinitionException {
+		return new PatchFingerprint(this, withValues);
+	}
+
 	/**
 	 * see if input XML contains this type of patch
 	 */
@@ -237,30 +423,35 @@ public class GenericPatch {
 	 * convert patch internal variables to XML
 	 */
 	public String writeXML() throws PatchDefinitionException {
-		int i;
-		StringBuffer sb = new StringBuffer();
+		StringWriter sw = new StringWriter();
+		try {
+			writeXML(new XMLWriter(sw));
+		} catch (IOException e) {
+			e.printStackTrace(System.err); // can't happen with StringWriter
+		}
+		return sw.toString();
+	}
 
+	public void writeXML(XMLWriter xw) throws PatchDefinitionException, IOException {
 		reduceModNumbers();
 
-		sb.append("<generic_patch>");
-		sb.append("<version>" + version + "</version>");
-		sb.append("<synth_generic_version>" + synthGenericVersion + "</synth_generic_version>");
-		sb.append("<patch_name>" + patchName + "</patch_name>");
+		xw.startTag("generic_patch");
+		xw.element("version", version);
+		xw.element("synth_generic_version", synthGenericVersion);
+		xw.element("patch_name", patchName);
 		if (patchNumber != null) {
-			sb.append("<patch_number>" + patchNumber + "</patch_number>");
+			xw.element("patch_number", patchNumber);
 		}
 		if (patchBank != null) {
-			sb.append("<patch_bank>" + patchBank + "</patch_bank>");
+			xw.element("patch_bank", patchBank);
 		}
 		if (patchComment != null) {
-			sb.append("<patch_comment>" + patchComment + "</patch_comment>");
+			xw.element("patch_comment", patchComment);
 		}
-		for (i = 0; i < modules.size(); i++) {
-			sb.append(((Module)modules.get(i)).writeXML());
+		for (int i = 0; i < modules.size(); i++) {
+			((Module)modules.get(i)).writeXML(xw);
 		}
-		sb.append("</generic_patch>");
-
-		return sb.toString();
+		xw.endTag("generic_patch");
 	}
 
 	/**
@@ -290,7 +481,7 @@ public class GenericPatch {
 			// type compare is not necessary)
 			for (j = i, num = 0; j < modules.size(); j++) {
 				mod2 = (Module)modules.get(j);
-				if (mod2.getUsed() == 3 && mod2.getType().equalsIgnoreCase(mod.getType())) {
+				if (mod2.getUsed() == 3 && mod2.getTypeId() == mod.getTypeId()) {
 					num++;
 					if (mod2.getNumber() != num) {
 						mod2.setNumber(num);
@@ -335,7 +526,7 @@ public class GenericPatch {
 				for (j = i, num = 0; j < mod.getInputJacks().size(); j++) {
 					mij2 = (ModuleInputJack)mod.getInputJacks().get(j);
 					if (mij2.isUsed() && mij2.getNumber() > 0 &&
-							mij2.getPrefix().equalsIgnoreCase(prefix)) {
+							mij2.getPrefixId() == mij.getPrefixId()) {
 						num++;
 						oldNum = mij2.getNumber();
 						mij2.setNumber(num);
@@ -360,40 +551,51 @@ public class GenericPatch {
 
 		// Read XML into temp patch structure of modules/jacks/connections
 		inputGP = new GenericPatch(synthGenericVersion);
-		String tag[], sourceModule, sourceJack, targetModule, targetJack;
+		String s, sourceModule, sourceJack, targetModule, targetJack;
 		Module mod;
 		Connection conn;
-		XMLReader xr = new XMLReader(XMLReader.getTagValue(xml, "generic_patch"));
-		while ((tag = xr.getNextTag()) != null) {
-			if (tag[0].equalsIgnoreCase("version")) {
-				if (tag[1].equalsIgnoreCase(version) == false) {
+		XMLPullParser xp = XMLPullParser.forElement(xml, "generic_patch");
+		while (xp != null && xp.next() == XMLPullParser.START_TAG) {
+			if (xp.isName("version")) {
+				s = xp.readText();
+				if (s.equalsIgnoreCase(version) == false) {
 					System.out.println("Warning: Expected generic patch version " +
-							version + ", input is " + tag[1]);
+							version + ", input is " + s);
 				}
-			} else if (tag[0].equalsIgnoreCase("synth_generic_version")) {
+			} else if (xp.isName("synth_generic_version")) {
+				xp.skip();
 				// FIXME can't test for this, can we?  differs by synth
 //				if (tag[1].equalsIgnoreCase(synthGenericVersion) == false) {
 //					System.out.println("Warning: Expected synth generic version " +
 //							synthGenericVersion + ", input is " + tag[1]);
 //				}
-			} else if (tag[0].equalsIgnoreCase("patch_name")) {
-				patchName = tag[1];
-			} else if (tag[0].equalsIgnoreCase("patch_number")) {
-				patchNumber = tag[1];
-			} else if (tag[0].equalsIgnoreCase("patch_bank")) {
-				patchBank = tag[1];
-			} else if (tag[0].equalsIgnoreCase("patch_comment")) {
-				patchComment = tag[1];
-			} else if (tag[0].equalsIgnoreCase("module")) {
-				mod = new Module(tag[1]);
+			} else if (xp.isName("patch_name")) {
+				patchName = xp.readText();
+			} else if (xp.isName("patch_number")) {
+				patchNumber = xp.readText();
+			} else if (xp.isName("patch_bank")) {
+				patchBank = xp.readText();
+			} else if (xp.isName("patch_comment")) {
+				patchComment = xp.readText();
+			} else if (xp.isName("module")) {
+				mod = new Module(xp);
 				mod.setUsed(3);
 				inputGP.addModule(mod);
 			} else {
-				System.out.println("Error: unknown tag " + tag[0]);
+				System.out.println("Error: unknown tag " + xp.getName());
 				return false;
 			}
 		}
 
+		buildInputConnections();
+		return true;
+	}
+
+	/**
+	 * connect input patch modules the way their input jacks say
+	 */
+	private void buildInputConnections() throws PatchDefinitionException {
+		Module mod;
 		for (int i = 0; i < inputGP.getModules().size(); i++) {
 			mod = (Module)inputGP.getModules().get(i);
 			for (int j = 0; j < mod.getInputJacks().size(); j++) {
@@ -401,7 +603,89 @@ public class GenericPatch {
 				inputGP.addConnection(mij.buildConnection());
 			}
 		}
+	}
+
+	/**
+	 * convert patch internal variables to the binary format (see
+	 * PatchBinaryWriter), which holds the same things as writeXML()
+	 */
+	public byte[] toBinary() throws PatchDefinitionException {
+		ByteArrayOutputStream bo = new ByteArrayOutputStream();
+		try {
+			writeBinary(bo);
+		} catch (IOException e) {
+			e.printStackTrace(System.err); // can't happen with ByteArrayOutputStream
+		}
+		return bo.toByteArray();
+	}
+
+	public void writeBinary(OutputStream out) throws PatchDefinitionException, IOException {
+		reduceModNumbers();
+
+		PatchBinaryWriter pw = new PatchBinaryWriter(out);
+		pw.writeString(version);
+		pw.writeString(synthGenericVersion);
+		pw.writeString(patchName);
+		pw.writeString(patchNumber);
+		pw.writeString(patchBank);
+		pw.writeString(patchComment);
+		for (int i = 0; i < modules.size(); i++) {
+			((Module)modules.get(i)).writeBinary(pw);
+		}
+		pw.writeKind(PatchBinaryWriter.END);
+		pw.flush();
+	}
+
+	/**
+	 * read binary patch into internal variables, the same way readXML()
+	 * does; convertXML() then converts it
+	 */
+	public boolean readBinary(byte b[]) throws PatchDefinitionException {
+		try {
+			return readBinary(new ByteArrayInputStream(b));
+		} catch (IOException e) {
+			System.out.println("Error: binary generic patch is truncated");
+			return false;
+		}
+	}
 
+	public boolean readBinary(InputStream in) throws PatchDefinitionException, IOException {
+		PatchBinaryReader pr = new PatchBinaryReader(in);
+		String s;
+		Module mod;
+		int kind;
+
+		inputGP = new GenericPatch(synthGenericVersion);
+		s = pr.readString();
+		if (version.equalsIgnoreCase(s) == false) {
+			System.out.println("Warning: Expected generic patch version " +
+					version + ", input is " + s);
+		}
+		pr.readString(); // synth generic version, see readXML()
+		// as with XML, info which wasn't written is left alone
+		if ((s = pr.readString()) != null) {
+			patchName = s;
+		}
+		if ((s = pr.readString()) != null) {
+			patchNumber = s;
+		}
+		if ((s = pr.readString()) != null) {
+			patchBank = s;
+		}
+		if ((s = pr.readString()) != null) {
+			patchComment = s;
+		}
+		while ((kind = pr.readKind()) == PatchBinaryWriter.MODULE) {
+			mod = new Module(pr);
+			mod.setUsed(3);
+			inputGP.addModule(mod);
+		}
+		if (kind != PatchBinaryWriter.END) {
+			System.out.println("Error: unknown record " + kind + " in binary generic patch");
+			return false;
+		}
+
+		buildInputConnections();
 		return true;
 	}
 
@@ -409,12 +693,105 @@ public class GenericPatch {
 	 * convert input XML into our generic patch
 	 */
 	public boolean convertXML() throws PatchDefinitionException {
+		ModMatchData md;
+		Module mod, ourMod;
+		ModuleParm mp, ourMp;
+		ModuleInputJack mij, ourMij;
+		ModuleOutputJack moj, ourMoj;
+		Iterator e;
+		int i;
+
+		// A patch wired the same way as one converted earlier gets the same
+		// module matches, so reuse them rather than searching again
+		String signature = inputGP.topologySignature();
+		HashMap finalMatch = null;
+		int plan[];
+		synchronized (matchPlans) {
+			plan = (int[])matchPlans.get(signature);
+		}
+		if (plan != null) {
+			if (plan.length == 0) {
+				System.out.println("Error: cannot implement the input generic patch");
+				return false;
+			}
+			finalMatch = finalModuleMatch(plan);
+		}
+		if (finalMatch == null || finalMatch.size() == 0) {
+			finalMatch = searchModuleMatch();
+			plan = new int[(finalMatch.size() == 0) ? 0 : inputGP.getModules().size()];
+			for (i = 0; i < plan.length; i++) {
+				md = (ModMatchData)finalMatch.get(inputGP.getModules().get(i));
+				plan[i] = modules.indexOf(md.getMod());
+			}
+			synchronized (matchPlans) {
+				matchPlans.put(signature, plan);
+			}
+			if (finalMatch.size() == 0) {
+				return false;
+			}
+		}
+
+		// Definite matches have been selected, so copy parm values from input
+		// to our generic patch and mark our matching jacks and parms used.
+		e = inputGP.moduleIterator();
+		while (e.hasNext()) {
+			mod = (Module)e.next();
+			md = (ModMatchData)finalMatch.get(mod);
+			ourMod = md.getMod();
+			// FIXME temporary kludge copy process
+			ourMod.setUsed(3);
+			for (i = 0; i < mod.getParms().size(); i++) {
+				mp = (ModuleParm)mod.getParms().get(i);
+				ourMp = (ModuleParm)md.getParmMatches().get(i);
+				if (ourMp.getPv().validateParm(mp.getValue()) == false) {
+					System.out.println("warning: Module " + ourMod.getName() + " parm " +
+							ourMp.getName() + " cannot accept value " + mp.getValue());
+				} else {
+					ourMp.setValue(mp.getValue());
+				}
+				ourMp.setUsed(true);
+				if (mp.getMorph() != null && mp.getMorph().isUsed()) {
+					if (ourMp.getMorph() == null) {
+						System.out.println("warning: Can't create morph for module " +
+								ourMod.getName() + " parm " + ourMp.getName());
+					} else {
+						ourMp.getMorph().setValue(mp.getMorph().getValue());
+						ourMp.getMorph().setUsed(true);
+					}
+				}
+			}
+			for (i = 0; i < mod.getInputJacks().size(); i++) {
+				mij = (ModuleInputJack)mod.getInputJacks().get(i);
+				ourMij = (ModuleInputJack)md.getInputJackMatches().get(i);
+				ourMij.setUsed(true);
+			}
+			for (i = 0; i < mod.getOutputJacks().size(); i++) {
+				moj = (ModuleOutputJack)mod.getOutputJacks().get(i);
+				ourMoj = (ModuleOutputJack)md.getOutputJackMatches().get(i);
+				ourMoj.setUsed(true);
+			}
+		}
+
+		setPatchName(inputGP.getPatchName());
+		setPatchNumber(inputGP.getPatchNumber());
+		setPatchBank(inputGP.getPatchBank());
+		setPatchComment(inputGP.getPatchComment());
 
+		return true;
+	}
+
+	/**
+	 * Find the modules, parms and jacks of ours which match each input
+	 * module, trying each combination of possible matches in turn
+	 * @return map from input module to its ModMatchData, or empty map if
+	 * there's no match
+	 */
+	HashMap searchModuleMatch() throws PatchDefinitionException {
 		// Compare module by module, to see if all input modules can
 		// be duplicated by this synth
 		HashMap modMatchLists = initialModuleMatch();
 		if (modMatchLists.size() == 0) {
-			return false;
+			return modMatchLists;
 		}
 
 		ModMatchData md;
@@ -424,7 +801,7 @@ public class GenericPatch {
 		ModuleOutputJack moj, ourMoj;
 		ArrayList modMatches, a;
 		Iterator e;
-		int i, j, k, num;
+		int i, j, k;
 		int debug = 0;
 		if (debug == 1) {
 			System.out.println("=================================================");
@@ -471,59 +848,11 @@ public class GenericPatch {
 		HashMap finalMatch = finalModuleMatch(modMatchLists);
 		if (finalMatch.size() == 0) {
 			System.out.println("Error: cannot implement the input generic patch");
-			return false;
 		}
-
-		// Definite matches have been selected, so copy parm values from input
-		// to our generic patch and mark our matching jacks and parms used.
-		boolean found;
-		e = inputGP.moduleIterator();
-		while (e.hasNext()) {
-			mod = (Module)e.next();
-			md = (ModMatchData)finalMatch.get(mod);
-			ourMod = md.getMod();
-			// FIXME temporary kludge copy process
-			ourMod.setUsed(3);
-			for (i = 0; i < mod.getParms().size(); i++) {
-				mp = (ModuleParm)mod.getParms().get(i);
-				ourMp = (ModuleParm)md.getParmMatches().get(i);
-				if (ourMp.getPv().validateParm(mp.getValue()) == false) {
-					System.out.println("warning: Module " + ourMod.getName() + " parm " +
-							ourMp.getName() + " cannot accept value " + mp.getValue());
-				} else {
-					ourMp.setValue(mp.getValue());
-				}
-				ourMp.setUsed(true);
-				if (mp.getMorph() != null && mp.getMorph().isUsed()) {
-					if (ourMp.getMorph() == null) {
-						System.out.println("warning: Can't create morph for module " +
-								ourMod.getName() + " parm " + ourMp.getName());
-					} else {
-						ourMp.getMorph().setValue(mp.getMorph().getValue());
-						ourMp.getMorph().setUsed(true);
-					}
-				}
-			}
-			for (i = 0; i < mod.getInputJacks().size(); i++) {
-				mij = (ModuleInputJack)mod.getInputJacks().get(i);
-				ourMij = (ModuleInputJack)md.getInputJackMatches().get(i);
-				ourMij.setUsed(true);
-			}
-			for (i = 0; i < mod.getOutputJacks().size(); i++) {
-				moj = (ModuleOutputJack)mod.getOutputJacks().get(i);
-				ourMoj = (ModuleOutputJack)md.getOutputJackMatches().get(i);
-				ourMoj.setUsed(true);
-			}
-		}
-
-		setPatchName(inputGP.getPatchName());
-		setPatchNumber(inputGP.getPatchNumber());
-		setPatchBank(inputGP.getPatchBank());
-		setPatchComment(inputGP.getPatchComment());
-
-		return true;
+		return finalMatch;
 	}
 
+
 	/**
 	 * Prepare lists of our potential matching modules for each of the
 	 * modules in the input generic patch
@@ -571,23 +900,14 @@ public class GenericPatch {
 	 */
 	ArrayList initialMatchToOurModules(Module mod) {
 		ArrayList modMatches = new ArrayList(), errorList, modErrorList = new ArrayList();
+		ModMatchData md;
 		Module ourMod;
-		ModuleParm mp, ourMp;
-		ModuleOutputJack moj, ourMoj, matchJack;
-		ModuleInputJack mij, ourMij;
-		Connection conn;
-		MatrixMod mm;
-		ArrayList parmMatches, inputJackMatches, outputJackMatches;
-		ArrayList parms, inputJacks, outputJacks;
-		boolean found;
-		int i, j;
-		Iterator e, e2;
-		GenericPatch inputGP = mod.getGp();
+		Iterator e;
 
 		e = moduleIterator();
 		while (e.hasNext()) {
 			ourMod = (Module)e.next();
-			if (ourMod.getType().equalsIgnoreCase(mod.getType()) == false) {
+			if (ourMod.getTypeId() != mod.getTypeId()) {
 				continue;
 			}
 			// FIXME added to prevent counter-intuitive match; is there a better way?
@@ -596,119 +916,144 @@ public class GenericPatch {
 				continue;
 			}
 			errorList = new ArrayList();
+			md = initialMatchToOurModule(mod, ourMod, errorList);
+			if (md != null) {
+				modMatches.add(md);
+			} else {
+				modErrorList.add("Could not match input module " + mod.getName() +
+						" to our module " + ourMod.getName());
+				modErrorList.addAll(errorList);
+			}
+		}
+		if (modMatches.size() == 0) {
+			System.out.println(modErrorList);
+		}
+		return modMatches;
+	}
 
-			// compare each output jack
-			outputJackMatches = new ArrayList();
-			for (i = 0; i < mod.getOutputJacks().size(); i++) {
-				moj = (ModuleOutputJack)mod.getOutputJacks().get(i);
-				matchJack = null;
-				ourMoj = ourMod.findOutputJack(moj.getName());
-				if (ourMoj == null) {
-					errorList.add("Module " + mod.getName() + " unable to match output jack " +
-							moj.getName());
-				} else {
-					// only match if our module's output is connected to
-					// same type of module and input jack with same prefix
-					found = true;
-					e2 = inputGP.connectionTargetIterator(moj);
-					while (e2.hasNext()) {
-						conn = (Connection)e2.next();
-						if (findConnectionToSameType(ourMoj.getMod().getName(),
-								ourMoj.getName(),
-								conn.getTargetJack().getMod().getType(),
-								conn.getTargetJack().getPrefix()) == false) {
-							found = false;
-							errorList.add("Module " + mod.getName() + " unable to match connection of output jack " +
-									moj.getName() + " to " + conn.getTargetJack().getMod().getType() +
-									" " + conn.getTargetJack().getPrefix());
-						}
-					}
-					if (found) {
-						matchJack = ourMoj;
+	/**
+	 * Compares one module from the input generic patch with one of ours,
+	 * making lists of potential matches for each jack and parm.
+	 * 
+	 * @param mod
+	 * @param ourMod
+	 * @param errorList reasons for a mismatch are added here
+	 * @return match data, or null if ourMod can't stand in for mod
+	 */
+	ModMatchData initialMatchToOurModule(Module mod, Module ourMod, ArrayList errorList) {
+		ModuleParm mp, ourMp;
+		ModuleOutputJack moj, ourMoj, matchJack;
+		ModuleInputJack mij, ourMij;
+		Connection conn;
+		MatrixMod mm;
+		ArrayList parmMatches, inputJackMatches, outputJackMatches;
+		ArrayList parms, inputJacks;
+		boolean found;
+		int i, j, errors = errorList.size();
+		Iterator e2;
+		GenericPatch inputGP = mod.getGp();
+
+		// compare each output jack
+		outputJackMatches = new ArrayList();
+		for (i = 0; i < mod.getOutputJacks().size(); i++) {
+			moj = (ModuleOutputJack)mod.getOutputJacks().get(i);
+			matchJack = null;
+			ourMoj = ourMod.findOutputJack(moj.getName());
+			if (ourMoj == null) {
+				errorList.add("Module " + mod.getName() + " unable to match output jack " +
+						moj.getName());
+			} else {
+				// only match if our module's output is connected to
+				// same type of module and input jack with same prefix
+				found = true;
+				e2 = inputGP.connectionTargetIterator(moj);
+				while (e2.hasNext()) {
+					conn = (Connection)e2.next();
+					if (findConnectionToSameType(ourMoj,
+							conn.getTargetJack().getMod().getTypeId(),
+							conn.getTargetJack().getPrefixId()) == false) {
+						found = false;
+						errorList.add("Module " + mod.getName() + " unable to match connection of output jack " +
+								moj.getName() + " to " + conn.getTargetJack().getMod().getType() +
+								" " + conn.getTargetJack().getPrefix());
 					}
 				}
-				outputJackMatches.add(matchJack);
+				if (found) {
+					matchJack = ourMoj;
+				}
 			}
+			outputJackMatches.add(matchJack);
+		}
 
-			// compare each input jack
-			inputJackMatches = new ArrayList();
-			for (i = 0; i < mod.getInputJacks().size(); i++) {
-				mij = (ModuleInputJack)mod.getInputJacks().get(i);
-				conn = inputGP.findConnectionToTarget(mij);
-				inputJacks = new ArrayList();
-				for (j = 0; j < ourMod.getInputJacks().size(); j++) {
-					ourMij = (ModuleInputJack)ourMod.getInputJacks().get(j);
-					if (ourMij.getPrefix().equalsIgnoreCase(mij.getPrefix())) {
-						if ((mij.getAttenuator() != null && ourMij.getAttenuator() != null) ||
-								(mij.getAttenuator() == null && ourMij.getAttenuator() == null)) {
-							if (findConnectionFromSameType(conn.getSourceJack().getMod().getType(),
-									conn.getSourceJack().getPrefix(),
-									ourMij.getMod().getName(),
-									ourMij.getName())) {
-								inputJacks.add(ourMij);
-							}
+		// compare each input jack
+		inputJackMatches = new ArrayList();
+		for (i = 0; i < mod.getInputJacks().size(); i++) {
+			mij = (ModuleInputJack)mod.getInputJacks().get(i);
+			conn = inputGP.findConnectionToTarget(mij);
+			inputJacks = new ArrayList();
+			for (j = 0; j < ourMod.getInputJacks().size(); j++) {
+				ourMij = (ModuleInputJack)ourMod.getInputJacks().get(j);
+				if (ourMij.getPrefixId() == mij.getPrefixId()) {
+					if ((mij.getAttenuator() != null && ourMij.getAttenuator() != null) ||
+							(mij.getAttenuator() == null && ourMij.getAttenuator() == null)) {
+						if (findConnectionFromSameType(conn.getSourceJack().getMod().getTypeId(),
+								conn.getSourceJack().getPrefixId(), ourMij)) {
+							inputJacks.add(ourMij);
 						}
 					}
 				}
-				if (inputJacks.size() == 0) {
-					for (j = 0; j < matrixMods.size(); j++) {
-						mm = (MatrixMod)matrixMods.get(j);
-						if (mm.seeIfJackCanBeAdded(conn.getSourceJack().getMod().getType(),
-								conn.getSourceJack().getPrefix(),
-								ourMod.getName(),
-								mij.getPrefix())) {
-							break;
-						}
-					}
-					if (j >= matrixMods.size()) {
-						errorList.add("Module " + mod.getName() + " unable to match input jack " +
-								mij.getName());
+			}
+			if (inputJacks.size() == 0) {
+				for (j = 0; j < matrixMods.size(); j++) {
+					mm = (MatrixMod)matrixMods.get(j);
+					if (mm.seeIfJackCanBeAdded(conn.getSourceJack().getMod().getType(),
+							conn.getSourceJack().getPrefix(),
+							ourMod.getName(),
+							mij.getPrefix())) {
+						break;
 					}
 				}
-				inputJackMatches.add(inputJacks);
+				if (j >= matrixMods.size()) {
+					errorList.add("Module " + mod.getName() + " unable to match input jack " +
+							mij.getName());
+				}
 			}
-
-			// compare each input parm
-			parmMatches = new ArrayList();
-			for (i = 0; i < mod.getParms().size(); i++) {
-				mp = (ModuleParm)mod.getParms().get(i);
-				parms = new ArrayList();
-				for (j = 0; j < ourMod.getParms().size(); j++) {
-					ourMp = (ModuleParm)ourMod.getParms().get(j);
-					// FIXME compare parm range here too?  If so, range match
-					// would be required.  As it is, match can occur even if
-					// value is out of range.
-					if (ourMp.getPrefix().equalsIgnoreCase(mp.getPrefix())) {
-						parms.add(ourMp);
-					}
+			inputJackMatches.add(inputJacks);
+		}
+
+		// compare each input parm
+		parmMatches = new ArrayList();
+		for (i = 0; i < mod.getParms().size(); i++) {
+			mp = (ModuleParm)mod.getParms().get(i);
+			parms = new ArrayList();
+			for (j = 0; j < ourMod.getParms().size(); j++) {
+				ourMp = (ModuleParm)ourMod.getParms().get(j);
+				// FIXME compare parm range here too?  If so, range match
+				// would be required.  As it is, match can occur even if
+				// value is out of range.
+				if (ourMp.getPrefixId() == mp.getPrefixId()) {
+					parms.add(ourMp);
 				}
-				if (parms.size() == 0) {
-					for (j = 0; j < matrixMods.size(); j++) {
-						mm = (MatrixMod)matrixMods.get(j);
-						if (mm.seeIfParmCanBeAdded(mp.getPrefix())) {
-							break;
-						}
-					}
-					if (j >= matrixMods.size()) {
-						errorList.add("Module " + mod.getName() + " unable to match parm " +
-								mp.getName());
+			}
+			if (parms.size() == 0) {
+				for (j = 0; j < matrixMods.size(); j++) {
+					mm = (MatrixMod)matrixMods.get(j);
+					if (mm.seeIfParmCanBeAdded(mp.getPrefix())) {
+						break;
 					}
 				}
-				parmMatches.add(parms);
-			}
-			if (errorList.size() == 0) {
-				modMatches.add(new ModMatchData(ourMod, parmMatches, inputJackMatches,
-						outputJackMatches));
-			} else {
-				modErrorList.add("Could not match input module " + mod.getName() +
-						" to our module " + ourMod.getName());
-				modErrorList.addAll(errorList);
+				if (j >= matrixMods.size()) {
+					errorList.add("Module " + mod.getName() + " unable to match parm " +
+							mp.getName());
+				}
 			}
+			parmMatches.add(parms);
 		}
-		if (modMatches.size() == 0) {
-			System.out.println(modErrorList);
+		if (errorList.size() > errors) {
+			return null;
 		}
-		return modMatches;
+		return new ModMatchData(ourMod, parmMatches, inputJackMatches,
+				outputJackMatches);
 	}
 
 	/**
@@ -719,23 +1064,23 @@ public class GenericPatch {
 	 * @return
 	 */
 	HashMap finalModuleMatch(HashMap modMatchLists) throws PatchDefinitionException {
-		Module mod, mod2, ourMod;
-		ModuleParm mp, ourMp;
-		ModuleOutputJack moj, ourMoj = null;
-		ModuleInputJack mij, ourMij;
-		MatrixMod mm;
-		ArrayList modMatches, trialMatch, a, errorList = new ArrayList(), unmatchedConns;
-		ModMatchData md, md2, mdNew;
-		Connection conn;
-		Object o;
+		ArrayList trialMatch, errorList = new ArrayList();
+		HashMap finalMatch;
+		TrialRoutes routes;
+		ModMatchData md;
 		Iterator e;
-		int i, j, k, indx, cnt = 0;
-		boolean found;
+		int i, cnt = 0;
 		StringBuffer sb;
 
 		// For each permutation of matching modules, see if all connections
 		// are possible.  Return the first complete match.
-		e = new ModulePermutationIterator(inputGP, modMatchLists);
+		for (i = 0; i < matrixMods.size(); i++) {
+			((MatrixMod)matrixMods.get(i)).removeCurrentMod();
+		}
+		e = new ModuleMatchSearch(inputGP, modMatchLists);
+		if (matchThreads > 1) {
+			return finalModuleMatchParallel(e);
+		}
 		while (e.hasNext()) {
 			trialMatch = (ArrayList)e.next();
 			cnt++;
@@ -747,39 +1092,271 @@ public class GenericPatch {
 			sb.append("/");
 			errorList.add(sb.toString());
 
-			for (i = 0; i < matrixMods.size(); i++) {
-				((MatrixMod)matrixMods.get(i)).removeCurrentMod();
+			routes = new TrialRoutes(matrixMods);
+			finalMatch = finalMatchTrial(trialMatch, routes, errorList);
+			if (finalMatch != null) {
+				routes.apply();
+				return finalMatch;
 			}
+		}
+
+		if (cnt == 0) {
+			System.out.println("Error: cannot match one or more input modules");
+		} else {
+			System.out.println(errorList);
+		}
+		return new HashMap(); // No match found, return empty match list
+	}
+
+	/**
+	 * Tries trial matches from the search on several threads at once, using
+	 * threads from WorkerPool rather than starting new ones.  Trials don't
+	 * change this patch, so the threads can share it.  Trials are handed out
+	 * in order, and once one succeeds no later ones are started and any
+	 * later ones still running are abandoned, so the lowest numbered
+	 * successful trial is found just as it would be by trying them one at a
+	 * time.  Its matrix mod routes are then applied.
+	 * 
+	 * @return the final match, or empty map if none
+	 */
+	HashMap finalModuleMatchParallel(Iterator search) throws PatchDefinitionException {
+		TrialMatcher matchers[] = new TrialMatcher[matchThreads];
+		TrialQueue queue = new TrialQueue(search);
+		ArrayList errorList;
+		int i;
 
-			HashMap finalMatch = new HashMap();
-			HashMap alreadyMatchedList = new HashMap();
+		for (i = 0; i < matchers.length; i++) {
+			matchers[i] = new TrialMatcher(queue);
+		}
+		try {
+			WorkerPool.run(matchers);
+		} catch (InterruptedException e) {
+			throw new PatchDefinitionException("interrupted while matching modules");
+		}
+		queue.rethrowFailure();
 
-			// Try to use all hard-wired connections before resorting to using
-			// the limited number of matrix mods
-			unmatchedConns = finalMatchHardWired(trialMatch, finalMatch, alreadyMatchedList, errorList);
+		if (queue.bestMatch != null) {
+			queue.bestRoutes.apply();
+			return queue.bestMatch;
+		}
+		if (queue.trials.size() == 0) {
+			System.out.println("Error: cannot match one or more input modules");
+		} else {
+			errorList = new ArrayList();
+			for (i = 0; i < queue.errorLists.size(); i++) {
+				if (queue.errorLists.get(i) != null) {
+					errorList.addAll((ArrayList)queue.errorLists.get(i));
+				}
+			}
+			System.out.println(errorList);
+		}
+		return new HashMap();
+	}
 
-// FIXME not ready yet
-//			finalMatchCheckMMSourceGroups(finalMatch, alreadyMatchedList, unmatchedConns);
+	/**
+	 * Hands out trial matches from the search, numbered from 0, and keeps
+	 * the results
+	 */
+	class TrialQueue {
+		private Iterator search;
+		private ArrayList trials = new ArrayList();
+		private ArrayList errorLists = new ArrayList();
+		private int best = Integer.MAX_VALUE; // lowest successful trial
+		private HashMap bestMatch;
+		private TrialRoutes bestRoutes;
+		private int failed = Integer.MAX_VALUE; // lowest trial which threw
+		private Exception failure;
+
+		TrialQueue(Iterator pSearch) {
+			search = pSearch;
+		}
+
+		/**
+		 * @return number of the next trial to try, or -1 if there are no
+		 * more which could beat the best found so far
+		 */
+		synchronized int nextTrial() {
+			if (trials.size() >= best || failure != null || search.hasNext() == false) {
+				return -1;
+			}
+			trials.add(search.next());
+			errorLists.add(null);
+			return trials.size() - 1;
+		}
 
-			finalMatchMultiDestMods(trialMatch, finalMatch, alreadyMatchedList, errorList);
+		synchronized ArrayList getTrial(int i) {
+			return (ArrayList)trials.get(i);
+		}
 
-			found = finalMatchSingleDestModsAndParms(trialMatch, finalMatch, alreadyMatchedList, errorList);
+		/**
+		 * @return true if an earlier trial than i has succeeded, so trial i
+		 * can be abandoned
+		 */
+		synchronized boolean beaten(int i) {
+			return best < i;
+		}
 
-			// FIXME - may still use multi-dest mod route as single route
-			//  if its extra connection is to unused jack (e.g. PWM when
-			//  osc waveform is saw)
+		synchronized void trialDone(int i, HashMap finalMatch, TrialRoutes routes,
+				ArrayList errorList) {
+			errorLists.set(i, errorList);
+			if (finalMatch != null && i < best) {
+				best = i;
+				bestMatch = finalMatch;
+				bestRoutes = routes;
+			}
+		}
 
-			if (found) {
-				return finalMatch;
+		/**
+		 * Record an exception thrown while trying trial i (or while getting
+		 * the next trial, if i is -1); no more trials are handed out
+		 */
+		synchronized void trialFailed(int i, Exception e) {
+			if (failure == null || i < failed) {
+				failed = i;
+				failure = e;
 			}
 		}
 
-		if (cnt == 0) {
-			System.out.println("Error: cannot match one or more input modules");
-		} else {
-			System.out.println(errorList);
+		/**
+		 * Throw the exception from the lowest failed trial, if it came
+		 * before the best match, as a single thread would have
+		 */
+		void rethrowFailure() throws PatchDefinitionException {
+			if (failure == null || failed > best) {
+				return;
+			}
+			if (failure instanceof PatchDefinitionException) {
+				throw (PatchDefinitionException)failure;
+			}
+			throw (RuntimeException)failure;
 		}
-		return new HashMap(); // No match found, return empty match list
+	}
+
+	/**
+	 * Tries trial matches until none are left
+	 */
+	class TrialMatcher implements Runnable {
+		private TrialQueue queue;
+
+		TrialMatcher(TrialQueue pQueue) {
+			queue = pQueue;
+		}
+
+		public void run() {
+			ArrayList trialMatch, errorList;
+			TrialRoutes routes;
+			StringBuffer sb;
+			int i = -1, j;
+
+			try {
+				while ((i = queue.nextTrial()) != -1) {
+					trialMatch = queue.getTrial(i);
+					sb = new StringBuffer("Trial match " + (i + 1) + " ");
+					for (j = 0; j < trialMatch.size(); j++) {
+						sb.append("/" + ((ModMatchData)trialMatch.get(j)).getMod().getName());
+					}
+					sb.append("/");
+					errorList = new ArrayList();
+					errorList.add(sb.toString());
+					routes = new TrialRoutes(matrixMods);
+					queue.trialDone(i, finalMatchTrial(trialMatch, routes, errorList, queue, i),
+							routes, errorList);
+					i = -1;
+				}
+			} catch (PatchDefinitionException e) {
+				queue.trialFailed(i, e);
+			} catch (RuntimeException e) {
+				// rethrown by finalModuleMatchParallel(), rather than just
+				// ending this thread and losing the trial
+				queue.trialFailed(i, e);
+			}
+		}
+	}
+
+	/**
+	 * Tries the single grouping of matches given by a plan saved from an
+	 * earlier conversion of a patch with the same topology.
+	 * 
+	 * @param plan index in our module list of the match for each input module
+	 * @return final match, or empty map if the plan no longer works
+	 */
+	HashMap finalModuleMatch(int plan[]) throws PatchDefinitionException {
+		ArrayList trialMatch = new ArrayList(), errorList = new ArrayList();
+		ModMatchData md;
+		Module mod;
+		HashMap finalMatch;
+		TrialRoutes routes;
+		int i;
+
+		for (i = 0; i < plan.length; i++) {
+			mod = (Module)inputGP.getModules().get(i);
+			md = initialMatchToOurModule(mod, (Module)modules.get(plan[i]), errorList);
+			if (md == null) {
+				return new HashMap();
+			}
+			trialMatch.add(md);
+		}
+		routes = new TrialRoutes(matrixMods);
+		finalMatch = finalMatchTrial(trialMatch, routes, errorList);
+		if (finalMatch == null) {
+			return new HashMap();
+		}
+		routes.apply();
+		return finalMatch;
+	}
+
+	/**
+	 * See if all connections are possible for one grouping of matching
+	 * modules.  Nothing in this patch is changed; matrix mod routes needed
+	 * are recorded in routes, to be applied if this match is chosen.
+	 * 
+	 * @param trialMatch
+	 * @param routes
+	 * @param errorList
+	 * @return the final match, or null if this grouping doesn't work
+	 */
+	HashMap finalMatchTrial(ArrayList trialMatch, TrialRoutes routes, ArrayList errorList)
+			throws PatchDefinitionException {
+		return finalMatchTrial(trialMatch, routes, errorList, null, -1);
+	}
+
+	/**
+	 * Same as finalMatchTrial(trialMatch, routes, errorList), but gives up
+	 * between steps if queue has a successful trial numbered lower than
+	 * trial
+	 * @return final match, or null if none or abandoned
+	 */
+	HashMap finalMatchTrial(ArrayList trialMatch, TrialRoutes routes, ArrayList errorList,
+			TrialQueue queue, int trial) throws PatchDefinitionException {
+		ArrayList unmatchedConns;
+
+		HashMap finalMatch = new HashMap();
+		HashMap alreadyMatchedList = new HashMap();
+
+		// Try to use all hard-wired connections before resorting to using
+		// the limited number of matrix mods
+		unmatchedConns = finalMatchHardWired(trialMatch, finalMatch, alreadyMatchedList, errorList);
+		if (queue != null && queue.beaten(trial)) {
+			return null;
+		}
+
+// FIXME not ready yet
+//		finalMatchCheckMMSourceGroups(finalMatch, alreadyMatchedList, unmatchedConns);
+
+		finalMatchMultiDestMods(trialMatch, finalMatch, alreadyMatchedList, routes, errorList);
+		if (queue != null && queue.beaten(trial)) {
+			return null;
+		}
+
+		// FIXME - may still use multi-dest mod route as single route
+		//  if its extra connection is to unused jack (e.g. PWM when
+		//  osc waveform is saw)
+
+		if (finalMatchSingleDestModsAndParms(trialMatch, finalMatch, alreadyMatchedList, routes,
+				errorList)) {
+			return finalMatch;
+		}
+		return null;
 	}
 
 	/**
@@ -817,7 +1394,7 @@ public class GenericPatch {
 					if (alreadyMatched.containsKey(ourMij)) {
 						continue;
 					}
-					if (ourMij.getPrefix().equalsIgnoreCase(mij.getPrefix())) {
+					if (ourMij.getPrefixId() == mij.getPrefixId()) {
 						// Find source module which is connected to input patch's input jack
 						conn = inputGP.findConnectionToTarget(mij);
 						mod2 = conn.getSourceJack().getMod();
@@ -915,11 +1492,10 @@ public class GenericPatch {
 	 * LFO affects both Osc1's and Osc2's Pulse Width).
 	 */
 	public void finalMatchMultiDestMods(ArrayList trialMatch, HashMap finalMatch,
-			HashMap alreadyMatchedList, ArrayList errorList) throws PatchDefinitionException {
+			HashMap alreadyMatchedList, TrialRoutes routes, ArrayList errorList) {
 		Module mod, mod2, ourMod;
 		ModuleParm mp, ourMp;
 		ModuleOutputJack moj, ourMoj = null;
-		MatrixMod mm;
 		ModMatchData md, md2, mdNew;
 		Connection conn;
 		int i, j, k, indx;
@@ -967,9 +1543,8 @@ public class GenericPatch {
 						// FIXME get our source mod & jack; get our dest mods
 						ModuleInputJack ourMijs[];
 						for (k = 0; k < matrixMods.size(); k++) {
-							mm = (MatrixMod)matrixMods.get(k);
-							ourMijs = mm.createMultiDestMod(ourMod.getName(), conn.getSourceJack().getName(),
-									ourModNames, mij2.getPrefix());
+							ourMijs = routes.createMultiDestMod(k, ourMod.getName(),
+									conn.getSourceJack().getName(), ourModNames, mij2.getPrefix());
 							if (ourMijs != null) {
 								for (int k2 = 0; k2 < ourMijs.length; k2++) {
 									indx = inTargetMj[k2].getMod().getInputJacks().indexOf(inTargetMj[k2]);
@@ -1006,12 +1581,11 @@ public class GenericPatch {
 	 * for each module.
 	 */
 	public boolean finalMatchSingleDestModsAndParms(ArrayList trialMatch, HashMap finalMatch,
-			HashMap alreadyMatchedList, ArrayList errorList) throws PatchDefinitionException {
+			HashMap alreadyMatchedList, TrialRoutes routes, ArrayList errorList) {
 		Module mod, mod2, ourMod;
 		ModuleParm mp, ourMp;
 		ModuleOutputJack moj, ourMoj = null;
 		ModuleInputJack mij, ourMij;
-		MatrixMod mm;
 		ModMatchData md, md2, mdNew;
 		Connection conn;
 		ArrayList a;
@@ -1042,9 +1616,8 @@ public class GenericPatch {
 				md2 = (ModMatchData)trialMatch.get(indx);
 				ourMod = md2.getMod(); // get our matching source module
 				for (k = 0; k < matrixMods.size(); k++) {
-					mm = (MatrixMod)matrixMods.get(k);
-					ourMij = mm.createSingleDestMod(ourMod.getName(), conn.getSourceJack().getName(),
-							mdNew.getMod().getName(), mij.getPrefix());
+					ourMij = routes.createSingleDestMod(k, ourMod.getName(),
+							conn.getSourceJack().getName(), mdNew.getMod().getName(), mij.getPrefix());
 					if (ourMij != null) {
 						mdNew.getInputJackMatches().set(j, ourMij);
 						alreadyMatched.put(ourMij, null);
@@ -1100,38 +1673,87 @@ public class GenericPatch {
 		return found;
 	}
 
-	public class ModulePermutationIterator implements Iterator {
-		private ArrayList trialMatchChoices;
-		private int multipleChoices[];
-		private int numChoices;
+	/**
+	 * Steps through groupings of potential matches in the same order as
+	 * trying every combination would, but skips groupings which can't work.
+	 * Input modules are assigned one at a time; after each assignment the
+	 * choices left for the remaining modules are cut down to those which
+	 * don't reuse one of our modules and can still make every connection
+	 * with the modules already chosen (forward checking).  A module left
+	 * with a single choice is treated as assigned right away, since every
+	 * grouping must use that choice, so conflicts show up before the
+	 * modules ahead of it are tried.
+	 * <p>
+	 * A connection can be made if one of the candidate jacks is hard-wired
+	 * to our matching source module, or some matrix mod has a route for it.
+	 * This doesn't count matrix mods in use, so a grouping returned may still
+	 * fail; one which is skipped never works.  Must be created with the
+	 * matrix mods' routes removed, as they are at the start of each trial.
+	 */
+	public class ModuleMatchSearch implements Iterator {
+		private int numMods;
+		private ModMatchData choices[][]; // potential matches for each input module
+		private int connSource[]; // index of source module of each input connection
+		private int connTarget[];
+		private boolean connOK[][][]; // [conn][source choice][target choice]
+		private ArrayList connsFrom[]; // connection indexes for each source module
+		private ArrayList connsTo[];
+		private int prunedAt[][]; // level at which a choice was removed, or 0
+		private int forcedAt[]; // level at which a single choice was applied, or 0
 		private int curChoice[];
 		private int indx;
 		private ArrayList trialMatch;
 
-		public ModulePermutationIterator(GenericPatch inputGP, HashMap modMatchLists) {
-			Module mod, ourMod;
+		public ModuleMatchSearch(GenericPatch inputGP, HashMap modMatchLists) {
+			Module mod;
+			ModuleInputJack mij;
+			Connection conn;
 			ArrayList modMatches;
-			ModMatchData md;
-			int i, j;
-
-			// Build list of possible choices.  For input modules which only have
-			// a single matching module, store that match; for modules with two
-			// or more possible matches, store the list of matches.
-			trialMatchChoices = new ArrayList();
-			multipleChoices = new int[inputGP.getModules().size()];
-			for (i = 0, numChoices = 0; i < inputGP.getModules().size(); i++) {
+			int i, j, k;
+
+			numMods = inputGP.getModules().size();
+			choices = new ModMatchData[numMods][];
+			prunedAt = new int[numMods][];
+			forcedAt = new int[numMods];
+			curChoice = new int[numMods];
+			connsFrom = new ArrayList[numMods];
+			connsTo = new ArrayList[numMods];
+			for (i = 0; i < numMods; i++) {
 				mod = (Module)inputGP.getModules().get(i);
 				modMatches = (ArrayList)modMatchLists.get(mod);
-				if (modMatches.size() == 1) {
-					trialMatchChoices.add(modMatches.get(0));
-				} else {
-					trialMatchChoices.add(modMatches);
-					multipleChoices[numChoices++] = i;
-				}
+				choices[i] = (ModMatchData[])modMatches.toArray(new ModMatchData[modMatches.size()]);
+				prunedAt[i] = new int[choices[i].length];
+				curChoice[i] = -1;
+				connsFrom[i] = new ArrayList();
+				connsTo[i] = new ArrayList();
 			}
-			if (numChoices > 0) {
-				curChoice = new int[numChoices];
-				curChoice[0] = -1;
+
+			connSource = new int[inputGP.getConnections().size()];
+			connTarget = new int[connSource.length];
+			connOK = new boolean[connSource.length][][];
+			for (i = 0; i < connSource.length; i++) {
+				conn = (Connection)inputGP.getConnections().get(i);
+				mij = conn.getTargetJack();
+				connSource[i] = inputGP.getModules().indexOf(conn.getSourceJack().getMod());
+				connTarget[i] = inputGP.getModules().indexOf(mij.getMod());
+				connsFrom[connSource[i]].add(new Integer(i));
+				connsTo[connTarget[i]].add(new Integer(i));
+				connOK[i] = new boolean[choices[connSource[i]].length][choices[connTarget[i]].length];
+				for (j = 0; j < choices[connSource[i]].length; j++) {
+					for (k = 0; k < choices[connTarget[i]].length; k++) {
+						connOK[i][j][k] = seeIfConnectionCanBeMade(conn,
+								choices[connSource[i]][j].getMod(), choices[connTarget[i]][k],
+								mij.getMod().getInputJacks().indexOf(mij));
+					}
+				}
+				// a module connected to itself rules out its own choices
+				if (connSource[i] == connTarget[i]) {
+					for (j = 0; j < choices[connSource[i]].length; j++) {
+						if (connOK[i][j][j] == false) {
+							prunedAt[connSource[i]][j] = -1;
+						}
+					}
+				}
 			}
 			indx = 0;
 			nextTrialMatch();
@@ -1160,166 +1782,280 @@ public class GenericPatch {
 		}
 
 		private void nextTrialMatch() {
-			// Step thru combinations, returning next usable permutation
-			ModMatchData md;
-			Module mod;
-			HashMap modsChosen;
-			Object o;
-			int i, j;
-			modsChosen = new HashMap();
+			int i, k;
+
 			trialMatch = new ArrayList();
-			// Build list of modules for which there is only one possible match
-			// (no need to iterate through a list for them).
-			for (i = 0; i < trialMatchChoices.size(); i++) {
-				o = trialMatchChoices.get(i);
-				if (o.getClass() == ModMatchData.class) {
-					md = (ModMatchData)o;
-					if (modsChosen.containsKey(md.getMod())) {
-						// If one of our modules has been matched to more than
-						// one input module, this is not a valid match
-						System.out.println("Warning: attempted to match our module " +
-								md.getMod().getName() + " to two different input modules at once");
-						trialMatch = new ArrayList();
+			if (numMods == 0) {
+				return;
+			}
+			if (indx == numMods) {
+				indx--; // step past the grouping returned last time
+			}
+			while (indx >= 0) {
+				restore(indx + 1);
+				for (k = curChoice[indx] + 1; k < choices[indx].length; k++) {
+					if (prunedAt[indx][k] == 0) {
+						break;
+					}
+				}
+				if (k >= choices[indx].length) {
+					curChoice[indx] = -1;
+					indx--;
+					continue;
+				}
+				curChoice[indx] = k;
+				if (forwardCheck(indx, k, indx + 1)) {
+					indx++;
+					if (indx == numMods) {
+						for (i = 0; i < numMods; i++) {
+							trialMatch.add(choices[i][curChoice[i]]);
+						}
 						return;
 					}
-					modsChosen.put(md.getMod(), null);
-					trialMatch.add(o);
-				} else {
-					trialMatch.add(null); // placeholder value
+					curChoice[indx] = -1;
 				}
 			}
-			// If there's only one possible match for all modules, return that
-			// match the first time and then indicate there are no more permutations
-			if (numChoices == 0) {
-				if (indx == 0) {
-					indx = 1;
-				} else {
-					trialMatch = new ArrayList();
-				}
-				return;
+		}
+
+		/**
+		 * Remove the remaining choices which conflict with choice k for
+		 * module m, then do the same for any module left with one choice
+		 * @return false if some module has no choices left
+		 */
+		private boolean forwardCheck(int m, int k, int level) {
+			int i, j, remaining, last;
+
+			if (prune(m, k, level) == false) {
+				return false;
 			}
-			outer: while (true) {
-				modsChosen = new HashMap();
-				for (i = 0; i < indx; i++) {
-					md = (ModMatchData)((ArrayList)trialMatchChoices.get(multipleChoices[i])).get(curChoice[i]);
-					modsChosen.put(md.getMod(), null);
+			for (i = indx + 1; i < numMods; i++) {
+				if (forcedAt[i] != 0) {
+					continue;
 				}
-				for (i = 0; i < trialMatch.size(); i++) {
-					o = trialMatch.get(i);
-					if (o != null) {
-						modsChosen.put(((ModMatchData)o).getMod(), null);
+				remaining = 0;
+				last = -1;
+				for (j = 0; j < choices[i].length; j++) {
+					if (prunedAt[i][j] == 0) {
+						remaining++;
+						last = j;
 					}
 				}
-				inner: while (true) {
-					curChoice[indx]++;
-					if (curChoice[indx] >=
-							((ArrayList)trialMatchChoices.get(multipleChoices[indx])).size()) {
-						if (indx == 0) {
-							trialMatch = new ArrayList();
-							return;
-						} else {
-							indx--;
-							continue outer;
-						}
+				if (remaining == 1) {
+					forcedAt[i] = level;
+					if (prune(i, last, level) == false) {
+						return false;
 					}
-					md = (ModMatchData)((ArrayList)trialMatchChoices.get(multipleChoices[indx])).get(curChoice[indx]);
-					mod = md.getMod();
-					if (modsChosen.containsKey(mod)) {
-						continue inner;
+					i = indx; // start over, earlier modules may now have one choice
+				}
+			}
+			return true;
+		}
+
+		private boolean prune(int m, int k, int level) {
+			int i, j, remaining;
+
+			for (i = indx + 1; i < numMods; i++) {
+				if (i == m) {
+					continue;
+				}
+				remaining = 0;
+				for (j = 0; j < choices[i].length; j++) {
+					if (prunedAt[i][j] != 0) {
+						continue;
 					}
-					modsChosen.put(mod, null);
-					if (indx == numChoices - 1) {
-						for (i = 0; i < numChoices; i++) {
-							trialMatch.set(multipleChoices[i],
-									((ArrayList)trialMatchChoices.get(multipleChoices[i])).get(curChoice[i]));
-						}
-						return;
+					if (seeIfChoicesAgree(m, k, i, j)) {
+						remaining++;
+					} else {
+						prunedAt[i][j] = level;
+					}
+				}
+				if (remaining == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Undo pruning done at this level or deeper
+		 */
+		private void restore(int level) {
+			int i, j;
+
+			for (i = 0; i < numMods; i++) {
+				if (forcedAt[i] >= level) {
+					forcedAt[i] = 0;
+				}
+				for (j = 0; j < choices[i].length; j++) {
+					if (prunedAt[i][j] >= level) {
+						prunedAt[i][j] = 0;
 					}
-					curChoice[++indx] = -1;
 				}
 			}
 		}
+
+		private boolean seeIfChoicesAgree(int m1, int k1, int m2, int k2) {
+			int i, c;
+
+			if (choices[m1][k1].getMod() == choices[m2][k2].getMod()) {
+				return false;
+			}
+			for (i = 0; i < connsFrom[m1].size(); i++) {
+				c = ((Integer)connsFrom[m1].get(i)).intValue();
+				if (connTarget[c] == m2 && connOK[c][k1][k2] == false) {
+					return false;
+				}
+			}
+			for (i = 0; i < connsTo[m1].size(); i++) {
+				c = ((Integer)connsTo[m1].get(i)).intValue();
+				if (connSource[c] == m2 && connOK[c][k2][k1] == false) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * See if an input connection could be made between our source module and
+	 * the target module in md, either by a hard-wired connection or by some
+	 * matrix mod.  Only the input jack candidates from the initial match are
+	 * considered, as in finalMatchHardWired().
+	 */
+	boolean seeIfConnectionCanBeMade(Connection conn, Module ourSource, ModMatchData md,
+			int jackIndx) {
+		ArrayList a = (ArrayList)md.getInputJackMatches().get(jackIndx);
+		ModuleInputJack ourMij;
+		Connection ourConn;
+		int i;
+
+		for (i = 0; i < a.size(); i++) {
+			ourMij = (ModuleInputJack)a.get(i);
+			ourConn = findConnectionToTarget(ourMij);
+			if (ourConn != null && ourConn.getSourceJack().getMod() == ourSource) {
+				return true;
+			}
+		}
+		for (i = 0; i < matrixMods.size(); i++) {
+			if (((MatrixMod)matrixMods.get(i)).seeIfModCanBeCreated(ourSource.getName(),
+					conn.getSourceJack().getName(), md.getMod().getName(),
+					conn.getTargetJack().getPrefix())) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
 	 * Find all output jacks which are connected to this module's input jacks (find
-	 * sources of control or audio input).
+	 * sources of control or audio input), and theirs in turn.  Works from a
+	 * stack of jacks still to check rather than by recursion, so a long
+	 * chain of modules can't overflow the Java stack; the stack and the set
+	 * of modules already checked are kept for the next call.
 	 * 
-	 * @param mj
+	 * @param startMj
 	 */
-	void findJacksAndModulesUsed(ModuleJack mj) throws PatchDefinitionException {
+	void findJacksAndModulesUsed(ModuleJack startMj) throws PatchDefinitionException {
 		Module mod;
 		ModuleParm mp;
+		ModuleJack mj, stack[];
 		ModuleOutputJack mjSource;
 		ModuleInputJack mjTarget;
 		Connection conn;
+		int i, top;
 
-		if (mj == null) {
+		if (startMj == null) {
 			return;
 		}
-		mj.setUsed(true);
-		mod = mj.getMod();
-		if (mod.getUsed() > 0) {
-			return; // module has been checked; don't do again, to avoid endless cycle
-		}
-		mod.seeIfUsed();
-		mod.seeIfParmsUsed();
-		for (int i = 0; i < mod.getInputJacks().size(); i++) {
-			mjTarget = (ModuleInputJack)mod.getInputJacks().get(i);
-			mp = mjTarget.getAttenuator();
-			// If attenuator was marked as unused, jack is too
-			if (mp != null && mp.isUsed() == false) {
-				continue;
-			}
-			// See if this input jack has an attenuator whose value is zero
-			if (mp != null && mp.getValue().equals("0") == true &&
-					(mp.getMorph() == null || mp.getMorph().getValue().equals("0"))) {
-				// jack and attenuator aren't being used
-				mp.setUsed(false);
-				continue;
+		if (modulesVisited == null) {
+			modulesVisited = new BitSet(nextModuleId);
+			usageStack = new ModuleJack[modules.size() + 1];
+		} else {
+			modulesVisited.clear();
+		}
+		usageStack[0] = startMj;
+		top = 1;
+		while (top > 0) {
+			mj = usageStack[--top];
+			usageStack[top] = null;
+			mj.setUsed(true);
+			mod = mj.getMod();
+			if (modulesVisited.get(mod.getId())) {
+				continue; // module has been checked; don't do again, to avoid endless cycle
 			}
-			conn = mjTarget.getConn();
-			if (conn == null) {
-				continue;
+			modulesVisited.set(mod.getId());
+			if (mod.getUsed() > 0) {
+				continue; // already marked used by matching a generic patch
 			}
-			// FIXME should do better check
-			mjTarget.setUsed(true);
-			mjSource = conn.getSourceJack();
-			if (mjSource == null) {
-				throw new PatchDefinitionException("Connection source is null");
-			} else {
-				findJacksAndModulesUsed(findModuleOutputJack(mjSource.getMod().getName(),
-						mjSource.getName()));
+			mod.seeIfUsed();
+			mod.seeIfParmsUsed();
+			for (i = 0; i < mod.getInputJacks().size(); i++) {
+				mjTarget = (ModuleInputJack)mod.getInputJacks().get(i);
+				mp = mjTarget.getAttenuator();
+				// If attenuator was marked as unused, jack is too
+				if (mp != null && mp.isUsed() == false) {
+					continue;
+				}
+				// See if this input jack has an attenuator whose value is zero
+				if (mp != null && mp.getValue().equals("0") == true &&
+						(mp.getMorph() == null || mp.getMorph().getValue().equals("0"))) {
+					// jack and attenuator aren't being used
+					mp.setUsed(false);
+					continue;
+				}
+				conn = mjTarget.getConn();
+				if (conn == null) {
+					continue;
+				}
+				// FIXME should do better check
+				mjTarget.setUsed(true);
+				mjSource = conn.getSourceJack();
+				if (mjSource == null) {
+					throw new PatchDefinitionException("Connection source is null");
+				}
+				if (top == usageStack.length) {
+					stack = new ModuleJack[top * 2];
+					System.arraycopy(usageStack, 0, stack, 0, top);
+					usageStack = stack;
+				}
+				usageStack[top++] = mjSource;
 			}
 		}
 	}
 
 	public Module findModule(String name) {
 		int i;
-		Module m;
 
-		// with few modules, a sequential search is fast enough
-		for (i = 0; i < modules.size(); i++) {
-			m = (Module)modules.get(i);
-			if (m.getName().equalsIgnoreCase(name)) {
-				return m;
-			}
+		i = findModuleIndex(name);
+		if (i < 0) {
+			return null;
 		}
-		return null;
+		return (Module)modules.get(i);
 	}
 
 	public int findModuleIndex(String name) {
 		int i;
-		Module m;
-
-		// with few modules, a sequential search is fast enough
-		for (i = 0; i < modules.size(); i++) {
-			m = (Module)modules.get(i);
-			if (m.getName().equalsIgnoreCase(name)) {
-				return i;
+		HashMap index = moduleIndex;
+		Integer indx;
+		String key;
+
+		if (index == null) {
+			// Map each name to the first module with that name, as the
+			// old sequential search found
+			index = new HashMap(modules.size() * 2 + 1);
+			for (i = 0; i < modules.size(); i++) {
+				key = ((Module)modules.get(i)).getName().toLowerCase();
+				if (index.containsKey(key) == false) {
+					index.put(key, new Integer(i));
+				}
 			}
+			moduleIndex = index;
+		}
+		indx = (Integer)index.get(name.toLowerCase());
+		if (indx == null) {
+			return -1;
 		}
-		return -1;
+		return indx.intValue();
 	}
 
 	public ModuleInputJack findModuleInputJack(String name, String jack) {
@@ -1381,59 +2117,78 @@ public class GenericPatch {
 
 	public boolean findConnectionToSameType(String sourceModName, String sourceMjName,
 			String modType, String jackType) {
+		return findConnectionToSameType(findModuleOutputJack(sourceModName, sourceMjName),
+				SymbolTable.find(modType), SymbolTable.find(jackType));
+	}
+
+	/**
+	 * @return true if our output jack is hard-wired, or can be connected
+	 * by a matrix mod, to an input jack with the given module type and
+	 * prefix (as SymbolTable ids)
+	 */
+	boolean findConnectionToSameType(ModuleOutputJack sourceMj, int modTypeId,
+			int jackPrefixId) {
 		int i;
-		ModuleOutputJack sourceMj;
-		Connection conn;
-		MatrixMod mm;
+		ModuleInputJack targetMj;
 
-		sourceMj = findModuleOutputJack(sourceModName, sourceMjName);
-		if (sourceMj.getConn() != null) {
-			for (i = 0; i < sourceMj.getConn().length; i++) {
-				conn = sourceMj.getConn()[i];
-//				if (conn == null) {
-//					continue;
-//				}
-				if (conn.getSourceJack() == sourceMj &&
-						conn.getTargetJack().getMod().getType().equalsIgnoreCase(modType) &&
-						conn.getTargetJack().getPrefix().equalsIgnoreCase(jackType)) {
-					return true;
-				}
-			}
-		}
-		// If there's no hard-wired connection, maybe matrix mod can be used?
-		for (i = 0; i < matrixMods.size(); i++) {
-			mm = (MatrixMod)matrixMods.get(i);
-			if (mm.seeIfModTypeIsAllowed(sourceMj.getMod().getType(),
-					sourceMj.getPrefix(), modType, jackType)) {
+		for (i = 0; i < sourceMj.getConnCount(); i++) {
+			targetMj = sourceMj.getConn(i).getTargetJack();
+			if (targetMj.getMod().getTypeId() == modTypeId &&
+					targetMj.getPrefixId() == jackPrefixId) {
 				return true;
 			}
 		}
-		return false;
+		// If there's no hard-wired connection, maybe matrix mod can be used?
+		return seeIfMatrixModTypeIsAllowed(sourceMj.getMod().getTypeId(),
+				sourceMj.getPrefixId(), modTypeId, jackPrefixId);
 	}
 
 	public boolean findConnectionFromSameType(String modType, String jackType,
 			String targetModName, String targetMjName) {
-		int i;
-		ModuleInputJack targetMj;
+		return findConnectionFromSameType(SymbolTable.find(modType), SymbolTable.find(jackType),
+				findModuleInputJack(targetModName, targetMjName));
+	}
+
+	/**
+	 * @return true if our input jack is hard-wired, or can be connected by
+	 * a matrix mod, to an output jack with the given module type and prefix
+	 * (as SymbolTable ids)
+	 */
+	boolean findConnectionFromSameType(int modTypeId, int jackPrefixId,
+			ModuleInputJack targetMj) {
 		Connection conn;
-		MatrixMod mm;
 
-		targetMj = findModuleInputJack(targetModName, targetMjName);
 		conn = targetMj.getConn();
 		if (conn != null &&
-				conn.getSourceJack().getMod().getType().equalsIgnoreCase(modType) &&
-				conn.getSourceJack().getPrefix().equalsIgnoreCase(jackType)) {
+				conn.getSourceJack().getMod().getTypeId() == modTypeId &&
+				conn.getSourceJack().getPrefixId() == jackPrefixId) {
 			return true;
 		}
 		// If there's no hard-wired connection, maybe matrix mod can be used?
-		for (i = 0; i < matrixMods.size(); i++) {
-			mm = (MatrixMod)matrixMods.get(i);
-			if (mm.seeIfModTypeIsAllowed(modType, jackType,
-					targetMj.getMod().getType(), targetMj.getPrefix())) {
-				return true;
-			}
+		return seeIfMatrixModTypeIsAllowed(modTypeId, jackPrefixId,
+				targetMj.getMod().getTypeId(), targetMj.getPrefixId());
+	}
+
+	/**
+	 * @return true if any of our matrix mods allows this type of connection
+	 */
+	public boolean seeIfMatrixModTypeIsAllowed(String sourceModType, String sourceModJack,
+			String destModType, String destModJackPrefix) {
+		return seeIfMatrixModTypeIsAllowed(SymbolTable.find(sourceModType),
+				SymbolTable.find(sourceModJack), SymbolTable.find(destModType),
+				SymbolTable.find(destModJackPrefix));
+	}
+
+	boolean seeIfMatrixModTypeIsAllowed(int sourceModTypeId, int sourceModJackId,
+			int destModTypeId, int destModJackPrefixId) {
+		ConnectionTypeIndex index = matrixModTypes;
+
+		if (index == null) {
+			index = new ConnectionTypeIndex(matrixMods);
+			matrixModTypes = index;
 		}
-		return false;
+		return index.isAllowed(sourceModTypeId, sourceModJackId, destModTypeId,
+				destModJackPrefixId);
 	}
 
 	public void updateGroupSources(MatrixMod pMm, int sourceIndex) {
@@ -1556,34 +2311,25 @@ public class GenericPatch {
 		return new ConnectionTargetIterator(sourceMj);
 	}
 
+	/**
+	 * Walks the output jack's own connection list, without copying it
+	 */
 	private class ConnectionTargetIterator implements Iterator {
-//		private ModuleOutputJack sourceMj;
-		private Connection[] conn;
+		private ModuleOutputJack sourceMj;
 		private int i;
 
 		public ConnectionTargetIterator(ModuleOutputJack mj) {
-//			sourceMj = mj;
+			sourceMj = mj;
 			i = 0;
-			conn = mj.getConn();
-//			getNext();
 		}
 
 		public boolean hasNext() {
-//			if (i < connections.size()) {
-			if (conn != null && i < conn.length) {
-				return true;
-			} else {
-				return false;
-			}
+			return i < sourceMj.getConnCount();
 		}
 
 		public Object next() {
-//			if (i < connections.size()) {
-//				Connection conn = (Connection)connections.get(i++);
-//				getNext();
-//				return conn;
-			if (i < conn.length) {
-				return conn[i++];
+			if (i < sourceMj.getConnCount()) {
+				return sourceMj.getConn(i++);
 			} else {
 				throw new NoSuchElementException();
 			}
@@ -1592,17 +2338,6 @@ public class GenericPatch {
 		public void remove() {
 			throw new UnsupportedOperationException();
 		}
-
-//		private void getNext() {
-//			Connection conn;
-//			while (i < connections.size()) {
-//				conn = (Connection)connections.get(i);
-//				if (conn.getSourceJack() == sourceMj) {
-//					return;
-//				}
-//				i++;
-//			}
-//		}
 	}
 }
 
@@ -27,7 +27,7 @@ package PatchConversion;
  */
 
 import java.io.*;
-//import java.util.*;
+import java.util.*;
 import junit.framework.*;
 
 public class GenericPatchTest extends TestCase {
@@ -319,6 +319,185 @@ public class GenericPatchTest extends TestCase {
 		expected.close();
 	}
 
+	public void testBinary() throws IOException, PatchDefinitionException {
+		GenericPatch gp = new GenericPatch("0.07");
+		buildTestPatch1(gp);
+		gp.findJacksAndModulesUsed(gp.findModuleInputJack("Audio Out", "Voice In"));
+		gp.setPatchName("Binary & back");
+		String xml = gp.writeXML();
+		byte b[] = gp.toBinary();
+		assertTrue(b.length < xml.length() / 4);
+
+		GenericPatch gpXML = new GenericPatch("0.07");
+		assertTrue(gpXML.readXML(xml));
+		GenericPatch gpBin = new GenericPatch("0.07");
+		assertTrue(gpBin.readBinary(b));
+		assertEquals("Binary & back", gpBin.getPatchName());
+		assertNull(gpBin.getPatchNumber());
+		assertEquals(gpXML.getInputGP().getModules().size(), gpBin.getInputGP().getModules().size());
+		assertEquals(gpXML.getInputGP().getConnections().size(), gpBin.getInputGP().getConnections().size());
+		assertEquals(gpXML.getInputGP().writeXML(), gpBin.getInputGP().writeXML());
+	}
+
+	public void testBinaryBadInput() throws PatchDefinitionException {
+		GenericPatch gp = new GenericPatch("0.07");
+		buildTestPatch1(gp);
+		gp.findJacksAndModulesUsed(gp.findModuleInputJack("Audio Out", "Voice In"));
+		byte b[] = gp.toBinary();
+		byte b2[] = new byte[b.length / 2];
+		System.arraycopy(b, 0, b2, 0, b2.length);
+		assertFalse(new GenericPatch("0.07").readBinary(b2));
+		try {
+			new GenericPatch("0.07").readBinary("<generic_patch>".getBytes());
+			fail("read XML as binary");
+		} catch (PatchDefinitionException e) {
+		}
+	}
+
+	public void testTopologySignature() throws PatchDefinitionException {
+		GenericPatch gp = new GenericPatch("0.07");
+		buildTestPatch1(gp);
+		GenericPatch gp2 = new GenericPatch("0.07");
+		buildTestPatch1(gp2);
+		assertEquals(gp.topologySignature(), gp2.topologySignature());
+
+		// parm values don't matter, connections do
+		gp2.findModuleParm("Osc2", "Coarse Tune").setValue("12");
+		assertEquals(gp.topologySignature(), gp2.topologySignature());
+		gp2.removeConnection("Osc2", "Wave Out", "Mixer", "Audio In2");
+		assertFalse(gp.topologySignature().equals(gp2.topologySignature()));
+	}
+
+	public void testNameIndexes() throws PatchDefinitionException {
+		GenericPatch gp = new GenericPatch("0.07");
+		buildTestPatch1(gp);
+		Module osc2 = gp.findModule("osc2");
+		assertSame(gp.getModules().get(1), osc2);
+		assertEquals(1, gp.findModuleIndex("OSC2"));
+		assertSame(osc2.findParm("Coarse Tune"), gp.findModuleParm("Osc2", "coarse tune"));
+		assertNotNull(gp.findConnection("osc2", "wave out", "mixer", "audio in2"));
+
+		// indexes must follow removes, inserts and renames
+		gp.removeModule(gp.findModule("Osc1"));
+		assertNull(gp.findModule("Osc1"));
+		assertEquals(0, gp.findModuleIndex("Osc2"));
+		Module mod = new Module("Osc4", "osc", 4);
+		gp.addModule(0, mod);
+		assertEquals(1, gp.findModuleIndex("Osc2"));
+		assertEquals(0, gp.findModuleIndex("Osc4"));
+		mod.setName("Osc1");
+		assertNull(gp.findModule("Osc4"));
+		assertSame(mod, gp.findModule("osc1"));
+		ModuleOutputJack moj = gp.findModuleOutputJack("Osc2", "Wave Out");
+		moj.setNumber(2);
+		assertNull(osc2.findOutputJack("Wave Out"));
+		assertSame(moj, gp.findModuleOutputJack("Osc2", "wave out2"));
+	}
+
+	public void testSymbolIds() throws PatchDefinitionException {
+		GenericPatch gp = new GenericPatch("0.07");
+		buildTestPatch1(gp);
+		Module osc1 = gp.findModule("Osc1");
+		assertEquals(osc1.getTypeId(), gp.findModule("Osc2").getTypeId());
+		assertEquals(osc1.getTypeId(), SymbolTable.find("OSC"));
+		assertTrue(osc1.getTypeId() != gp.findModule("Mixer").getTypeId());
+		assertEquals(-1, SymbolTable.find("no such symbol"));
+
+		ModuleInputJack in1 = gp.findModuleInputJack("Mixer", "Audio In1");
+		ModuleInputJack in2 = gp.findModuleInputJack("Mixer", "Audio In2");
+		assertEquals(in1.getPrefixId(), in2.getPrefixId());
+		assertEquals(in1.getPrefixId(), SymbolTable.find("audio in"));
+		in2.setName("Control In2");
+		assertTrue(in1.getPrefixId() != in2.getPrefixId());
+		assertEquals(SymbolTable.find("control in"), in2.getPrefixId());
+	}
+
+	public void testPrefixAndNumber() throws PatchDefinitionException {
+		GenericPatch gp = new GenericPatch("0.07");
+		buildTestPatch1(gp);
+		ModuleInputJack mij = gp.findModuleInputJack("Mixer", "Audio In2");
+		assertEquals("Audio In", mij.getPrefix());
+		assertEquals(2, mij.getNumber());
+		mij.setNumber(3);
+		assertEquals("Audio In3", mij.getName());
+		assertEquals("Audio In", mij.getPrefix());
+		assertEquals(3, mij.getNumber());
+
+		ModuleParm mp = gp.findModuleParm("Osc2", "Coarse Tune");
+		assertEquals("Coarse Tune", mp.getPrefix());
+		assertEquals(0, mp.getNumber());
+		mp.setNumber(1);
+		assertEquals("Coarse Tune1", mp.getName());
+		assertEquals(1, mp.getNumber());
+		mp.setName("Fine Tune");
+		assertEquals("Fine Tune", mp.getPrefix());
+		assertEquals(0, mp.getNumber());
+	}
+
+	public void testJacksAndModulesUsed() throws PatchDefinitionException {
+		GenericPatch gp = new GenericPatch("0.07");
+		Module mod, prev = null;
+		int i, chain = 20000;
+
+		// a chain this long would overflow the stack if searched recursively
+		for (i = 0; i < chain; i++) {
+			mod = new Module("Mod" + i, "mod", i);
+			gp.addModule(mod);
+			mod.addInputJack(new ModuleInputJack("Control In", "control_input"));
+			mod.addOutputJack(new ModuleOutputJack("Control Out", "control_output"));
+			if (prev != null) {
+				gp.addConnection(new Connection(mod.findOutputJack("Control Out"),
+						prev.findInputJack("Control In")));
+			}
+			prev = mod;
+		}
+		mod = new Module("Unused", "mod", 0);
+		gp.addModule(mod);
+		mod.addOutputJack(new ModuleOutputJack("Control Out", "control_output"));
+
+		for (int pass = 0; pass < 2; pass++) {
+			gp.findJacksAndModulesUsed(gp.findModuleInputJack("Mod0", "Control In"));
+			for (i = 0; i < chain; i++) {
+				assertEquals(3, ((Module)gp.getModules().get(i)).getUsed());
+			}
+			assertEquals(0, mod.getUsed());
+			assertTrue(gp.findModuleInputJack("Mod" + (chain - 2), "Control In").isUsed());
+			for (i = 0; i < chain; i++) {
+				((Module)gp.getModules().get(i)).setUsed(0);
+			}
+		}
+	}
+
+	public void testTrialFailure() throws PatchDefinitionException {
+		GenericPatch gp = new GenericPatch("0.07");
+		ArrayList trials = new ArrayList();
+		for (int i = 0; i < 4; i++) {
+			trials.add(new ArrayList());
+		}
+
+		// a trial which throws before the best match is rethrown, as it
+		// would have been with one thread
+		GenericPatch.TrialQueue queue = gp.new TrialQueue(trials.iterator());
+		assertEquals(0, queue.nextTrial());
+		assertEquals(1, queue.nextTrial());
+		queue.trialDone(1, new HashMap(), null, new ArrayList());
+		queue.trialFailed(0, new IllegalStateException());
+		assertEquals(-1, queue.nextTrial());
+		try {
+			queue.rethrowFailure();
+			fail("expected trial 0's exception");
+		} catch (IllegalStateException e) {
+		}
+
+		// one after the best match is never reached by a single thread
+		queue = gp.new TrialQueue(trials.iterator());
+		assertEquals(0, queue.nextTrial());
+		assertEquals(1, queue.nextTrial());
+		queue.trialFailed(1, new PatchDefinitionException("trial 1"));
+		queue.trialDone(0, new HashMap(), null, new ArrayList());
+		queue.rethrowFailure();
+	}
+
 	public void testReadXML2() throws IOException, PatchDefinitionException  {
 		GenericPatch gp = new GenericPatch("0.07");
 		buildTestPatch1(gp);
@@ -40,14 +40,19 @@ interface MatrixMod extends ParmTranslator{
 	public GenericPatch getGp();
 	public boolean seeIfModTypeIsAllowed(String sourceModType, String sourceModJack,
 			String destModType, String destModJackPrefix);
-	public ModuleInputJack createSingleDestMod(String sourceMod, String sourceJack, String destMod,
-			String destJackPrefix) throws PatchDefinitionException;
-	public ModuleInputJack[] createMultiDestMod(String sourceMod, String sourceJack, String destMod[],
-			String destJackPrefix) throws PatchDefinitionException;
+	public void addAllowedModTypes(ConnectionTypeIndex index);
+	public int findSource(String sourceMod, String sourceJack);
+	public int findSingleDest(String destMod, String destJackPrefix, ModuleInputJack destJack[]);
+	public int findMultiDest(String destMod[], String destJackPrefix, ModuleInputJack destJack[]);
+	public void createRoute(int pSourceIndex, int pDestIndex) throws PatchDefinitionException;
 	public void removeCurrentMod();
+	public boolean seeIfModCanBeCreated(String sourceMod, String sourceJack, String destMod,
+			String destJackPrefix);
 	public boolean seeIfJackCanBeAdded(String sourceModType, String sourceJack,
 			String destMod, String destModJackPrefix);
 	public boolean seeIfParmCanBeAdded(String parmPrefix);
 	public int getSourceGroup();
 	public void setSourceIndex(int pSourceIndex);
+	public void saveState();
+	public void restoreState();
 }
@@ -28,7 +28,7 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
-//import java.util.*;
+import java.util.*;
 
 public class MatrixModOneSource implements MatrixMod {
 	private SynthParmTable sourceParm;
@@ -43,6 +43,8 @@ public class MatrixModOneSource implements MatrixMod {
 	private int sourceIndex;
 	private int destIndex;
 	private int sourceGroup;
+	private int savedSourceIndex;
+	private int savedDestIndex;
 
 	MatrixModOneSource(SynthParmTable pSourceParm, int pSourceParmMap[],
 			SynthParmTable pDestParm, int pDestParmMap[], ModuleOutputJack pSourceJacks[],
@@ -93,8 +95,11 @@ public class MatrixModOneSource implements MatrixMod {
 	public boolean seeIfModTypeIsAllowed(String sourceModType, String sourceModJack,
 			String destModType, String destModJackPrefix) {
 		int i;
+		int sourceTypeId = SymbolTable.find(sourceModType);
+		int destTypeId = SymbolTable.find(destModType);
+		int prefixId = SymbolTable.find(destModJackPrefix);
 		for (i = 0; i < sourceJacks.length; i++) {
-			if (sourceJacks[i].getMod().getType().equalsIgnoreCase(sourceModType) &&
+			if (sourceJacks[i].getMod().getTypeId() == sourceTypeId &&
 					sourceJacks[i].getName().equalsIgnoreCase(sourceModJack)) {
 				break;
 			}
@@ -103,8 +108,8 @@ public class MatrixModOneSource implements MatrixMod {
 			return false;
 		}
 		for (i = 0; i < destJacks.length; i++) {
-			if (destJacks[i][0].getMod().getType().equalsIgnoreCase(destModType) &&
-					destJacks[i][0].getPrefix().equalsIgnoreCase(destModJackPrefix)) {
+			if (destJacks[i][0].getMod().getTypeId() == destTypeId &&
+					destJacks[i][0].getPrefixId() == prefixId) {
 				break;
 			}
 		}
@@ -115,77 +120,73 @@ public class MatrixModOneSource implements MatrixMod {
 	}
 
 	/**
-	 * If this matrix mod is unused and it can implement the requested mod
-	 * connection, set source & dest indexes and create connection
+	 * Add every connection type seeIfModTypeIsAllowed() accepts
 	 */
-	public ModuleInputJack createSingleDestMod(String sourceMod, String sourceJack, String destMod,
-			String destJackPrefix) throws PatchDefinitionException {
-		ModuleInputJack mij = null;
-		int i;  // , j;
-
-		if (destIndex != -1) {
-			return null;
-		}
+	public void addAllowedModTypes(ConnectionTypeIndex index) {
+		int i, j;
 		for (i = 0; i < sourceJacks.length; i++) {
+			for (j = 0; j < destJacks.length; j++) {
+				index.add(sourceJacks[i].getMod().getType(), sourceJacks[i].getName(),
+						destJacks[j][0].getMod().getType(), destJacks[j][0].getPrefix());
+			}
+		}
+	}
+
+	/**
+	 * @return index of the given source jack, or -1 if it isn't one of ours
+	 */
+	public int findSource(String sourceMod, String sourceJack) {
+		for (int i = 0; i < sourceJacks.length; i++) {
 			if (sourceJacks[i].getMod().getName().equalsIgnoreCase(sourceMod) &&
 					sourceJacks[i].getName().equalsIgnoreCase(sourceJack)) {
-				sourceIndex = i;
-				break;
+				return i;
 			}
 		}
-		if (i >= sourceJacks.length) {
-			return null;
-		}
-		for (i = 0; i < destJacks.length; i++) {
+		return -1;
+	}
+
+	/**
+	 * Find a single-dest route to the given module and jack prefix.  Doesn't
+	 * check whether this matrix mod is in use or change anything.
+	 * @param destJack set to the jack the route would connect to
+	 * @return dest index, or -1 if there's no such route
+	 */
+	public int findSingleDest(String destMod, String destJackPrefix, ModuleInputJack destJack[]) {
+		int prefixId = SymbolTable.find(destJackPrefix);
+		for (int i = 0; i < destJacks.length; i++) {
 			if (destJacks[i].length > 1) {
 				continue; // only looking for single-dest mods
 			}
-			if (destJacks[i][0].getMod().getName().equalsIgnoreCase(destMod) &&
-					destJacks[i][0].getPrefix().equalsIgnoreCase(destJackPrefix)) {
-				destIndex = i;
-				mij = destJacks[i][0];
-				break;
+			if (destJacks[i][0].getPrefixId() == prefixId &&
+					destJacks[i][0].getMod().getName().equalsIgnoreCase(destMod)) {
+				destJack[0] = destJacks[i][0];
+				return i;
 			}
 		}
-		if (i >= destJacks.length) {
-			sourceIndex = -1;
-			return null;
-		}
-		createModRoute();
-		return mij;
+		return -1;
 	}
 
 	/**
-	 * If this matrix mod is unused and it can implement the requested mod
-	 * connections, set source & dest indexes and create connections
+	 * Find a route to one jack with the given prefix on each of the given
+	 * modules.  Doesn't check whether this matrix mod is in use or change
+	 * anything.
+	 * @param destJack set to the jack the route would connect to on each
+	 * module
+	 * @return dest index, or -1 if there's no such route
 	 */
-	public ModuleInputJack[] createMultiDestMod(String sourceMod, String sourceJack, String destMod[],
-			String destJackPrefix) throws PatchDefinitionException {
-		ModuleInputJack mij[] = new ModuleInputJack[destMod.length];
+	public int findMultiDest(String destMod[], String destJackPrefix, ModuleInputJack destJack[]) {
 		int i, j, k;
+		int prefixId = SymbolTable.find(destJackPrefix);
 
-		if (destIndex != -1) {
-			return null;
-		}
-		for (i = 0; i < sourceJacks.length; i++) {
-			if (sourceJacks[i].getMod().getName().equalsIgnoreCase(sourceMod) &&
-					sourceJacks[i].getName().equalsIgnoreCase(sourceJack)) {
-				sourceIndex = i;
-				break;
-			}
-		}
-		if (i >= sourceJacks.length) {
-			return null;
-		}
 		outer: for (i = 0; i < destJacks.length; i++) {
-			if (destJacks[i].length != mij.length) {
+			if (destJacks[i].length != destMod.length) {
 				continue; 
 			}
-			for (j = 0; j < mij.length; j++) {
+			for (j = 0; j < destMod.length; j++) {
 				for (k = 0; k < destJacks[i].length; k++) {
-					if (destJacks[i][k].getMod().getName().equalsIgnoreCase(destMod[j]) &&
-							destJacks[i][k].getPrefix().equalsIgnoreCase(destJackPrefix)) {
-						mij[j] = destJacks[i][k];
+					if (destJacks[i][k].getPrefixId() == prefixId &&
+							destJacks[i][k].getMod().getName().equalsIgnoreCase(destMod[j])) {
+						destJack[j] = destJacks[i][k];
 						break;
 					}
 				}
@@ -193,15 +194,43 @@ public class MatrixModOneSource implements MatrixMod {
 					continue outer;
 				}
 			}
-			destIndex = i;
-			break;
-		}
-		if (i >= destJacks.length) {
-			sourceIndex = -1;
-			return null;
+			return i;
 		}
+		return -1;
+	}
+
+	/**
+	 * Set source & dest indexes and create connection(s), for a route found
+	 * by a trial match
+	 */
+	public void createRoute(int pSourceIndex, int pDestIndex) throws PatchDefinitionException {
+		sourceIndex = pSourceIndex;
+		destIndex = pDestIndex;
 		createModRoute();
-		return mij;
+	}
+
+	/**
+	 * See if this matrix mod has a route from the given source jack to a
+	 * dest jack with the given prefix on the given module, as a single- or
+	 * multi-dest mod.  Ignores whether the matrix mod is already in use.
+	 */
+	public boolean seeIfModCanBeCreated(String sourceMod, String sourceJack, String destMod,
+			String destJackPrefix) {
+		int i, j;
+		int prefixId = SymbolTable.find(destJackPrefix);
+
+		if (findSource(sourceMod, sourceJack) == -1) {
+			return false;
+		}
+		for (i = 0; i < destJacks.length; i++) {
+			for (j = 0; j < destJacks[i].length; j++) {
+				if (destJacks[i][j].getPrefixId() == prefixId &&
+						destJacks[i][j].getMod().getName().equalsIgnoreCase(destMod)) {
+					return true;
+				}
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -358,4 +387,49 @@ public class MatrixModOneSource implements MatrixMod {
 		System.out.println("MatrixModOneSource can't use sourceGroups");
 		int i = 1 / 0; // abort
 	}
+
+	/**
+	 * Save the current route along with the state of all dest jacks and
+	 * their attenuators, which aren't necessarily part of any module yet
+	 */
+	public void saveState() {
+		int i, j;
+		savedSourceIndex = sourceIndex;
+		savedDestIndex = destIndex;
+		for (i = 0; i < destJacks.length; i++) {
+			for (j = 0; j < destJacks[i].length; j++) {
+				destJacks[i][j].saveState();
+				if (destJacks[i][j].getAttenuator() != null) {
+					destJacks[i][j].getAttenuator().saveState();
+				}
+			}
+		}
+	}
+
+	public void restoreState() {
+		int i, j;
+		sourceIndex = savedSourceIndex;
+		destIndex = savedDestIndex;
+		for (i = 0; i < destJacks.length; i++) {
+			for (j = 0; j < destJacks[i].length; j++) {
+				destJacks[i][j].restoreState();
+				if (destJacks[i][j].getAttenuator() != null) {
+					destJacks[i][j].getAttenuator().restoreState();
+				}
+			}
+		}
+	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		MatrixModOneSource mm = (MatrixModOneSource)super.clone();
+		copies.put(this, mm);
+		mm.sourceParm = (SynthParmTable)Util.copyOf(sourceParm, copies);
+		mm.destParm = (SynthParmTable)Util.copyOf(destParm, copies);
+		mm.gp = (GenericPatch)Util.copyOf(gp, copies);
+		mm.sourceJacks = (ModuleOutputJack[])Util.copyArray(sourceJacks, copies);
+		mm.destJacks = (ModuleInputJack[][])Util.copyArray(destJacks, copies);
+		mm.parmTranslators = (ParmTranslator[][])Util.copyArray(parmTranslators, copies);
+		mm.morphTranslators = (ParmTranslator[][])Util.copyArray(morphTranslators, copies);
+		return mm;
+	}
 }
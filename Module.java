@@ -26,20 +26,34 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.io.*;
 import java.util.*;
 
-public class Module implements Cloneable {
+public class Module implements Copyable {
 	public static final String MODULE_USED[] = { "not_checked", "unused",
 			"possible_modulator", "required" };
 	private String name;
 	private String type;
+	private int typeId = -1; // SymbolTable id of type, set by getTypeId()
 	private int number;
 	private int used;
 	private GenericPatch gp;
+	private int id; // dense id given by GenericPatch.addModule()
 //	private boolean checked;
 	private ArrayList parms; // fixed and variable parms
 	private ArrayList inputJacks;
 	private ArrayList outputJacks;
+	// lower-case name -> jack or parm, built by the find methods when null
+	private volatile HashMap inputJackIndex;
+	private volatile HashMap outputJackIndex;
+	private volatile HashMap parmIndex;
+	// state saved by saveState(), see SynthPatchAbstract.reset()
+	private String savedName;
+	private int savedNumber;
+	private int savedUsed;
+	private ArrayList savedParms;
+	private ArrayList savedInputJacks;
+	private ArrayList savedOutputJacks;
 
 	Module(String pName, String pType, int pNumber) {
 		name = pName;
@@ -51,29 +65,62 @@ public class Module implements Cloneable {
 	}
 
 	Module(String xml) throws PatchDefinitionException {
-		ModuleJack mj;
+		this(new XMLPullParser(xml));
+	}
+
+	/**
+	 * read module from XML, starting just after the module start tag
+	 */
+	Module(XMLPullParser xp) throws PatchDefinitionException {
+		String s;
 		parms = new ArrayList();
 		inputJacks = new ArrayList();
 		outputJacks = new ArrayList();
-		XMLReader xr = new XMLReader(xml);
-		String tag[];
-		while ((tag = xr.getNextTag()) != null) {
-			if (tag[0].equalsIgnoreCase("name")) {
-				name = tag[1];
-			} else if (tag[0].equalsIgnoreCase("type")) {
-				type = tag[1];
-			} else if (tag[0].equalsIgnoreCase("number")) {
-				if (tag[1] == null) {
+		while (xp.next() == XMLPullParser.START_TAG) {
+			if (xp.isName("name")) {
+				name = xp.readText();
+			} else if (xp.isName("type")) {
+				type = xp.readText();
+			} else if (xp.isName("number")) {
+				s = xp.readText();
+				if (s == null) {
 					number = 0;
 				} else {
-					number = new Integer(tag[1]).intValue();
+					number = new Integer(s).intValue();
 				}
-			} else if (tag[0].equalsIgnoreCase("parm")) {
-				parms.add(new ModuleParm(tag[1]));
-			} else if (tag[0].equalsIgnoreCase("input_jack")) {
-				addInputJack(new ModuleInputJack(tag[1], this));
-			} else if (tag[0].equalsIgnoreCase("output_jack")) {
-				addOutputJack(new ModuleOutputJack(tag[1], this));
+			} else if (xp.isName("parm")) {
+				addParm(new ModuleParm(xp));
+			} else if (xp.isName("input_jack")) {
+				addInputJack(new ModuleInputJack(xp, this));
+			} else if (xp.isName("output_jack")) {
+				addOutputJack(new ModuleOutputJack(xp, this));
+			} else {
+				xp.skip();
+			}
+		}
+	}
+
+	/**
+	 * read module written by writeBinary(), just after its MODULE kind
+	 */
+	Module(PatchBinaryReader pr) throws IOException, PatchDefinitionException {
+		int kind;
+		parms = new ArrayList();
+		inputJacks = new ArrayList();
+		outputJacks = new ArrayList();
+		name = pr.readString();
+		type = pr.readString();
+		number = pr.readSignedInt();
+		while ((kind = pr.readKind()) != PatchBinaryWriter.END) {
+			if (kind == PatchBinaryWriter.PARM) {
+				addParm(new ModuleParm(pr));
+			} else if (kind == PatchBinaryWriter.INPUT_JACK) {
+				addInputJack(new ModuleInputJack(pr, this));
+			} else if (kind == PatchBinaryWriter.OUTPUT_JACK) {
+				addOutputJack(new ModuleOutputJack(pr, this));
+			} else {
+				throw new PatchDefinitionException("Error: unknown record " + kind +
+						" in module " + name);
 			}
 		}
 	}
@@ -116,6 +163,14 @@ public class Module implements Cloneable {
 		return gp;
 	}
 
+	int getId() {
+		return id;
+	}
+
+	void setId(int i) {
+		id = i;
+	}
+
 	public void initialize() {
 //		checked = false;
 		for (int i = 0; i < parms.size(); i++) {
@@ -126,16 +181,19 @@ public class Module implements Cloneable {
 	public void addParm(ModuleParm mp) {
 		parms.add(mp);
 		mp.setMod(this);
+		parmIndex = null;
 	}
 
 	public void removeParm(ModuleParm mp) {
 		parms.remove(mp);
 		mp.setMod(null);
+		parmIndex = null;
 	}
 
 	public void addInputJack(ModuleInputJack mj) {
 		inputJacks.add(mj);
 		mj.setMod(this);
+		inputJackIndex = null;
 	}
 
 	public void addInputJack(ModuleInputJack mj, ModuleParm mp) {
@@ -172,16 +230,19 @@ public class Module implements Cloneable {
 	public void removeInputJack(ModuleInputJack mj) {
 		inputJacks.remove(mj);
 		mj.setMod(null);
+		inputJackIndex = null;
 	}
 
 	public void addOutputJack(ModuleOutputJack mj) {
 		outputJacks.add(mj);
 		mj.setMod(this);
+		outputJackIndex = null;
 	}
 
 	public void removeOutputJack(ModuleOutputJack mj) {
 		outputJacks.remove(mj);
 		mj.setMod(null);
+		outputJackIndex = null;
 	}
 
 	public String getName() {
@@ -190,6 +251,9 @@ public class Module implements Cloneable {
 
 	void setName(String s) {
 		name = s;
+		if (gp != null) {
+			gp.clearModuleIndex();
+		}
 	}
 
 	public String getType() {
@@ -198,6 +262,14 @@ public class Module implements Cloneable {
 
 	void setType(String s) {
 		type = s;
+		typeId = -1;
+	}
+
+	int getTypeId() {
+		if (typeId == -1) {
+			typeId = SymbolTable.intern(type);
+		}
+		return typeId;
 	}
 
 	public int getNumber() {
@@ -253,42 +325,66 @@ public class Module implements Cloneable {
 	}
 
 	public ModuleInputJack findInputJack(String jack) {
-		ModuleInputJack mij;
+		HashMap index = inputJackIndex;
 
-		// with few jacks, a sequential search is fast enough
-		for (int i = 0; i < inputJacks.size(); i++) {
-			mij = (ModuleInputJack)inputJacks.get(i);
-			if (mij.getName().equalsIgnoreCase(jack)) {
-				return mij;
-			}
+		if (index == null) {
+			index = nameIndex(inputJacks);
+			inputJackIndex = index;
 		}
-		return null;
+		return (ModuleInputJack)index.get(jack.toLowerCase());
 	}
 
 	public ModuleOutputJack findOutputJack(String jack) {
-		ModuleOutputJack moj;
+		HashMap index = outputJackIndex;
 
-		// with few jacks, a sequential search is fast enough
-		for (int i = 0; i < outputJacks.size(); i++) {
-			moj = (ModuleOutputJack)outputJacks.get(i);
-			if (moj.getName().equalsIgnoreCase(jack)) {
-				return moj;
-			}
+		if (index == null) {
+			index = nameIndex(outputJacks);
+			outputJackIndex = index;
 		}
-		return null;
+		return (ModuleOutputJack)index.get(jack.toLowerCase());
 	}
 
 	public ModuleParm findParm(String parm) {
-		ModuleParm mp;
+		HashMap index = parmIndex;
 
-		// with few parms, a sequential search is fast enough
-		for (int i = 0; i < parms.size(); i++) {
-			mp = (ModuleParm)parms.get(i);
-			if (mp.getName().equalsIgnoreCase(parm)) {
-				return mp;
+		if (index == null) {
+			index = nameIndex(parms);
+			parmIndex = index;
+		}
+		return (ModuleParm)index.get(parm.toLowerCase());
+	}
+
+	/**
+	 * Called when a jack or parm of this module is renamed, so the
+	 * find methods will rebuild their name indexes
+	 */
+	void clearIndexes() {
+		inputJackIndex = null;
+		outputJackIndex = null;
+		parmIndex = null;
+	}
+
+	/**
+	 * Map each lower-case jack or parm name to the first one in the list
+	 * with that name, as the old sequential searches found
+	 */
+	private static HashMap nameIndex(ArrayList list) {
+		HashMap index = new HashMap(list.size() * 2 + 1);
+		Object o;
+		String key;
+
+		for (int i = 0; i < list.size(); i++) {
+			o = list.get(i);
+			if (o instanceof ModuleJack) {
+				key = ((ModuleJack)o).getName().toLowerCase();
+			} else {
+				key = ((ModuleParm)o).getName().toLowerCase();
+			}
+			if (index.containsKey(key) == false) {
+				index.put(key, o);
 			}
 		}
-		return null;
+		return index;
 	}
 
 //	public boolean isChecked() {
@@ -299,37 +395,115 @@ public class Module implements Cloneable {
 //		checked = b;
 //	}
 
-	public String writeXML() throws PatchDefinitionException {
+	public void writeXML(XMLWriter xw) throws PatchDefinitionException, IOException {
 		// FIXME later change so possible_modulator triggers print
 		if (used < 3) {
-			return "";
+			return;
 		}
-		StringBuffer sb = new StringBuffer("<module>");
-		sb.append("<name>" + name + "</name>");
-		sb.append("<type>" + type + "</type>");
+		xw.startTag("module");
+		xw.element("name", name);
+		xw.element("type", type);
 		if (number != 0) {
-			sb.append("<number>" + number + "</number>");
+			xw.element("number", Integer.toString(number));
 		}
-		sb.append("<used>" + MODULE_USED[used] + "</used>");
-		sb.append(writeValue());
-		sb.append("</module>");
-		return sb.toString();
+		xw.element("used", MODULE_USED[used]);
+		writeValue(xw);
+		xw.endTag("module");
 	}
 
 	/**
 	 * Write XML for all module parms and jacks
 	 */
-	String writeValue() throws PatchDefinitionException {
-		StringBuffer sb = new StringBuffer();
+	void writeValue(XMLWriter xw) throws PatchDefinitionException, IOException {
 		for (int i = 0; i < parms.size(); i++) {
-			sb.append(((ModuleParm)parms.get(i)).writeXML());
+			((ModuleParm)parms.get(i)).writeXML(xw);
 		}
 		for (int i = 0; i < inputJacks.size(); i++) {
-			sb.append(((ModuleInputJack)inputJacks.get(i)).writeXML());
+			((ModuleInputJack)inputJacks.get(i)).writeXML(xw);
 		}
 		for (int i = 0; i < outputJacks.size(); i++) {
-			sb.append(((ModuleOutputJack)outputJacks.get(i)).writeXML());
+			((ModuleOutputJack)outputJacks.get(i)).writeXML(xw);
+		}
+	}
+
+	/**
+	 * Write module in binary, leaving out the same things writeXML() does
+	 */
+	void writeBinary(PatchBinaryWriter pw) throws PatchDefinitionException, IOException {
+		int i;
+		if (used < 3) {
+			return;
+		}
+		pw.writeKind(PatchBinaryWriter.MODULE);
+		pw.writeString(name);
+		pw.writeString(type);
+		pw.writeSignedInt(number);
+		for (i = 0; i < parms.size(); i++) {
+			((ModuleParm)parms.get(i)).writeBinary(pw);
+		}
+		for (i = 0; i < inputJacks.size(); i++) {
+			((ModuleInputJack)inputJacks.get(i)).writeBinary(pw);
+		}
+		for (i = 0; i < outputJacks.size(); i++) {
+			((ModuleOutputJack)outputJacks.get(i)).writeBinary(pw);
+		}
+		pw.writeKind(PatchBinaryWriter.END);
+	}
+
+	/**
+	 * Save the current name, numbering, used flag and lists of parms and
+	 * jacks (and the state of each) so restoreState() can return to them
+	 */
+	void saveState() {
+		int i;
+		savedName = name;
+		savedNumber = number;
+		savedUsed = used;
+		savedParms = new ArrayList(parms);
+		savedInputJacks = new ArrayList(inputJacks);
+		savedOutputJacks = new ArrayList(outputJacks);
+		for (i = 0; i < parms.size(); i++) {
+			((ModuleParm)parms.get(i)).saveState();
+		}
+		for (i = 0; i < inputJacks.size(); i++) {
+			((ModuleJack)inputJacks.get(i)).saveState();
+		}
+		for (i = 0; i < outputJacks.size(); i++) {
+			((ModuleJack)outputJacks.get(i)).saveState();
+		}
+	}
+
+	void restoreState() {
+		int i;
+		name = savedName;
+		number = savedNumber;
+		used = savedUsed;
+		Util.restoreList(parms, savedParms);
+		Util.restoreList(inputJacks, savedInputJacks);
+		Util.restoreList(outputJacks, savedOutputJacks);
+		clearIndexes();
+		for (i = 0; i < parms.size(); i++) {
+			((ModuleParm)parms.get(i)).restoreState();
+		}
+		for (i = 0; i < inputJacks.size(); i++) {
+			((ModuleJack)inputJacks.get(i)).restoreState();
 		}
-		return sb.toString();
+		for (i = 0; i < outputJacks.size(); i++) {
+			((ModuleJack)outputJacks.get(i)).restoreState();
+		}
+	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		Module mod = (Module)super.clone();
+		copies.put(this, mod);
+		mod.gp = (GenericPatch)Util.copyOf(gp, copies);
+		mod.parms = Util.copyList(parms, copies);
+		mod.inputJacks = Util.copyList(inputJacks, copies);
+		mod.outputJacks = Util.copyList(outputJacks, copies);
+		mod.savedParms = Util.copyList(savedParms, copies);
+		mod.savedInputJacks = Util.copyList(savedInputJacks, copies);
+		mod.savedOutputJacks = Util.copyList(savedOutputJacks, copies);
+		mod.clearIndexes();
+		return mod;
 	}
 }
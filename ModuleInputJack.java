@@ -26,7 +26,8 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
-//import java.util.*;
+import java.io.*;
+import java.util.*;
 
 public class ModuleInputJack extends ModuleJack {
 //	private ModuleJack sourceJack;
@@ -34,11 +35,14 @@ public class ModuleInputJack extends ModuleJack {
 	private ModuleParm attenuator;
 	private String sourceModule;
 	private String sourceJack;
+	private Connection savedSourceConn;
+	private ModuleParm savedAttenuator;
 
 	ModuleInputJack(String pName, String pType) { 
 		super(pName, pType);
 		sourceConn = null;
 		tag = "input_";
+		binaryKind = PatchBinaryWriter.INPUT_JACK;
 	}
 
 	ModuleInputJack(String pName, String pType, ModuleParm pAttenuator) { 
@@ -46,28 +50,63 @@ public class ModuleInputJack extends ModuleJack {
 		attenuator = pAttenuator;
 		sourceConn = null;
 		tag = "input_";
+		binaryKind = PatchBinaryWriter.INPUT_JACK;
 	}
 
-	ModuleInputJack(String xml, Module pMod) throws PatchDefinitionException {
-		super(xml, pMod);
-		String s = XMLReader.getTagValue(xml, "attenuator");
-		if (s != null) {
-			attenuator = pMod.findParm(s);
-		}
+	/**
+	 * read jack from XML, starting just after the input_jack start tag
+	 */
+	ModuleInputJack(XMLPullParser xp, Module pMod) throws PatchDefinitionException {
+		super(pMod);
+		String s;
 		sourceConn = null;
 		tag = "input_";
-		sourceModule = XMLReader.getTagValue(xml, "source_module");
+		binaryKind = PatchBinaryWriter.INPUT_JACK;
+		while (xp.next() == XMLPullParser.START_TAG) {
+			if (readJackTag(xp)) {
+				continue;
+			}
+			if (xp.isName("attenuator")) {
+				attenuator = pMod.findParm(xp.readText());
+			} else if (xp.isName("source_module")) {
+				sourceModule = xp.readText();
+			} else if (xp.isName("source_jack")) {
+				sourceJack = xp.readText();
+			} else {
+				xp.skip();
+			}
+		}
 		if (sourceModule == null) {
 			s = "Error: source_module is missing for " + pMod.getName() + " " + getName();
 			throw new PatchDefinitionException(s);
 		}
-		sourceJack = XMLReader.getTagValue(xml, "source_jack");
 		if (sourceJack == null) {
 			s = "Error: source_jack is missing for " + pMod.getName() + " " + getName();
 			throw new PatchDefinitionException(s);
 		}
 	}
 
+	/**
+	 * read jack written by writeBinary(), just after its INPUT_JACK kind
+	 */
+	ModuleInputJack(PatchBinaryReader pr, Module pMod) throws IOException, PatchDefinitionException {
+		super(pr, pMod);
+		String s;
+		sourceConn = null;
+		tag = "input_";
+		binaryKind = PatchBinaryWriter.INPUT_JACK;
+		s = pr.readString();
+		if (s != null) {
+			attenuator = pMod.findParm(s);
+		}
+		sourceModule = pr.readString();
+		sourceJack = pr.readString();
+		if (sourceModule == null || sourceJack == null) {
+			s = "Error: source is missing for " + pMod.getName() + " " + getName();
+			throw new PatchDefinitionException(s);
+		}
+	}
+
 	public Connection buildConnection() throws PatchDefinitionException {
 		GenericPatch gp = getMod().getGp();
 		sourceConn = new Connection(gp.findModuleOutputJack(sourceModule, sourceJack),
@@ -121,13 +160,38 @@ public class ModuleInputJack extends ModuleJack {
 		}
 	}
 
-	String writeValue() {
-		StringBuffer sb = new StringBuffer();
+	void writeValue(XMLWriter xw) throws IOException {
 		if (attenuator != null) {
-			sb.append("<attenuator>" + attenuator.getName() + "</attenuator>");
+			xw.element("attenuator", attenuator.getName());
 		}
-		sb.append("<source_module>" + sourceConn.getSourceJack().getMod().getName() + "</source_module>");
-		sb.append("<source_jack>" + sourceConn.getSourceJack().getName() + "</source_jack>");
-		return sb.toString();
+		xw.element("source_module", sourceConn.getSourceJack().getMod().getName());
+		xw.element("source_jack", sourceConn.getSourceJack().getName());
+	}
+
+	void writeBinaryValue(PatchBinaryWriter pw) throws IOException {
+		pw.writeString((attenuator == null) ? null : attenuator.getName());
+		pw.writeString(sourceConn.getSourceJack().getMod().getName());
+		pw.writeString(sourceConn.getSourceJack().getName());
+	}
+
+	void saveState() {
+		super.saveState();
+		savedSourceConn = sourceConn;
+		savedAttenuator = attenuator;
+	}
+
+	void restoreState() {
+		super.restoreState();
+		sourceConn = savedSourceConn;
+		attenuator = savedAttenuator;
+	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		ModuleInputJack mij = (ModuleInputJack)super.copy(copies);
+		mij.sourceConn = (Connection)Util.copyOf(sourceConn, copies);
+		mij.attenuator = (ModuleParm)Util.copyOf(attenuator, copies);
+		mij.savedSourceConn = (Connection)Util.copyOf(savedSourceConn, copies);
+		mij.savedAttenuator = (ModuleParm)Util.copyOf(savedAttenuator, copies);
+		return mij;
 	}
 }
@@ -26,29 +26,72 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
-//import java.util.*;
+import java.io.*;
+import java.util.*;
 
-public abstract class ModuleJack {
+public abstract class ModuleJack implements Copyable {
 	public static final String JACK_TYPE[] = { "control_input", "control_output", 
 			"audio_input", "audio_output" };
+	private static final int JACK_TYPE_ID[] = new int[JACK_TYPE.length];
+	static {
+		for (int i = 0; i < JACK_TYPE.length; i++) {
+			JACK_TYPE_ID[i] = SymbolTable.intern(JACK_TYPE[i]);
+		}
+	}
 	protected String tag = "bogus";
+	protected int binaryKind; // PatchBinaryWriter record kind
 	private String name;
+	private String prefix; // name without its number; see parseName()
+	private int number;
+	private int prefixId = -1; // SymbolTable id of prefix, set by getPrefixId()
 	private String type;
 	private boolean used;
 	private Module mod;
+	// state saved by saveState(), see SynthPatchAbstract.reset()
+	private String savedName;
+	private boolean savedUsed;
+	private Module savedMod;
 
 	ModuleJack(String pName, String pType) {
 		name = pName;
+		parseName();
 		setType(pType);
 	}
 
-	ModuleJack(String xml, Module pMod) {
-		name = XMLReader.getTagValue(xml, "name");
-		setType(XMLReader.getTagValue(xml, "type"));
+	/**
+	 * used by subclasses reading a jack from XML; see readJackTag()
+	 */
+	ModuleJack(Module pMod) {
 		used = true;
 		mod = pMod;
 	}
 
+	/**
+	 * used by subclasses reading a jack written by writeBinary()
+	 */
+	ModuleJack(PatchBinaryReader pr, Module pMod) throws IOException, PatchDefinitionException {
+		this(pMod);
+		name = pr.readString();
+		parseName();
+		setType(pr.readString());
+	}
+
+	/**
+	 * read the value of a tag common to all jacks, just after its start tag
+	 * @return false if it's not one of them
+	 */
+	boolean readJackTag(XMLPullParser xp) {
+		if (xp.isName("name")) {
+			name = xp.readText();
+			parseName();
+		} else if (xp.isName("type")) {
+			setType(xp.readText());
+		} else {
+			return false;
+		}
+		return true;
+	}
+
 	public void setMod(Module pMod) {
 		mod = pMod;
 	}
@@ -63,36 +106,57 @@ public abstract class ModuleJack {
 
 	void setName(String s) {
 		name = s;
+		parseName();
+		if (mod != null) {
+			mod.clearIndexes();
+		}
 	}
 
-	public String getPrefix() {
-		if (Character.isDigit(name.charAt(name.length() - 1))) {
-			return name.substring(0, name.length() - 1);
+	/**
+	 * Split the name into prefix and trailing digit once, whenever it
+	 * changes, rather than in every getPrefix() and getNumber() call
+	 */
+	private void parseName() {
+		char c;
+
+		prefixId = -1;
+		if (name != null && name.length() > 0 &&
+				Character.isDigit(c = name.charAt(name.length() - 1))) {
+			prefix = name.substring(0, name.length() - 1);
+			number = Character.digit(c, 10);
 		} else {
-			return name;
+			prefix = name;
+			number = 0;
 		}
 	}
 
-	public int getNumber() {
-		if (Character.isDigit(name.charAt(name.length() - 1))) {
-			return new Integer(name.substring(name.length() - 1)).intValue();
-		} else {
-			return 0;
+	public String getPrefix() {
+		return prefix;
+	}
+
+	int getPrefixId() {
+		if (prefixId == -1) {
+			prefixId = SymbolTable.intern(getPrefix());
 		}
+		return prefixId;
+	}
+
+	public int getNumber() {
+		return number;
 	}
 
 	public void setNumber(int i) {
-		if (Character.isDigit(name.charAt(name.length() - 1))) {
-			name = name.substring(0, name.length() - 1) + i;
-		} else {
-			name = name + i;
+		name = prefix + i;
+		parseName();
+		if (mod != null) {
+			mod.clearIndexes();
 		}
 	}
 
 	public void setType(String s) {
-		int i;
+		int i, id = SymbolTable.find(s);
 		for (i = 0; i < JACK_TYPE.length; i++) {
-			if (s.equalsIgnoreCase(JACK_TYPE[i])) {
+			if (id == JACK_TYPE_ID[i]) {
 				break;
 			}
 		}
@@ -115,25 +179,57 @@ public abstract class ModuleJack {
 		throw new PatchDefinitionException("This function from abstract class should never be used");
 	}
 
-	public String writeXML() throws PatchDefinitionException {
+	public void writeXML(XMLWriter xw) throws PatchDefinitionException, IOException {
 		// Don't write out unused jack
 		if (used == false) {
-			return "";
+			return;
 		}
 		// If the jack is connected to an unused jack, or a jack on an unused
 		// module, then this one's unused
 		if (isConnectedToUsed() == false) {
-			return "";
+			return;
+		}
+		xw.startTag(tag + "jack");
+		xw.element("name", name);
+		xw.element("type", type);
+		writeValue(xw);
+		xw.endTag(tag + "jack");
+	}
+
+	void writeValue(XMLWriter xw) throws IOException {
+	}
+
+	void writeBinary(PatchBinaryWriter pw) throws PatchDefinitionException, IOException {
+		if (used == false || isConnectedToUsed() == false) {
+			return;
 		}
-		StringBuffer sb = new StringBuffer("<" + tag + "jack>");
-		sb.append("<name>" + name + "</name>");
-		sb.append("<type>" + type + "</type>");
-		sb.append(writeValue());
-		sb.append("</" + tag + "jack>");
-		return sb.toString();
+		pw.writeKind(binaryKind);
+		pw.writeString(name);
+		pw.writeString(type);
+		writeBinaryValue(pw);
+	}
+
+	void writeBinaryValue(PatchBinaryWriter pw) throws IOException {
+	}
+
+	void saveState() {
+		savedName = name;
+		savedUsed = used;
+		savedMod = mod;
+	}
+
+	void restoreState() {
+		name = savedName;
+		parseName();
+		used = savedUsed;
+		mod = savedMod;
 	}
 
-	String writeValue() {
-		return "";
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		ModuleJack mj = (ModuleJack)super.clone();
+		copies.put(this, mj);
+		mj.mod = (Module)Util.copyOf(mod, copies);
+		mj.savedMod = (Module)Util.copyOf(savedMod, copies);
+		return mj;
 	}
 }
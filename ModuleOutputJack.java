@@ -26,6 +26,7 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.io.*;
 import java.util.*;
 
 public class ModuleOutputJack extends ModuleJack {
@@ -33,28 +34,51 @@ public class ModuleOutputJack extends ModuleJack {
 			"negative" };
 	private String polarity;
 	private ArrayList conn;
+	private String savedPolarity;
+	private ArrayList savedConn;
 
 	ModuleOutputJack(String pName, String pType, String pPolarity) { 
 		super(pName, pType);
 		setPolarity(pPolarity);
 		conn = new ArrayList();
 		tag = "output_";
+		binaryKind = PatchBinaryWriter.OUTPUT_JACK;
+	}
+
+	/**
+	 * read jack written by writeBinary(), just after its OUTPUT_JACK kind
+	 */
+	ModuleOutputJack(PatchBinaryReader pr, Module pMod) throws IOException, PatchDefinitionException {
+		super(pr, pMod);
+		setPolarity(pr.readString());
+		conn = new ArrayList();
+		tag = "output_";
+		binaryKind = PatchBinaryWriter.OUTPUT_JACK;
 	}
 
 	ModuleOutputJack(String pName, String pType) { 
 		this(pName, pType, "bipolar");
 	}
 
-	ModuleOutputJack(String xml, Module pMod) {
-		super(xml, pMod);
-		String s = XMLReader.getTagValue(xml, "polarity");
-		if (s == null) {
-			polarity = "bipolar";
-		} else {
-			setPolarity(s);
+	/**
+	 * read jack from XML, starting just after the output_jack start tag
+	 */
+	ModuleOutputJack(XMLPullParser xp, Module pMod) {
+		super(pMod);
+		polarity = "bipolar";
+		while (xp.next() == XMLPullParser.START_TAG) {
+			if (readJackTag(xp)) {
+				continue;
+			}
+			if (xp.isName("polarity")) {
+				setPolarity(xp.readText());
+			} else {
+				xp.skip();
+			}
 		}
 		conn = new ArrayList();
 		tag = "output_";
+		binaryKind = PatchBinaryWriter.OUTPUT_JACK;
 	}
 
 	public String getPolarity() {
@@ -87,6 +111,14 @@ public class ModuleOutputJack extends ModuleJack {
 		}
 	}
 
+	int getConnCount() {
+		return conn.size();
+	}
+
+	Connection getConn(int i) {
+		return (Connection)conn.get(i);
+	}
+
 	public Connection getFirstConn() {
 		if (conn.size() == 0) {
 			return null;
@@ -106,7 +138,30 @@ public class ModuleOutputJack extends ModuleJack {
 		return false;
 	}
 
-	String writeValue() {
-		return "<polarity>" + polarity + "</polarity>";
+	void writeValue(XMLWriter xw) throws IOException {
+		xw.element("polarity", polarity);
+	}
+
+	void writeBinaryValue(PatchBinaryWriter pw) throws IOException {
+		pw.writeString(polarity);
+	}
+
+	void saveState() {
+		super.saveState();
+		savedPolarity = polarity;
+		savedConn = new ArrayList(conn);
+	}
+
+	void restoreState() {
+		super.restoreState();
+		polarity = savedPolarity;
+		Util.restoreList(conn, savedConn);
+	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		ModuleOutputJack moj = (ModuleOutputJack)super.copy(copies);
+		moj.conn = Util.copyList(conn, copies);
+		moj.savedConn = Util.copyList(savedConn, copies);
+		return moj;
 	}
 }
@@ -27,8 +27,14 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.io.*;
+import java.util.*;
+
 public class ModuleParm implements Parm, Cloneable {
 	private String name;
+	private String prefix; // name without its number; see parseName()
+	private int number;
+	private int prefixId = -1; // SymbolTable id of prefix, set by getPrefixId()
 	private String unit;
 	private String responseType;
 	private boolean used;
@@ -40,6 +46,12 @@ public class ModuleParm implements Parm, Cloneable {
 	// FIXME maybe more than one will be needed?
 	private ParmMorph morph;
 	private ParmLink link;
+	// state saved by saveState(), see SynthPatchAbstract.reset()
+	private String savedName;
+	private boolean savedUsed;
+	private Module savedMod;
+	private String savedValue;
+	private ModuleInputJack savedAttenuatedJack;
 
 	ModuleParm(String pName, ParmValidator pPv, String pInitValue) {
 		this(pName, null, pPv, pInitValue, null, null);
@@ -57,6 +69,7 @@ public class ModuleParm implements Parm, Cloneable {
 	ModuleParm(String pName, String pUnit, ParmValidator pPv, String pInitValue,
 			String pResponseType, ParmMorph pMorph) {
 		name = pName;
+		parseName();
 		unit = pUnit;
 		responseType = pResponseType;
 		pv = pPv;
@@ -65,15 +78,41 @@ public class ModuleParm implements Parm, Cloneable {
 		morph = pMorph;
 	}
 
-	ModuleParm(String xml) {
-		name = XMLReader.getTagValue(xml, "name");
-		unit = XMLReader.getTagValue(xml, "unit");
-		responseType = XMLReader.getTagValue(xml, "response_type");
+	/**
+	 * read parm from XML, starting just after the parm start tag
+	 */
+	ModuleParm(XMLPullParser xp) {
+		used = true;
+		while (xp.next() == XMLPullParser.START_TAG) {
+			if (xp.isName("name")) {
+				name = xp.readText();
+				parseName();
+			} else if (xp.isName("unit")) {
+				unit = xp.readText();
+			} else if (xp.isName("response_type")) {
+				responseType = xp.readText();
+			} else if (xp.isName("value")) {
+				value = xp.readText();
+			} else if (xp.isName("morph")) {
+				morph = new ParmMorph(xp, this);
+			} else {
+				xp.skip();
+			}
+		}
+	}
+
+	/**
+	 * read parm written by writeBinary(), just after its PARM kind
+	 */
+	ModuleParm(PatchBinaryReader pr) throws IOException, PatchDefinitionException {
 		used = true;
-		value = XMLReader.getTagValue(xml, "value");
-		String s = XMLReader.getTagValue(xml, "morph");
-		if (s != null) {
-			morph = new ParmMorph(s, this);
+		name = pr.readString();
+		parseName();
+		unit = pr.readString();
+		responseType = pr.readString();
+		value = pr.readString();
+		if (pr.readBoolean()) {
+			morph = new ParmMorph(pr, this);
 		}
 	}
 
@@ -116,6 +155,18 @@ public class ModuleParm implements Parm, Cloneable {
 
 	void setName(String s) {
 		name = s;
+		parseName();
+		if (mod != null) {
+			mod.clearIndexes();
+		}
+	}
+
+	public String getUnit() {
+		return unit;
+	}
+
+	public String getResponseType() {
+		return responseType;
 	}
 
 	public ParmMorph getMorph() {
@@ -140,27 +191,44 @@ public class ModuleParm implements Parm, Cloneable {
 		}
 	}
 
-	public String getPrefix() {
-		if (Character.isDigit(name.charAt(name.length() - 1))) {
-			return name.substring(0, name.length() - 1);
+	/**
+	 * Split the name into prefix and trailing digit once, whenever it
+	 * changes, rather than in every getPrefix() and getNumber() call
+	 */
+	private void parseName() {
+		char c;
+
+		prefixId = -1;
+		if (name != null && name.length() > 0 &&
+				Character.isDigit(c = name.charAt(name.length() - 1))) {
+			prefix = name.substring(0, name.length() - 1);
+			number = Character.digit(c, 10);
 		} else {
-			return name;
+			prefix = name;
+			number = 0;
 		}
 	}
 
-	public int getNumber() {
-		if (Character.isDigit(name.charAt(name.length() - 1))) {
-			return new Integer(name.substring(name.length() - 1)).intValue();
-		} else {
-			return 0;
+	public String getPrefix() {
+		return prefix;
+	}
+
+	int getPrefixId() {
+		if (prefixId == -1) {
+			prefixId = SymbolTable.intern(getPrefix());
 		}
+		return prefixId;
+	}
+
+	public int getNumber() {
+		return number;
 	}
 
 	public void setNumber(int i) {
-		if (Character.isDigit(name.charAt(name.length() - 1))) {
-			name = name.substring(0, name.length() - 1) + i;
-		} else {
-			name = name + i;
+		name = prefix + i;
+		parseName();
+		if (mod != null) {
+			mod.clearIndexes();
 		}
 	}
 
@@ -192,27 +260,95 @@ public class ModuleParm implements Parm, Cloneable {
 		return attenuatedJack;
 	}
 
-	public String writeXML() {
+	/**
+	 * Unused parms, and attenuators of unused jacks, are left out when the
+	 * patch is written
+	 */
+	boolean isWritten() {
 		if (used == false) {
-			return "";
+			return false;
 		}
 		if (attenuatedJack != null && (attenuatedJack.isUsed() == false ||
 				attenuatedJack.isConnectedToUsed() == false)) {
-			return "";
+			return false;
 		}
-		StringBuffer sb = new StringBuffer("<parm>");
-		sb.append("<name>" + name + "</name>");
+		return true;
+	}
+
+	public void writeXML(XMLWriter xw) throws IOException {
+		if (isWritten() == false) {
+			return;
+		}
+		xw.startTag("parm");
+		xw.element("name", name);
 		if (unit != null) {
-			sb.append("<unit>" + unit + "</unit>");
+			xw.element("unit", unit);
 		}
 		if (responseType != null) {
-			sb.append("<response_type>" + responseType + "</response_type>");
+			xw.element("response_type", responseType);
+		}
+		xw.element("value", value);
+		if (morph != null) {
+			morph.writeXML(xw);
 		}
-		sb.append("<value>" + value + "</value>");
+		xw.endTag("parm");
+	}
+
+	void writeBinary(PatchBinaryWriter pw) throws IOException {
+		if (isWritten() == false) {
+			return;
+		}
+		pw.writeKind(PatchBinaryWriter.PARM);
+		pw.writeString(name);
+		pw.writeString(unit);
+		pw.writeString(responseType);
+		pw.writeString(value);
+		if (morph != null && morph.isUsed()) {
+			pw.writeBoolean(true);
+			morph.writeBinary(pw);
+		} else {
+			pw.writeBoolean(false);
+		}
+	}
+
+	void saveState() {
+		savedName = name;
+		savedUsed = used;
+		savedMod = mod;
+		savedValue = value;
+		savedAttenuatedJack = attenuatedJack;
 		if (morph != null) {
-			sb.append(morph.writeXML());
+			morph.saveState();
 		}
-		sb.append("</parm>");
-		return sb.toString();
+		if (link != null) {
+			link.saveState();
+		}
+	}
+
+	void restoreState() {
+		name = savedName;
+		parseName();
+		used = savedUsed;
+		mod = savedMod;
+		value = savedValue;
+		attenuatedJack = savedAttenuatedJack;
+		if (morph != null) {
+			morph.restoreState();
+		}
+		if (link != null) {
+			link.restoreState();
+		}
+	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		ModuleParm mp = (ModuleParm)super.clone();
+		copies.put(this, mp);
+		mp.mod = (Module)Util.copyOf(mod, copies);
+		mp.attenuatedJack = (ModuleInputJack)Util.copyOf(attenuatedJack, copies);
+		mp.morph = (ParmMorph)Util.copyOf(morph, copies);
+		mp.link = (ParmLink)Util.copyOf(link, copies);
+		mp.savedMod = (Module)Util.copyOf(savedMod, copies);
+		mp.savedAttenuatedJack = (ModuleInputJack)Util.copyOf(savedAttenuatedJack, copies);
+		return mp;
 	}
 }
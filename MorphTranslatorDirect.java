@@ -29,6 +29,8 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.util.*;
+
 public class MorphTranslatorDirect implements ParmTranslator {
 	private SynthParmRange sp;
 	private SynthParmRange bp;
@@ -73,4 +75,14 @@ public class MorphTranslatorDirect implements ParmTranslator {
 		int i = new Integer(valm).intValue() - new Integer(valp).intValue();
 		sp.setValue(i);
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		MorphTranslatorDirect pt = (MorphTranslatorDirect)super.clone();
+		copies.put(this, pt);
+		pt.sp = (SynthParmRange)Util.copyOf(sp, copies);
+		pt.bp = (SynthParmRange)Util.copyOf(bp, copies);
+		pt.mp = (ModuleParm)Util.copyOf(mp, copies);
+		pt.morph = (ParmMorph)Util.copyOf(morph, copies);
+		return pt;
+	}
 }
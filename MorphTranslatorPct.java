@@ -27,6 +27,8 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.util.*;
+
 public class MorphTranslatorPct implements ParmTranslator {
 	private SynthParmRange sp;
 	private SynthParmRange bp;
@@ -75,4 +77,14 @@ public class MorphTranslatorPct implements ParmTranslator {
 			sp.setValue(0);
 		}
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		MorphTranslatorPct pt = (MorphTranslatorPct)super.clone();
+		copies.put(this, pt);
+		pt.sp = (SynthParmRange)Util.copyOf(sp, copies);
+		pt.bp = (SynthParmRange)Util.copyOf(bp, copies);
+		pt.mp = (ModuleParm)Util.copyOf(mp, copies);
+		pt.morph = (ParmMorph)Util.copyOf(morph, copies);
+		return pt;
+	}
 }
@@ -27,6 +27,8 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.util.*;
+
 public class MorphTranslatorRangeConvert implements ParmTranslator {
 	private SynthParmRange sp;
 	private SynthParmRange bp;
@@ -78,4 +80,14 @@ public class MorphTranslatorRangeConvert implements ParmTranslator {
 			sp.setValue(new Double(d - 0.5).intValue());
 		}
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		MorphTranslatorRangeConvert pt = (MorphTranslatorRangeConvert)super.clone();
+		copies.put(this, pt);
+		pt.sp = (SynthParmRange)Util.copyOf(sp, copies);
+		pt.bp = (SynthParmRange)Util.copyOf(bp, copies);
+		pt.mp = (ModuleParm)Util.copyOf(mp, copies);
+		pt.morph = (ParmMorph)Util.copyOf(morph, copies);
+		return pt;
+	}
 }
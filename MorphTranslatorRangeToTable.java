@@ -29,6 +29,8 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.util.*;
+
 public class MorphTranslatorRangeToTable implements ParmTranslator {
 	private SynthParmRange sp;
 	private SynthParmRange bp;
@@ -85,4 +87,14 @@ public class MorphTranslatorRangeToTable implements ParmTranslator {
 		// FIXME does this need to give a warning message if the value is approximated?
 		sp.setValue(i);
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		MorphTranslatorRangeToTable pt = (MorphTranslatorRangeToTable)super.clone();
+		copies.put(this, pt);
+		pt.sp = (SynthParmRange)Util.copyOf(sp, copies);
+		pt.bp = (SynthParmRange)Util.copyOf(bp, copies);
+		pt.mp = (ModuleParm)Util.copyOf(mp, copies);
+		pt.morph = (ParmMorph)Util.copyOf(morph, copies);
+		return pt;
+	}
 }
@@ -0,0 +1,264 @@
+
+/* Synth Patch Conversion for Clavia Nord Lead 2 programs
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package PatchConversion;
+
+/**
+ * Reads a Nord Lead 2 bank dump, or any file holding a series of program
+ * dumps, and converts all of its programs.  The programs are found in
+ * place in the buffer rather than being copied out, and are ordered by
+ * the bank and program numbers in their sysex headers (bytes 4 and 5).
+ * Conversion is split across several threads, each of which reuses a
+ * single NordLead2Prog (see SynthPatchAbstract.reset()).
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.io.*;
+
+public class NordLead2Bank {
+	private byte buf[];
+	private int offsets[]; // start of each program dump in buf, in program order
+	private int next; // next program to be converted by a Converter
+
+	NordLead2Bank(byte pBuf[]) throws PatchDefinitionException {
+		buf = pBuf;
+		findPrograms();
+	}
+
+	/**
+	 * Convert Nord Lead 2 bank dump to XML, one file per program
+	 * @param toXML input-file output-file-prefix
+	 * @throws IOException
+	 */
+	public static void main(String args[]) throws IOException, PatchDefinitionException  {
+		if (args.length == 3 && args[0].equalsIgnoreCase("toXML")) {
+			System.out.println("----------------------------------------");
+			System.out.println("NordLead2Bank " + args[0] + " " + args[1] +
+					" " + args[2]);
+			try {
+				File inputFile = new File(args[1]);
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(inputFile)));
+				byte sysex[] = new byte[(int)inputFile.length()];
+				in.readFully(sysex);
+				in.close();
+				NordLead2Bank bank = new NordLead2Bank(sysex);
+				boolean valid[] = bank.writeXML(args[2], Runtime.getRuntime().availableProcessors());
+				for (int i = 0; i < valid.length; i++) {
+					if (valid[i] == false) {
+						System.out.println("bank " + bank.getBankNumber(i) + " program " +
+								bank.getProgramNumber(i) + " did not contain valid sysex");
+					}
+				}
+			} catch (FileNotFoundException e) {
+				System.out.println("unable to open input file " + args[1]);
+			}
+			System.out.println("   done.");
+			return;
+		}
+		System.out.println("please specify toXML followed by input filename and output prefix");
+	}
+
+	/**
+	 * Find each program dump in the buffer, then put them in order by bank
+	 * and program number.  Programs with the same numbers stay in the
+	 * order they appear in the buffer.
+	 */
+	private void findPrograms() throws PatchDefinitionException {
+		NordLead2Prog nl2 = NordLead2Prog.newPatch();
+		int len = NordLead2Prog.INIT_SYSEX.length;
+		int found[] = new int[buf.length / len];
+		int i, n = 0;
+
+		for (i = 0; i + len <= buf.length; ) {
+			if (nl2.matchSysex(buf, i, len) && buf[i + len - 1] == (byte)0xF7) {
+				found[n++] = i;
+				i += len;
+			} else {
+				i++;
+			}
+		}
+
+		// sort on bank, program, then position in the buffer
+		long keys[] = new long[n];
+		for (i = 0; i < n; i++) {
+			keys[i] = ((long)((buf[found[i] + 4] & 0xFF) << 8 | (buf[found[i] + 5] & 0xFF)) << 32) |
+					found[i];
+		}
+		java.util.Arrays.sort(keys);
+		offsets = new int[n];
+		for (i = 0; i < n; i++) {
+			offsets[i] = (int)keys[i];
+		}
+	}
+
+	public int getProgramCount() {
+		return offsets.length;
+	}
+
+	/**
+	 * @return bank number from sysex header; 0 is the edit buffer
+	 */
+	public int getBankNumber(int i) {
+		return buf[offsets[i] + 4];
+	}
+
+	public int getProgramNumber(int i) {
+		return buf[offsets[i] + 5];
+	}
+
+	/**
+	 * @return position of program's sysex within the buffer
+	 */
+	public int getOffset(int i) {
+		return offsets[i];
+	}
+
+	/**
+	 * Convert all programs to XML
+	 * @param threads number of programs to convert at the same time
+	 * @return XML for each program in program order, or null where the
+	 * program's sysex was not valid
+	 */
+	public String[] toXML(int threads) throws PatchDefinitionException {
+		String xml[] = new String[offsets.length];
+		try {
+			convert(xml, null, new boolean[offsets.length], threads);
+		} catch (IOException e) {
+			e.printStackTrace(System.err); // can't happen without files
+		}
+		return xml;
+	}
+
+	/**
+	 * Convert all programs to formatted XML, writing each one straight to
+	 * its own file, prefix-bank-program.xml, rather than building it as a
+	 * String first
+	 * @param threads number of programs to convert at the same time
+	 * @return for each program in program order, false if its sysex was
+	 * not valid, in which case no file was written
+	 */
+	public boolean[] writeXML(String prefix, int threads)
+			throws PatchDefinitionException, IOException {
+		boolean valid[] = new boolean[offsets.length];
+		convert(null, prefix, valid, threads);
+		return valid;
+	}
+
+	/**
+	 * Convert all programs, into xml if it's not null, otherwise to files
+	 * starting with prefix
+	 */
+	private void convert(String xml[], String prefix, boolean valid[], int threads)
+			throws PatchDefinitionException, IOException {
+		Converter conv[] = new Converter[Math.max(1, Math.min(threads, offsets.length))];
+		int i;
+
+		next = 0;
+		for (i = 0; i < conv.length; i++) {
+			conv[i] = new Converter(xml, prefix, valid, NordLead2Prog.newPatch());
+		}
+		// The first converter runs in this thread
+		for (i = 1; i < conv.length; i++) {
+			conv[i].start();
+		}
+		conv[0].run();
+		for (i = 1; i < conv.length; i++) {
+			try {
+				conv[i].join();
+			} catch (InterruptedException e) {
+				throw new PatchDefinitionException("interrupted while converting bank");
+			}
+		}
+		for (i = 0; i < conv.length; i++) {
+			if (conv[i].error instanceof PatchDefinitionException) {
+				throw (PatchDefinitionException)conv[i].error;
+			} else if (conv[i].error instanceof IOException) {
+				throw (IOException)conv[i].error;
+			} else if (conv[i].error != null) {
+				throw (RuntimeException)conv[i].error;
+			}
+		}
+	}
+
+	private synchronized int nextProgram() {
+		if (next >= offsets.length) {
+			return -1;
+		}
+		return next++;
+	}
+
+	/**
+	 * Converts programs until none are left, reusing one NordLead2Prog
+	 */
+	private class Converter extends Thread {
+		private String xml[];
+		private String prefix;
+		private boolean valid[];
+		private NordLead2Prog nl2;
+		// PatchDefinitionException, IOException or RuntimeException
+		private Exception error;
+
+		Converter(String pXml[], String pPrefix, boolean pValid[], NordLead2Prog pNl2) {
+			xml = pXml;
+			prefix = pPrefix;
+			valid = pValid;
+			nl2 = pNl2;
+		}
+
+		public void run() {
+			int i;
+			boolean first = true;
+			try {
+				while ((i = nextProgram()) != -1) {
+					if (first == false) {
+						nl2.reset();
+					}
+					first = false;
+					nl2.fromSysex(buf, offsets[i], NordLead2Prog.INIT_SYSEX.length);
+					valid[i] = nl2.isValid();
+					if (valid[i] == false) {
+						continue;
+					}
+					if (xml != null) {
+						xml[i] = nl2.toXML();
+					} else {
+						Writer out = new BufferedWriter(new FileWriter(prefix + "-" +
+								getBankNumber(i) + "-" + getProgramNumber(i) + ".xml"));
+						try {
+							nl2.toXML(out);
+							out.write(System.getProperty("line.separator"));
+						} finally {
+							out.close();
+						}
+					}
+				}
+			} catch (PatchDefinitionException e) {
+				error = e;
+			} catch (IOException e) {
+				error = e;
+			} catch (RuntimeException e) {
+				// rethrown by toXML(), rather than just ending this thread
+				// and leaving its program unconverted
+				error = e;
+			}
+		}
+	}
+}
@@ -0,0 +1,115 @@
+
+/* Synth Patch Conversion for Clavia Nord Lead 2 programs
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package PatchConversion;
+
+/**
+ * JUnit tests for NordLead2Bank
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.io.*;
+import java.util.*;
+import junit.framework.*;
+
+public class NordLead2BankTest extends TestCase {
+
+	public NordLead2BankTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(NordLead2BankTest.class);
+	}
+
+	/**
+	 * Build a buffer of programs out of order, with some junk between them
+	 */
+	private byte[] makeBank(int programs[]) {
+		int len = NordLead2Prog.INIT_SYSEX.length;
+		byte buf[] = new byte[programs.length * (len + 3)];
+		for (int i = 0, j = 0; i < programs.length; i++) {
+			buf[j++] = (byte)0xF0; // not a complete dump
+			buf[j++] = (byte)0x7E;
+			buf[j++] = (byte)0xF7;
+			System.arraycopy(NordLead2Prog.INIT_SYSEX, 0, buf, j, len);
+			buf[j + 4] = (byte)1; // bank
+			buf[j + 5] = (byte)programs[i];
+			buf[j + 10] = (byte)(programs[i] & 0x0F); // vary a parm
+			j += len;
+		}
+		return buf;
+	}
+
+	public void testFindPrograms() throws PatchDefinitionException {
+		NordLead2Bank bank = new NordLead2Bank(makeBank(new int[] { 5, 2, 9, 0 }));
+		assertEquals(4, bank.getProgramCount());
+		assertEquals(0, bank.getProgramNumber(0));
+		assertEquals(2, bank.getProgramNumber(1));
+		assertEquals(5, bank.getProgramNumber(2));
+		assertEquals(9, bank.getProgramNumber(3));
+		assertEquals(1, bank.getBankNumber(3));
+		assertEquals(3, bank.getOffset(2));
+	}
+
+	public void testToXML() throws PatchDefinitionException {
+		int programs[] = new int[] { 7, 3, 11, 0, 4, 1, 9 };
+		byte buf[] = makeBank(programs);
+		NordLead2Bank bank = new NordLead2Bank(buf);
+		String actual[] = bank.toXML(3);
+		assertEquals(programs.length, actual.length);
+		for (int i = 0; i < actual.length; i++) {
+			NordLead2Prog nl2 = new NordLead2Prog();
+			byte sysex[] = new byte[NordLead2Prog.INIT_SYSEX.length];
+			System.arraycopy(buf, bank.getOffset(i), sysex, 0, sysex.length);
+			nl2.fromSysex(sysex);
+			assertEquals(nl2.toXML(), actual[i]);
+		}
+		assertTrue(Arrays.equals(actual, bank.toXML(1)));
+	}
+
+	public void testWriteXML() throws IOException, PatchDefinitionException {
+		int programs[] = new int[] { 6, 2, 8 };
+		NordLead2Bank bank = new NordLead2Bank(makeBank(programs));
+		String xml[] = bank.toXML(1);
+		File dir = File.createTempFile("bank", "");
+		dir.delete();
+		dir.mkdir();
+		String prefix = new File(dir, "nl2").getPath();
+		boolean valid[] = bank.writeXML(prefix, 2);
+		for (int i = 0; i < programs.length; i++) {
+			assertTrue(valid[i]);
+			File f = new File(prefix + "-1-" + bank.getProgramNumber(i) + ".xml");
+			char c[] = new char[(int)f.length()];
+			Reader in = new FileReader(f);
+			int n = 0, len;
+			while (n < c.length && (len = in.read(c, n, c.length - n)) != -1) {
+				n += len;
+			}
+			in.close();
+			f.delete();
+			// same as formatting the String afterwards
+			assertEquals(Util.formatXML(xml[i], -1) + System.getProperty("line.separator"),
+					new String(c, 0, n));
+		}
+		dir.delete();
+	}
+}
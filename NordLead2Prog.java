@@ -51,11 +51,14 @@ package PatchConversion;
  */
 
 import java.io.*;
+import java.nio.*;
 import java.text.*;
+import java.util.*;
 
 public class NordLead2Prog extends SynthPatchAbstract {
 	// byte 3 = global channel, 5 = bank, 6 = program
 	static final byte[] SYSEX_HDR = { (byte)0xF0, (byte)0x33, (byte)0x0F, (byte)0x04, 0, 0 };
+	static final int CHANNEL_OFFSET = 2; // offset of global channel in sysex
 	static final byte[] INIT_SYSEX = {
 		(byte)0xF0, (byte)0x33, (byte)0x0F, (byte)0x04, (byte)0x00, (byte)0x00, (byte)0x0C, (byte)0x03,
 		(byte)0x03, (byte)0x04, (byte)0x09, (byte)0x03, (byte)0x0D, (byte)0x03, (byte)0x00, (byte)0x00,
@@ -78,7 +81,13 @@ public class NordLead2Prog extends SynthPatchAbstract {
 	};
 
     private int dataLen = 132;
+	private byte data[] = new byte[dataLen / 2]; // decoded program, reused by fromSysex/toSysex
+	private byte hdr[] = new byte[SYSEX_HDR.length]; // header, reused by toSysex(ByteBuffer, int)
+	private SysexLayout pgmLayout, hdrLayout, hdrLayoutEdit; // shared by copies
+	private int values[]; // pgmParms values, in pgmLayout order
+	private int hdrValues[];
 	private String morphControl = "Key Velocity";
+	private static NordLead2Prog template; // see newPatch()
 
 	static final String ENV_ATTACK[] = {
 		//Sampling of values:
@@ -298,7 +307,7 @@ public class NordLead2Prog extends SynthPatchAbstract {
 					byte sysex[] = new byte[fileLen];
 					in.read(sysex, 0, fileLen);
 					in.close();
-					NordLead2Prog nl2 = new NordLead2Prog();
+					NordLead2Prog nl2 = NordLead2Prog.newPatch();
 					nl2.fromSysex(sysex);
 
 					if (nl2.isValid()) {
@@ -315,7 +324,8 @@ public class NordLead2Prog extends SynthPatchAbstract {
 							// This is not an error
 						};
 						PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(args[2])));
-						out.println(Util.formatXML(nl2.toXML(), -1));
+						nl2.toXML(out);
+						out.println();
 						out.close();
 					} else {
 						System.out.println("input file " + args[1] + " did not contain valid sysex");
@@ -334,7 +344,7 @@ public class NordLead2Prog extends SynthPatchAbstract {
 						sb.append(s + System.getProperty("line.separator"));
 					}
 					in.close();
-					NordLead2Prog nl2 = new NordLead2Prog();
+					NordLead2Prog nl2 = NordLead2Prog.newPatch();
 					nl2.fromXML(sb.toString());
 
 					if (nl2.isValid()) {
@@ -371,8 +381,42 @@ public class NordLead2Prog extends SynthPatchAbstract {
 	NordLead2Prog() throws PatchDefinitionException {
 		super("Clavia", "Nord Lead 2 program", INIT_SYSEX, INIT_SYSEX, "1.10");
 		buildNL2Patch();
+		pgmLayout = new SysexLayout(pgmParms);
+		hdrLayout = new SysexLayout(hdrParms);
+		hdrLayoutEdit = new SysexLayout(hdrParmsEdit);
+		values = new int[pgmLayout.size()];
+		hdrValues = new int[Math.max(hdrLayout.size(), hdrLayoutEdit.size())];
 		buildGenericPatch();
 		buildGenericPatchLinkage();
+		saveInitialState();
+	}
+
+	/**
+	 * Creates a new patch by copying a template which is built the first
+	 * time it's needed; this is much faster than running the constructor,
+	 * which rebuilds the whole patch definition every time.
+	 */
+	static NordLead2Prog newPatch() throws PatchDefinitionException {
+		synchronized (NordLead2Prog.class) {
+			if (template == null) {
+				template = new NordLead2Prog();
+			}
+		}
+		return (NordLead2Prog)template.copyPatch();
+	}
+
+	public void reset() {
+		super.reset();
+		morphControl = "Key Velocity";
+	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		NordLead2Prog nl2 = (NordLead2Prog)super.copy(copies);
+		nl2.data = new byte[dataLen / 2];
+		nl2.hdr = new byte[SYSEX_HDR.length];
+		nl2.values = new int[values.length];
+		nl2.hdrValues = new int[hdrValues.length];
+		return nl2;
 	}
 
 	void buildNL2Patch() {
@@ -1869,27 +1913,26 @@ public class NordLead2Prog extends SynthPatchAbstract {
 	 * look for tags for a stored patch
 	 */
 	public boolean matchXMLStored(String xml) {
-		String tag[], s;
+		String s;
 
 		s = matchXMLTop(xml);
 		if (s == null) {
 			return false;
 		}
-		XMLReader xr = new XMLReader(s);
-		tag = xr.getNextTag();
-		if (tag == null || tag[0].equalsIgnoreCase("version") == false) {
+		XMLPullParser xp = new XMLPullParser(s);
+		if (xp.next() != XMLPullParser.START_TAG || xp.isName("version") == false) {
 			return false;
 		}
-		tag = xr.getNextTag();
-		if (tag == null || tag[0].equalsIgnoreCase("global_channel") == false) {
+		xp.skip();
+		if (xp.next() != XMLPullParser.START_TAG || xp.isName("global_channel") == false) {
 			return false;
 		}
-		tag = xr.getNextTag();
-		if (tag == null || tag[0].equalsIgnoreCase("bank_number") == false) {
+		xp.skip();
+		if (xp.next() != XMLPullParser.START_TAG || xp.isName("bank_number") == false) {
 			return false;
 		}
-		tag = xr.getNextTag();
-		if (tag == null || tag[0].equalsIgnoreCase("patch_number") == false) {
+		xp.skip();
+		if (xp.next() != XMLPullParser.START_TAG || xp.isName("patch_number") == false) {
 			return false;
 		}
 		return true;
@@ -1899,23 +1942,22 @@ public class NordLead2Prog extends SynthPatchAbstract {
 	 * look for tags for an edit buffer patch
 	 */
 	public boolean matchXMLEdit(String xml) {
-		String tag[], s;
+		String s;
 	
 		s = matchXMLTop(xml);
 		if (s == null) {
 			return false;
 		}
-		XMLReader xr = new XMLReader(s);
-		tag = xr.getNextTag();
-		if (tag == null || tag[0].equalsIgnoreCase("version") == false) {
+		XMLPullParser xp = new XMLPullParser(s);
+		if (xp.next() != XMLPullParser.START_TAG || xp.isName("version") == false) {
 			return false;
 		}
-		tag = xr.getNextTag();
-		if (tag == null || tag[0].equalsIgnoreCase("global_channel") == false) {
+		xp.skip();
+		if (xp.next() != XMLPullParser.START_TAG || xp.isName("global_channel") == false) {
 			return false;
 		}
-		tag = xr.getNextTag();
-		if (tag == null || tag[0].equalsIgnoreCase("edit_buffer") == false) {
+		xp.skip();
+		if (xp.next() != XMLPullParser.START_TAG || xp.isName("edit_buffer") == false) {
 			return false;
 		}
 		return true;
@@ -2261,12 +2303,44 @@ public class NordLead2Prog extends SynthPatchAbstract {
      */
     static byte[] sysexToData(byte sysex[], int start, int len) {
         byte data[] = new byte[len / 2];
-        for (int i = start, j = 0; i < start + len; i+=2, j++) {
-            data[j] = (byte)((sysex[i] & 0x0F) | (sysex[i + 1] << 4));
-        }
+        sysexToData(sysex, start, len, data, 0);
         return data;
     }
 
+	/**
+	 * convert sequence of nibbles in sysex into bytes, storing them in
+	 * caller's data buffer
+	 */
+	static void sysexToData(byte sysex[], int start, int len, byte data[], int dataStart) {
+		for (int i = start, j = dataStart; i < start + len; i += 2, j++) {
+			data[j] = (byte)((sysex[i] & 0x0F) | (sysex[i + 1] << 4));
+		}
+	}
+
+	/**
+	 * convert sequence of nibbles in a sysex buffer (e.g. a SysexScanner
+	 * frame) into bytes, storing them in caller's data buffer.  Works on
+	 * 8 nibbles at a time when the buffer is big-endian.
+	 */
+	static void sysexToData(ByteBuffer sysex, int start, int len, byte data[], int dataStart) {
+		int i = start, j = dataStart;
+		long w;
+		if (sysex.order() == ByteOrder.BIG_ENDIAN) {
+			for (; i + 8 <= start + len; i += 8, j += 4) {
+				// nibble pairs are (low, high) in each 16 bits
+				w = sysex.getLong(i) & 0x0F0F0F0F0F0F0F0FL;
+				w = ((w >>> 8) & 0x000F000F000F000FL) | ((w & 0x000F000F000F000FL) << 4);
+				data[j] = (byte)(w >>> 48);
+				data[j + 1] = (byte)(w >>> 32);
+				data[j + 2] = (byte)(w >>> 16);
+				data[j + 3] = (byte)w;
+			}
+		}
+		for (; i < start + len; i += 2, j++) {
+			data[j] = (byte)((sysex.get(i) & 0x0F) | (sysex.get(i + 1) << 4));
+		}
+	}
+
 	/**
 	 * convert data to sequence of nibbles and make into complete
 	 * sysex array of bytes
@@ -2275,12 +2349,43 @@ public class NordLead2Prog extends SynthPatchAbstract {
 		int len = hdr.length + dataLen + 1;
 		byte sysex[] = new byte[len];
 		System.arraycopy(hdr, 0, sysex, 0, hdr.length);
-		for (int i = 0, j = hdr.length; i < (dataLen / 2); i++) {
+		dataToSysex(data, 0, dataLen, sysex, hdr.length);
+		sysex[len - 1] = (byte)0xF7;
+		return sysex;
+	}
+
+	/**
+	 * convert data to sequence of dataLen nibbles, storing them in caller's
+	 * sysex buffer
+	 */
+	static void dataToSysex(byte data[], int dataStart, int dataLen, byte sysex[], int start) {
+		for (int i = dataStart, j = start; i < dataStart + (dataLen / 2); i++) {
 			sysex[j++] = (byte)(data[i] & 0x0F);
 			sysex[j++] = (byte)((data[i] & 0xF0) >>> 4);
 		}
-		sysex[len - 1] = (byte)0xF7;
-		return sysex;
+	}
+
+	/**
+	 * convert data to sequence of dataLen nibbles, storing them in caller's
+	 * sysex buffer.  Works on 4 bytes at a time when the buffer is
+	 * big-endian.
+	 */
+	static void dataToSysex(byte data[], int dataStart, int dataLen, ByteBuffer sysex, int start) {
+		int i = dataStart, j = start, end = dataStart + (dataLen / 2);
+		long w;
+		if (sysex.order() == ByteOrder.BIG_ENDIAN) {
+			for (; i + 4 <= end; i += 4, j += 8) {
+				w = ((data[i] & 0xFFL) << 48) | ((data[i + 1] & 0xFFL) << 32) |
+						((data[i + 2] & 0xFFL) << 16) | (data[i + 3] & 0xFFL);
+				// each byte becomes (low nibble, high nibble)
+				w = ((w & 0x000F000F000F000FL) << 8) | ((w >>> 4) & 0x000F000F000F000FL);
+				sysex.putLong(j, w);
+			}
+		}
+		for (; i < end; i++) {
+			sysex.put(j++, (byte)(data[i] & 0x0F));
+			sysex.put(j++, (byte)((data[i] & 0xF0) >>> 4));
+		}
 	}
 
 	/**
@@ -2289,68 +2394,165 @@ public class NordLead2Prog extends SynthPatchAbstract {
 	 * @return valid
 	 */
     public boolean matchSysex(byte sysex[]) {
-    	if (sysex.length == INIT_SYSEX.length &&
-    			sysex[0] == SYSEX_HDR[0] &&
-				sysex[1] == SYSEX_HDR[1] &&
-				sysex[3] == SYSEX_HDR[3]) {
-			return true;
-    	} else {
-    		return false;
-    	}
+    	return matchSysex(sysex, 0, sysex.length);
     }
 
+	/**
+	 * see if part of a buffer (such as a bank dump) is a Nord Lead 2
+	 * program dump, without copying it out of the buffer
+	 * @return valid
+	 */
+	public boolean matchSysex(byte buf[], int offset, int len) {
+		if (len == INIT_SYSEX.length && offset >= 0 && offset + len <= buf.length &&
+				buf[offset] == SYSEX_HDR[0] &&
+				buf[offset + 1] == SYSEX_HDR[1] &&
+				buf[offset + 3] == SYSEX_HDR[3]) {
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * see if a sysex frame, such as one found by SysexScanner, is a Nord
+	 * Lead 2 program dump, without copying it
+	 * @return valid
+	 */
+	public boolean matchSysex(ByteBuffer frame) {
+		int i = frame.position();
+		if (frame.remaining() == INIT_SYSEX.length &&
+				frame.get(i) == SYSEX_HDR[0] &&
+				frame.get(i + 1) == SYSEX_HDR[1] &&
+				frame.get(i + 3) == SYSEX_HDR[3]) {
+			return true;
+		} else {
+			return false;
+		}
+	}
+
 	/**
 	 * create NL2 sysex dump from internal variables
 	 * @return sysex in byte array
 	 */
 	public void toSysex() {
-		int i;
-		byte data[] = new byte[dataLen / 2];
-		for (i = 0; i < pgmParms.size(); i++) {
-			((SynthParm)pgmParms.get(i)).putValueToSysex(data);
+		if (sysex == null) {
+			sysex = new byte[INIT_SYSEX.length];
 		}
-		byte hdr[] = new byte[SYSEX_HDR.length];
-		System.arraycopy(SYSEX_HDR, 0, hdr, 0, SYSEX_HDR.length);
+		putValues(sysex);
+		dataToSysex(data, 0, dataLen, sysex, SYSEX_HDR.length);
+		sysex[INIT_SYSEX.length - 1] = (byte)0xF7;
+	}
+
+	/**
+	 * encode internal variables into data, and the header values into the
+	 * start of syx
+	 */
+	private void putValues(byte syx[]) {
+		Arrays.fill(data, (byte)0);
+		pgmLayout.putValuesToSysex(pgmParms, values, data);
+		System.arraycopy(SYSEX_HDR, 0, syx, 0, SYSEX_HDR.length);
 		if (programType == 0) {
-			for (i = 0; i < hdrParms.size(); i++) {
-				((SynthParm)hdrParms.get(i)).putValueToSysex(hdr);
-			}
+			hdrLayout.putValuesToSysex(hdrParms, hdrValues, syx);
 		} else {
-			for (i = 0; i < hdrParmsEdit.size(); i++) {
-				((SynthParm)hdrParmsEdit.get(i)).putValueToSysex(hdr);
-			}
+			hdrLayoutEdit.putValuesToSysex(hdrParmsEdit, hdrValues, syx);
 		}
-		byte syx[] = dataToSysex(data, hdr, dataLen); 
-		System.arraycopy(syx, 0, sysex, 0, INIT_SYSEX.length);
+	}
+
+	/**
+	 * create NL2 sysex dump from internal variables, and store it at offset
+	 * in caller's buffer
+	 */
+	public void toSysex(byte buf[], int offset) {
+		toSysex();
+		System.arraycopy(sysex, 0, buf, offset, sysex.length);
+	}
+
+	/**
+	 * create NL2 sysex dump from internal variables, and store it at offset
+	 * in caller's buffer without building it in getSysex() first
+	 */
+	public void toSysex(ByteBuffer buf, int offset) {
+		putValues(hdr);
+		for (int i = 0; i < hdr.length; i++) {
+			buf.put(offset + i, hdr[i]);
+		}
+		dataToSysex(data, 0, dataLen, buf, offset + hdr.length);
+		buf.put(offset + INIT_SYSEX.length - 1, (byte)0xF7);
 	}
 
 	/**
 	 * read NL2 sysex dump into internal variables
 	 */
 	public void fromSysex(byte syx[]) {
-		int i;
-		if (matchSysex(syx) == false) {
+		fromSysex(syx, 0, syx.length);
+	}
+
+	/**
+	 * read NL2 sysex dump found at offset in a larger buffer (such as a
+	 * bank dump) into internal variables
+	 */
+	public void fromSysex(byte buf[], int offset, int len) {
+		if (matchSysex(buf, offset, len) == false) {
+			System.out.println("input file does not contain a " + manufacturerName +
+					" " + itemName);
+			return;
+		}
+		if (sysex == null || sysex.length != len) {
+			sysex = new byte[len];
+		}
+		System.arraycopy(buf, offset, sysex, 0, len);
+		sysexToData(buf, offset + SYSEX_HDR.length, dataLen, data, 0);
+		getParmValues();
+	}
+
+	/**
+	 * read NL2 sysex dump from a sysex frame (e.g. from SysexScanner) into
+	 * internal variables
+	 */
+	public void fromSysex(ByteBuffer frame) {
+		int i, p = frame.position();
+		if (matchSysex(frame) == false) {
 			System.out.println("input file does not contain a " + manufacturerName +
 					" " + itemName);
 			return;
 		}
-		sysex = new byte[syx.length];
-		System.arraycopy(syx, 0, sysex, 0, syx.length);
-		byte data[] = sysexToData(syx, SYSEX_HDR.length, dataLen);
-		if (syx[4] == 0) {
+		if (sysex == null || sysex.length != frame.remaining()) {
+			sysex = new byte[frame.remaining()];
+		}
+		for (i = 0; i < sysex.length; i++) {
+			sysex[i] = frame.get(p + i);
+		}
+		sysexToData(frame, p + SYSEX_HDR.length, dataLen, data, 0);
+		getParmValues();
+	}
+
+	/**
+	 * set parm values from the header in sysex and the decoded data
+	 */
+	private void getParmValues() {
+		if (sysex[4] == 0) {
 			programType = 1;
-			for (i = 0; i < hdrParmsEdit.size(); i++) {
-				((SynthParm)hdrParmsEdit.get(i)).getValueFromSysex(sysex);
-			}
+			hdrLayoutEdit.getValuesFromSysex(hdrParmsEdit, sysex, hdrValues);
 		} else {
 			programType = 0;
-			for (i = 0; i < hdrParms.size(); i++) {
-				((SynthParm)hdrParms.get(i)).getValueFromSysex(sysex);
-			}
-		}
-		for (i = 0; i < pgmParms.size(); i++) {
-			((SynthParm)pgmParms.get(i)).getValueFromSysex(data);
+			hdrLayout.getValuesFromSysex(hdrParms, sysex, hdrValues);
 		}
+		pgmLayout.getValuesFromSysex(pgmParms, data, values);
+	}
+
+	/**
+	 * @return layout of program parms within decoded program data
+	 */
+	SysexLayout getProgramLayout() {
+		return pgmLayout;
+	}
+
+	/**
+	 * @return values of program parms, in getProgramLayout() order, as of
+	 * the last fromSysex() or toSysex()
+	 */
+	int[] getProgramValues() {
+		return values;
 	}
 }
 
@@ -2407,6 +2609,14 @@ class NL2ParmTranslatorPW implements ParmTranslator {
 			sp.setValue(mp.getValue());
 		}
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		NL2ParmTranslatorPW pt = (NL2ParmTranslatorPW)super.clone();
+		copies.put(this, pt);
+		pt.sp = (SynthParmRange)Util.copyOf(sp, copies);
+		pt.mp = (ModuleParm)Util.copyOf(mp, copies);
+		return pt;
+	}
 }
 
 /**
@@ -2461,6 +2671,16 @@ class NL2MorphTranslatorPW implements ParmTranslator {
 			sp.setValue(0);
 		}
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		NL2MorphTranslatorPW pt = (NL2MorphTranslatorPW)super.clone();
+		copies.put(this, pt);
+		pt.sp = (SynthParmRange)Util.copyOf(sp, copies);
+		pt.bp = (SynthParmRange)Util.copyOf(bp, copies);
+		pt.mp = (ModuleParm)Util.copyOf(mp, copies);
+		pt.morph = (ParmMorph)Util.copyOf(morph, copies);
+		return pt;
+	}
 }
 
 class NL2ModTranslatorDirect implements ParmTranslator {
@@ -2484,6 +2704,14 @@ class NL2ModTranslatorDirect implements ParmTranslator {
 	public void fromGeneric() {
 		sp.setValue(mp.getValue());
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		NL2ModTranslatorDirect pt = (NL2ModTranslatorDirect)super.clone();
+		copies.put(this, pt);
+		pt.sp = (SynthParmRange)Util.copyOf(sp, copies);
+		pt.mp = (ModuleParm)Util.copyOf(mp, copies);
+		return pt;
+	}
 }
 
 class NL2ModTranslatorPct implements ParmTranslator {
@@ -2532,6 +2760,16 @@ class NL2ModTranslatorPct implements ParmTranslator {
 		j = Util.pctToParm(morph, bp.getLow(), bp.getHi());
 		sp.setValue(j - i);
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		NL2ModTranslatorPct pt = (NL2ModTranslatorPct)super.clone();
+		copies.put(this, pt);
+		pt.sp = (SynthParmRange)Util.copyOf(sp, copies);
+		pt.bp = (SynthParmRange)Util.copyOf(bp, copies);
+		pt.mp = (ModuleParm)Util.copyOf(mp, copies);
+		pt.bmp = (ModuleParm)Util.copyOf(bmp, copies);
+		return pt;
+	}
 }
 
 class NL2ModTranslatorRangeConvert implements ParmTranslator {
@@ -2596,6 +2834,16 @@ class NL2ModTranslatorRangeConvert implements ParmTranslator {
 		}
 		sp.setValue(j - i);
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		NL2ModTranslatorRangeConvert pt = (NL2ModTranslatorRangeConvert)super.clone();
+		copies.put(this, pt);
+		pt.sp = (SynthParmRange)Util.copyOf(sp, copies);
+		pt.bp = (SynthParmRange)Util.copyOf(bp, copies);
+		pt.mp = (ModuleParm)Util.copyOf(mp, copies);
+		pt.bmp = (ModuleParm)Util.copyOf(bmp, copies);
+		return pt;
+	}
 }
 
 class NL2ModTranslatorRangeToTable implements ParmTranslator {
@@ -2658,4 +2906,14 @@ class NL2ModTranslatorRangeToTable implements ParmTranslator {
 		j = Util.matchToNumberTable(Double.toString(morph), bpv.getTbl());
 		sp.setValue(j - i);
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		NL2ModTranslatorRangeToTable pt = (NL2ModTranslatorRangeToTable)super.clone();
+		copies.put(this, pt);
+		pt.sp = (SynthParmRange)Util.copyOf(sp, copies);
+		pt.bp = (SynthParmRange)Util.copyOf(bp, copies);
+		pt.mp = (ModuleParm)Util.copyOf(mp, copies);
+		pt.bmp = (ModuleParm)Util.copyOf(bmp, copies);
+		return pt;
+	}
 }
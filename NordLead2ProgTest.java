@@ -27,6 +27,7 @@ package PatchConversion;
  */
 
 import java.io.*;
+import java.nio.*;
 import java.util.*;
 import junit.framework.*;
 
@@ -60,6 +61,284 @@ public class NordLead2ProgTest extends TestCase {
 		assertTrue(Arrays.equals(actual1, expected1));
 	}
 
+	public void testNibbleBuffers() {
+		byte data[] = new byte[13];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte)(i * 37 + 0x85);
+		}
+		byte expected[] = NordLead2Prog.dataToSysex(data, new byte[0], 26);
+		ByteBuffer bb = ByteBuffer.allocate(29);
+		NordLead2Prog.dataToSysex(data, 0, 26, bb, 3);
+		for (int i = 0; i < 26; i++) {
+			assertEquals(expected[i], bb.get(3 + i));
+		}
+		byte actual[] = new byte[15];
+		NordLead2Prog.sysexToData(bb, 3, 26, actual, 2);
+		for (int i = 0; i < data.length; i++) {
+			assertEquals(data[i], actual[2 + i]);
+		}
+		bb.order(ByteOrder.LITTLE_ENDIAN);
+		NordLead2Prog.sysexToData(bb, 3, 26, actual, 1);
+		for (int i = 0; i < data.length; i++) {
+			assertEquals(data[i], actual[1 + i]);
+		}
+	}
+
+	public void testSysexBuffers() throws PatchDefinitionException  {
+		byte sysex[] = NordLead2Prog.INIT_SYSEX.clone();
+		sysex[4] = 1;
+		sysex[5] = 7;
+		sysex[10] = (byte)((sysex[10] + 1) & 0x0F);
+		NordLead2Prog nl2 = NordLead2Prog.newPatch();
+		nl2.fromSysex(sysex);
+		String expected = nl2.toXML();
+
+		byte buf[] = new byte[sysex.length + 10];
+		System.arraycopy(sysex, 0, buf, 4, sysex.length);
+		NordLead2Prog nl2b = NordLead2Prog.newPatch();
+		nl2b.fromSysex(buf, 4, sysex.length);
+		assertEquals(expected, nl2b.toXML());
+
+		ByteBuffer frame = ByteBuffer.wrap(buf, 4, sysex.length);
+		NordLead2Prog nl2c = NordLead2Prog.newPatch();
+		nl2c.fromSysex(frame);
+		assertEquals(expected, nl2c.toXML());
+		assertTrue(Arrays.equals(nl2c.getSysex(), sysex));
+
+		Arrays.fill(buf, (byte)0);
+		nl2c.toSysex(buf, 3);
+		for (int i = 0; i < sysex.length; i++) {
+			assertEquals(sysex[i], buf[3 + i]);
+		}
+		ByteBuffer out = ByteBuffer.allocate(sysex.length + 2);
+		nl2c.toSysex(out, 2);
+		for (int i = 0; i < sysex.length; i++) {
+			assertEquals(sysex[i], out.get(2 + i));
+		}
+	}
+
+	public void testMismatchedSysexBlock() throws PatchDefinitionException  {
+		// stored program with Resonance 99
+		byte stored[] = NordLead2Prog.INIT_SYSEX.clone();
+		stored[4] = 1;
+		stored[14] = 3;
+		stored[15] = 6;
+		NordLead2Prog nl2 = NordLead2Prog.newPatch();
+		nl2.fromSysex(stored);
+		String xml = nl2.toXML();
+
+		// give it the sysex block of an edit buffer program instead
+		NordLead2Prog edit = NordLead2Prog.newPatch();
+		edit.fromSysex(NordLead2Prog.INIT_SYSEX);
+		String editXML = edit.toXML();
+		String mixed = xml.substring(0, xml.indexOf("<sysex")) +
+				editXML.substring(editXML.indexOf("<sysex"), editXML.indexOf("</sysex>")) +
+				xml.substring(xml.indexOf("</sysex>"));
+		assertFalse(mixed.equals(xml));
+
+		// the tags must win, and not be overwritten by the block
+		NordLead2Prog nl2b = NordLead2Prog.newPatch();
+		assertTrue(nl2b.fromXML(mixed));
+		assertTrue(Arrays.equals(stored, nl2b.getSysex()));
+		assertEquals(xml, nl2b.toXML());
+	}
+
+	public void testNewPatch() throws PatchDefinitionException  {
+		NordLead2Prog nl2 = new NordLead2Prog();
+		nl2.fromSysex(NordLead2Prog.INIT_SYSEX);
+		String expected = nl2.toXML();
+		NordLead2Prog copy1 = NordLead2Prog.newPatch();
+		copy1.fromSysex(NordLead2Prog.INIT_SYSEX);
+		assertEquals(expected, copy1.toXML());
+
+		// changing one copy must not affect the next one made
+		byte sysex[] = NordLead2Prog.INIT_SYSEX.clone();
+		sysex[10] = (byte)((sysex[10] + 1) & 0x0F);
+		NordLead2Prog copy2 = NordLead2Prog.newPatch();
+		copy2.fromSysex(sysex);
+		String changed = copy2.toXML();
+		NordLead2Prog copy3 = NordLead2Prog.newPatch();
+		copy3.fromSysex(NordLead2Prog.INIT_SYSEX);
+		assertEquals(expected, copy3.toXML());
+		assertFalse(changed.equals(expected));
+		assertNotSame(copy2.getGenPatch(), copy3.getGenPatch());
+	}
+
+	public void testReset() throws PatchDefinitionException  {
+		NordLead2Prog nl2 = new NordLead2Prog();
+		nl2.fromSysex(NordLead2Prog.INIT_SYSEX);
+		String expected = nl2.toXML();
+
+		byte sysex[] = NordLead2Prog.INIT_SYSEX.clone();
+		sysex[10] = (byte)((sysex[10] + 1) & 0x0F);
+		NordLead2Prog pooled = NordLead2Prog.newPatch();
+		pooled.fromSysex(sysex);
+		String changed = pooled.toXML();
+		pooled.reset();
+		pooled.fromSysex(NordLead2Prog.INIT_SYSEX);
+		assertEquals(expected, pooled.toXML());
+		pooled.reset();
+		pooled.fromSysex(sysex);
+		assertEquals(changed, pooled.toXML());
+	}
+
+	public void testMatchPlan() throws PatchDefinitionException  {
+		byte sysex[] = NordLead2Prog.INIT_SYSEX.clone();
+		sysex[10] = (byte)((sysex[10] + 1) & 0x0F);
+		String xml1 = genericXML(NordLead2Prog.INIT_SYSEX);
+		String xml2 = genericXML(sysex);
+
+		// second conversion has the same wiring, so reuses the first's plan
+		NordLead2Prog first = NordLead2Prog.newPatch();
+		first.fromXML(xml1);
+		NordLead2Prog second = NordLead2Prog.newPatch();
+		second.fromXML(xml2);
+		assertEquals(first.getGenPatch().getInputGP().topologySignature(),
+				second.getGenPatch().getInputGP().topologySignature());
+
+		// a patch with its own generic patch has no saved plans
+		NordLead2Prog searched = new NordLead2Prog();
+		searched.fromXML(xml2);
+		assertTrue(Arrays.equals(searched.getSysex(), second.getSysex()));
+		assertEquals(searched.getGenPatch().writeXML(), second.getGenPatch().writeXML());
+	}
+
+	public void testModuleMatchSearch() throws PatchDefinitionException  {
+		GenericPatch gp = NordLead2Prog.newPatch().getGenPatch();
+		assertTrue(gp.readXML(genericXML(NordLead2Prog.INIT_SYSEX)));
+		HashMap modMatchLists = gp.initialModuleMatch();
+		ArrayList inputMods = gp.getInputGP().getModules();
+
+		// every grouping returned must come from the candidate lists and
+		// use each of our modules once; most combinations are skipped
+		int i, trials = 0, combos = 1;
+		for (i = 0; i < inputMods.size(); i++) {
+			combos *= ((ArrayList)modMatchLists.get(inputMods.get(i))).size();
+		}
+		Iterator e = gp.new ModuleMatchSearch(gp.getInputGP(), modMatchLists);
+		while (e.hasNext()) {
+			ArrayList trialMatch = (ArrayList)e.next();
+			HashSet ourMods = new HashSet();
+			for (i = 0; i < trialMatch.size(); i++) {
+				ModMatchData md = (ModMatchData)trialMatch.get(i);
+				assertTrue(((ArrayList)modMatchLists.get(inputMods.get(i))).contains(md));
+				assertTrue(ourMods.add(md.getMod()));
+			}
+			trials++;
+		}
+		assertTrue(trials > 0);
+		assertTrue(trials < combos);
+	}
+
+	public void testMatrixModTypes() throws PatchDefinitionException  {
+		GenericPatch gp = NordLead2Prog.newPatch().getGenPatch();
+		ArrayList mods = gp.getModules();
+		int i, j, k, l, allowed = 0;
+
+		// the index must agree with asking every matrix mod, for each of
+		// our output jacks and input jack prefixes
+		for (i = 0; i < mods.size(); i++) {
+			Module src = (Module)mods.get(i);
+			for (j = 0; j < src.getOutputJacks().size(); j++) {
+				ModuleOutputJack moj = (ModuleOutputJack)src.getOutputJacks().get(j);
+				for (k = 0; k < mods.size(); k++) {
+					Module dest = (Module)mods.get(k);
+					for (l = 0; l < dest.getInputJacks().size(); l++) {
+						ModuleInputJack mij = (ModuleInputJack)dest.getInputJacks().get(l);
+						boolean expected = false;
+						for (int m = 0; m < gp.getMatrixMods().size(); m++) {
+							if (((MatrixMod)gp.getMatrixMods().get(m)).seeIfModTypeIsAllowed(
+									src.getType(), moj.getName(), dest.getType(), mij.getPrefix())) {
+								expected = true;
+							}
+						}
+						assertEquals(expected, gp.seeIfMatrixModTypeIsAllowed(
+								src.getType().toUpperCase(), moj.getName(),
+								dest.getType(), mij.getPrefix().toLowerCase()));
+						if (expected) {
+							allowed++;
+						}
+					}
+				}
+			}
+		}
+		assertTrue(allowed > 0);
+	}
+
+	public void testParallelMatch() throws PatchDefinitionException  {
+		Random r = new Random(3);
+		for (int k = 0; k < 10; k++) {
+			String xml = genericXML(randomSysex(r));
+			NordLead2Prog serial = new NordLead2Prog();
+			serial.fromXML(xml);
+			NordLead2Prog parallel = new NordLead2Prog();
+			parallel.getGenPatch().setMatchThreads(4);
+			parallel.fromXML(xml);
+			assertTrue(Arrays.equals(serial.getSysex(), parallel.getSysex()));
+			assertEquals(serial.getGenPatch().writeXML(), parallel.getGenPatch().writeXML());
+		}
+	}
+
+	public void testTrialRoutes() throws PatchDefinitionException  {
+		Random r = new Random(5);
+		int routed = 0;
+		for (int k = 0; k < 10; k++) {
+			GenericPatch gp = NordLead2Prog.newPatch().getGenPatch();
+			assertTrue(gp.readXML(genericXML(randomSysex(r))));
+			Iterator e = gp.new ModuleMatchSearch(gp.getInputGP(), gp.initialModuleMatch());
+			int conns = gp.getConnections().size();
+			TrialRoutes routes = null;
+			HashMap finalMatch = null;
+			while (finalMatch == null && e.hasNext()) {
+				routes = new TrialRoutes(gp.getMatrixMods());
+				finalMatch = gp.finalMatchTrial((ArrayList)e.next(), routes, new ArrayList());
+				// trying a match mustn't change our patch
+				assertEquals(conns, gp.getConnections().size());
+			}
+			if (finalMatch == null) {
+				continue; // not every random program can be converted back
+			}
+			routes.apply();
+			if (gp.getConnections().size() > conns) {
+				routed++;
+			}
+		}
+		assertTrue(routed > 0);
+	}
+
+	/**
+	 * Program with every parm set to a random value within its range, except
+	 * for morphs
+	 */
+	byte[] randomSysex(Random r) throws PatchDefinitionException {
+		NordLead2Prog nl2 = NordLead2Prog.newPatch();
+		nl2.fromSysex(NordLead2Prog.INIT_SYSEX);
+		for (int i = 0; i < nl2.pgmParms.size(); i++) {
+			SynthParm sp = (SynthParm)nl2.pgmParms.get(i);
+			if (sp instanceof SynthParmRange) {
+				SynthParmRange spr = (SynthParmRange)sp;
+				if (spr.getName().endsWith("_Morph")) {
+					continue;
+				}
+				int low = Math.max(spr.getLow(), -64), hi = Math.min(spr.getHi(), 63);
+				sp.setValue(low + r.nextInt(hi - low + 1));
+			} else if (sp instanceof SynthParmTable) {
+				sp.setValue(r.nextInt(((SynthParmTable)sp).getHi()));
+			}
+		}
+		nl2.toSysex();
+		return nl2.getSysex().clone();
+	}
+
+	String genericXML(byte sysex[]) throws PatchDefinitionException {
+		NordLead2Prog nl2 = NordLead2Prog.newPatch();
+		nl2.fromSysex(sysex);
+		String xml = nl2.toXML();
+		int start = xml.indexOf("<source_patch>");
+		int end = xml.indexOf("</source_patch>") + "</source_patch>".length();
+		return xml.substring(0, start) + xml.substring(end);
+	}
+
 	public void testToSysex() throws IOException, PatchDefinitionException  {
 		File inputFile = new File("tst/testNL2In1.syx");
 		BufferedInputStream in = new BufferedInputStream(new FileInputStream(inputFile));
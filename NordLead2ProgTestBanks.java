@@ -126,7 +126,7 @@ public class NordLead2ProgTestBanks extends TestCase {
 			}
 			in = new BufferedInputStream(new FileInputStream(inputFile));
 			fileLen = (int)inputFile.length();
-			nl2 = new NordLead2Prog();
+			nl2 = NordLead2Prog.newPatch();
 			sysex = new byte[fileLen];
 			in.read(sysex, 0, fileLen);
 			in.close();
@@ -166,7 +166,7 @@ public class NordLead2ProgTestBanks extends TestCase {
 					}
 				}
 				in.close();
-				nl2 = new NordLead2Prog();
+				nl2 = NordLead2Prog.newPatch();
 				nl2.fromXML(sb.toString());
 //				out = new PrintWriter(new BufferedWriter(
 //						new FileWriter(path + "/converted.xml")));
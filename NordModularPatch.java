@@ -317,32 +317,34 @@ class MyGenericPatch extends GenericPatch {
 
 		// Read XML into temp patch structure of modules/jacks/connections
 		GenericPatch tempGP = new GenericPatch("1.01");
-		String tag[], sourceModule, sourceJack, targetModule, targetJack;
+		String s, sourceModule, sourceJack, targetModule, targetJack;
 		Module mod, mod2;
 		Connection conn;
-		XMLReader xr = new XMLReader(XMLReader.getTagValue(xml, "generic_patch"));
-		while ((tag = xr.getNextTag()) != null) {
-			if (tag[0].equalsIgnoreCase("version")) {
-				if (tag[1].equalsIgnoreCase(version) == false) {
+		XMLPullParser xp = XMLPullParser.forElement(xml, "generic_patch");
+		while (xp != null && xp.next() == XMLPullParser.START_TAG) {
+			if (xp.isName("version")) {
+				s = xp.readText();
+				if (s.equalsIgnoreCase(version) == false) {
 					System.out.println("Warning: Expected generic patch version " +
-							version + ", input is " + tag[1]);
+							version + ", input is " + s);
 				}
-			} else if (tag[0].equalsIgnoreCase("synth_generic_version")) {
+			} else if (xp.isName("synth_generic_version")) {
+				xp.skip();
 				// do anything with this?
-			} else if (tag[0].equalsIgnoreCase("patch_name")) {
-				setPatchName(tag[1]);
-			} else if (tag[0].equalsIgnoreCase("patch_number")) {
-				setPatchNumber(tag[1]);
-			} else if (tag[0].equalsIgnoreCase("patch_bank")) {
-				setPatchBank(tag[1]);
-			} else if (tag[0].equalsIgnoreCase("patch_comment")) {
-				setPatchComment(tag[1]);
-			} else if (tag[0].equalsIgnoreCase("module")) {
-				mod = new Module(tag[1]);
+			} else if (xp.isName("patch_name")) {
+				setPatchName(xp.readText());
+			} else if (xp.isName("patch_number")) {
+				setPatchNumber(xp.readText());
+			} else if (xp.isName("patch_bank")) {
+				setPatchBank(xp.readText());
+			} else if (xp.isName("patch_comment")) {
+				setPatchComment(xp.readText());
+			} else if (xp.isName("module")) {
+				mod = new Module(xp);
 				mod.setUsed(3);
 				tempGP.addModule(mod);
 			} else {
-				System.out.println("unknown tag " + tag[0]);
+				System.out.println("unknown tag " + xp.getName());
 				return false;
 			}
 		}
@@ -357,7 +359,6 @@ class MyGenericPatch extends GenericPatch {
 
 		// Make substitutions of some generic modules so they map better
 		//  to NM modules.
-		String s;
 		String src, srcJack, dest, destJack;
 		ModuleOutputJack moj, moj2;
 		ModuleInputJack mij;
@@ -26,7 +26,7 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
-interface Parm {
+interface Parm extends Copyable {
 	public String getValue();
 	public void setValue(String s);
 	public ParmValidator getPv();
@@ -34,11 +34,14 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.util.*;
+
 public class ParmLink implements Parm {
 	private String max;
 	private ModuleParm slaveParm;
 	private ModuleParm masterParm;
 	private ParmValidator pv;
+	private String savedMax;
 
 	ParmLink(ModuleParm pMasterParm, ParmValidator pPv) {
 		max = "0";
@@ -74,4 +77,20 @@ public class ParmLink implements Parm {
 	public ModuleParm getMasterParm() {
 		return masterParm;
 	}
+
+	void saveState() {
+		savedMax = max;
+	}
+
+	void restoreState() {
+		max = savedMax;
+	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		ParmLink pl = (ParmLink)super.clone();
+		copies.put(this, pl);
+		pl.slaveParm = (ModuleParm)Util.copyOf(slaveParm, copies);
+		pl.masterParm = (ModuleParm)Util.copyOf(masterParm, copies);
+		return pl;
+	}
 }
@@ -27,6 +27,8 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.util.*;
+
 public class ParmLinkTranslatorDirect implements ParmTranslator {
 	private ParmLink link;
 	private ModuleParm master;
@@ -59,4 +61,13 @@ public class ParmLinkTranslatorDirect implements ParmTranslator {
 			master.setValue(s);
 		}
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		ParmLinkTranslatorDirect pt = (ParmLinkTranslatorDirect)super.clone();
+		copies.put(this, pt);
+		pt.link = (ParmLink)Util.copyOf(link, copies);
+		pt.master = (ModuleParm)Util.copyOf(master, copies);
+		pt.slave = (ModuleParm)Util.copyOf(slave, copies);
+		return pt;
+	}
 }
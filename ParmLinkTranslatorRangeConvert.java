@@ -27,6 +27,8 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.util.*;
+
 public class ParmLinkTranslatorRangeConvert implements ParmTranslator {
 	private ParmLink link;
 	private ModuleParm master;
@@ -71,4 +73,13 @@ public class ParmLinkTranslatorRangeConvert implements ParmTranslator {
 			master.setValue(s);
 		}
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		ParmLinkTranslatorRangeConvert pt = (ParmLinkTranslatorRangeConvert)super.clone();
+		copies.put(this, pt);
+		pt.link = (ParmLink)Util.copyOf(link, copies);
+		pt.master = (ModuleParm)Util.copyOf(master, copies);
+		pt.slave = (ModuleParm)Util.copyOf(slave, copies);
+		return pt;
+	}
 }
@@ -40,6 +40,9 @@ FIXME haven't thought this through completely... need:
 - should baseParm be set by ModuleParm.setMorph() instead of constructor?
 */
 
+import java.io.*;
+import java.util.*;
+
 public class ParmMorph implements Parm {
 	private boolean used;
 	private String max;
@@ -47,6 +50,8 @@ public class ParmMorph implements Parm {
 	private String control;
 	private ParmValidator pv;
 	private ModuleParm baseParm;
+	private boolean savedUsed;
+	private String savedMax;
 
 	ParmMorph(String pSource, String pControl, ParmValidator pPv,
 			ModuleParm pBaseParm) {
@@ -57,12 +62,34 @@ public class ParmMorph implements Parm {
 		baseParm = pBaseParm;
 	}
 
-	ParmMorph(String xml, ModuleParm pBaseParm) {
+	/**
+	 * read morph from XML, starting just after the morph start tag
+	 */
+	ParmMorph(XMLPullParser xp, ModuleParm pBaseParm) {
 		used = true;
 		baseParm = pBaseParm;
-		max = XMLReader.getTagValue(xml, "max");
-		source = XMLReader.getTagValue(xml, "source");
-		control = XMLReader.getTagValue(xml, "control");
+		while (xp.next() == XMLPullParser.START_TAG) {
+			if (xp.isName("max")) {
+				max = xp.readText();
+			} else if (xp.isName("source")) {
+				source = xp.readText();
+			} else if (xp.isName("control")) {
+				control = xp.readText();
+			} else {
+				xp.skip();
+			}
+		}
+	}
+
+	/**
+	 * read morph written by writeBinary()
+	 */
+	ParmMorph(PatchBinaryReader pr, ModuleParm pBaseParm) throws IOException, PatchDefinitionException {
+		used = true;
+		baseParm = pBaseParm;
+		max = pr.readString();
+		source = pr.readString();
+		control = pr.readString();
 	}
 
 	public boolean isUsed() {
@@ -101,15 +128,37 @@ public class ParmMorph implements Parm {
 		baseParm = mp;
 	}
 
-	public String writeXML() {
+	public void writeXML(XMLWriter xw) throws IOException {
 		if (used == false) {
-			return "";
+			return;
 		}
-		StringBuffer sb = new StringBuffer("<morph>");
-		sb.append("<max>" + max + "</max>");
-		sb.append("<source>" + source + "</source>");
-		sb.append("<control>" + control + "</control>");
-		sb.append("</morph>");
-		return sb.toString();
+		xw.startTag("morph");
+		xw.element("max", max);
+		xw.element("source", source);
+		xw.element("control", control);
+		xw.endTag("morph");
+	}
+
+	void writeBinary(PatchBinaryWriter pw) throws IOException {
+		pw.writeString(max);
+		pw.writeString(source);
+		pw.writeString(control);
+	}
+
+	void saveState() {
+		savedUsed = used;
+		savedMax = max;
+	}
+
+	void restoreState() {
+		used = savedUsed;
+		max = savedMax;
+	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		ParmMorph pm = (ParmMorph)super.clone();
+		copies.put(this, pm);
+		pm.baseParm = (ModuleParm)Util.copyOf(baseParm, copies);
+		return pm;
 	}
 }
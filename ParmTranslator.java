@@ -27,7 +27,7 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
-interface ParmTranslator {
+interface ParmTranslator extends Copyable {
 	void toGeneric() throws PatchDefinitionException;
 	void fromGeneric();
 }
@@ -29,6 +29,8 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.util.*;
+
 public class ParmTranslatorDirect implements ParmTranslator {
 	private SynthParm sp;
 	private Parm mp;
@@ -47,4 +49,12 @@ public class ParmTranslatorDirect implements ParmTranslator {
 	public void fromGeneric() {
 		sp.setValue(mp.getValue());
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		ParmTranslatorDirect pt = (ParmTranslatorDirect)super.clone();
+		copies.put(this, pt);
+		pt.sp = (SynthParm)Util.copyOf(sp, copies);
+		pt.mp = (Parm)Util.copyOf(mp, copies);
+		return pt;
+	}
 }
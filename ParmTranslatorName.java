@@ -29,6 +29,8 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.util.*;
+
 public class ParmTranslatorName implements ParmTranslator {
 	private SynthParm sp;
 	private GenericPatch gp;
@@ -47,4 +49,12 @@ public class ParmTranslatorName implements ParmTranslator {
 	public void fromGeneric() {
 		sp.setValue(gp.getPatchName());
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		ParmTranslatorName pt = (ParmTranslatorName)super.clone();
+		copies.put(this, pt);
+		pt.sp = (SynthParm)Util.copyOf(sp, copies);
+		pt.gp = (GenericPatch)Util.copyOf(gp, copies);
+		return pt;
+	}
 }
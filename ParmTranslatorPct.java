@@ -27,6 +27,8 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.util.*;
+
 public class ParmTranslatorPct implements ParmTranslator {
 	private SynthParmRange sp;
 	private Parm mp;
@@ -51,4 +53,12 @@ public class ParmTranslatorPct implements ParmTranslator {
 			sp.setValue(mp.getValue());
 		}
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		ParmTranslatorPct pt = (ParmTranslatorPct)super.clone();
+		copies.put(this, pt);
+		pt.sp = (SynthParmRange)Util.copyOf(sp, copies);
+		pt.mp = (Parm)Util.copyOf(mp, copies);
+		return pt;
+	}
 }
@@ -27,6 +27,8 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.util.*;
+
 public class ParmTranslatorRangeConvert implements ParmTranslator {
 	private SynthParmRange sp;
 	private Parm mp;
@@ -54,4 +56,12 @@ public class ParmTranslatorRangeConvert implements ParmTranslator {
 			sp.setValue(new Double(d - 0.5).intValue());
 		}
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		ParmTranslatorRangeConvert pt = (ParmTranslatorRangeConvert)super.clone();
+		copies.put(this, pt);
+		pt.sp = (SynthParmRange)Util.copyOf(sp, copies);
+		pt.mp = (Parm)Util.copyOf(mp, copies);
+		return pt;
+	}
 }
@@ -29,6 +29,8 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.util.*;
+
 public class ParmTranslatorRangeToTable implements ParmTranslator {
 	private SynthParmRange sp;
 	private Parm mp;
@@ -61,4 +63,12 @@ public class ParmTranslatorRangeToTable implements ParmTranslator {
 //		}
 //		sp.setValue(s);
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		ParmTranslatorRangeToTable pt = (ParmTranslatorRangeToTable)super.clone();
+		copies.put(this, pt);
+		pt.sp = (SynthParmRange)Util.copyOf(sp, copies);
+		pt.mp = (Parm)Util.copyOf(mp, copies);
+		return pt;
+	}
 }
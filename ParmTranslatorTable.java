@@ -27,6 +27,8 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.util.*;
+
 public class ParmTranslatorTable implements ParmTranslator {
 	private SynthParmTable sp;
 	private ModuleParm mp;
@@ -54,4 +56,12 @@ public class ParmTranslatorTable implements ParmTranslator {
 		}
 		sp.setValue(s);
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		ParmTranslatorTable pt = (ParmTranslatorTable)super.clone();
+		copies.put(this, pt);
+		pt.sp = (SynthParmTable)Util.copyOf(sp, copies);
+		pt.mp = (ModuleParm)Util.copyOf(mp, copies);
+		return pt;
+	}
 }
@@ -0,0 +1,92 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * Reads a generic patch written by PatchBinaryWriter; see there for the
+ * format.
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.io.*;
+import java.util.*;
+
+class PatchBinaryReader {
+	private DataInputStream in;
+	private ArrayList strings; // string table, in the order first written
+
+	PatchBinaryReader(InputStream pIn) throws IOException, PatchDefinitionException {
+		int i, v;
+		in = new DataInputStream(pIn);
+		strings = new ArrayList();
+		for (i = 0; i < PatchBinaryWriter.MAGIC.length; i++) {
+			if (in.read() != PatchBinaryWriter.MAGIC[i]) {
+				throw new PatchDefinitionException("Error: input is not a binary generic patch");
+			}
+		}
+		v = readInt();
+		if (v > PatchBinaryWriter.FORMAT_VERSION) {
+			throw new PatchDefinitionException("Error: binary generic patch format " + v +
+					" is newer than " + PatchBinaryWriter.FORMAT_VERSION);
+		}
+	}
+
+	int readKind() throws IOException {
+		return in.readUnsignedByte();
+	}
+
+	boolean readBoolean() throws IOException {
+		return in.readUnsignedByte() != 0;
+	}
+
+	int readInt() throws IOException {
+		int b, i = 0, shift = 0;
+		do {
+			b = in.readUnsignedByte();
+			i |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return i;
+	}
+
+	int readSignedInt() throws IOException {
+		int i = readInt();
+		return (i >>> 1) ^ -(i & 1);
+	}
+
+	String readString() throws IOException, PatchDefinitionException {
+		int n = readInt();
+		if (n == 0) {
+			return null;
+		}
+		n--;
+		if (n < strings.size()) {
+			return (String)strings.get(n);
+		}
+		if (n > strings.size()) {
+			throw new PatchDefinitionException("Error: bad string number " + n +
+					" in binary generic patch");
+		}
+		String s = in.readUTF();
+		strings.add(s);
+		return s;
+	}
+}
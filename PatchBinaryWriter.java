@@ -0,0 +1,105 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * Writes a generic patch in the compact binary format read by
+ * PatchBinaryReader.  The format mirrors the XML: a patch is a list of
+ * module records, and each module a list of parm and jack records, with
+ * each record starting with its kind and the list ending with END.  Every
+ * string goes through a string table, so a name like "Expo FM In1" is
+ * written out once and after that as its number in the table.
+ * <pre>
+ *	"GPB" format-version patch-info module* END
+ *	string: 0 for null, else number in table (plus UTF if it's new)
+ * </pre>
+ * Numbers are written 7 bits a byte, low bits first.
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.io.*;
+import java.util.*;
+
+class PatchBinaryWriter {
+	static final byte MAGIC[] = { 'G', 'P', 'B' };
+	static final int FORMAT_VERSION = 1;
+	// record kinds
+	static final int END = 0;
+	static final int MODULE = 1;
+	static final int PARM = 2;
+	static final int INPUT_JACK = 3;
+	static final int OUTPUT_JACK = 4;
+	private DataOutputStream out;
+	private HashMap strings; // String -> Integer number in table
+
+	PatchBinaryWriter(OutputStream pOut) throws IOException {
+		out = new DataOutputStream(pOut);
+		strings = new HashMap();
+		out.write(MAGIC);
+		writeInt(FORMAT_VERSION);
+	}
+
+	void writeKind(int kind) throws IOException {
+		out.write(kind);
+	}
+
+	void writeBoolean(boolean b) throws IOException {
+		out.write(b ? 1 : 0);
+	}
+
+	/**
+	 * write a number which isn't negative
+	 */
+	void writeInt(int i) throws IOException {
+		while ((i & ~0x7F) != 0) {
+			out.write((i & 0x7F) | 0x80);
+			i >>>= 7;
+		}
+		out.write(i);
+	}
+
+	/**
+	 * write a number which may be negative, keeping small ones short
+	 */
+	void writeSignedInt(int i) throws IOException {
+		writeInt((i << 1) ^ (i >> 31));
+	}
+
+	void writeString(String s) throws IOException {
+		if (s == null) {
+			writeInt(0);
+			return;
+		}
+		Integer n = (Integer)strings.get(s);
+		if (n != null) {
+			writeInt(n.intValue() + 1);
+			return;
+		}
+		n = new Integer(strings.size());
+		strings.put(s, n);
+		writeInt(n.intValue() + 1);
+		out.writeUTF(s);
+	}
+
+	void flush() throws IOException {
+		out.flush();
+	}
+}
@@ -0,0 +1,201 @@
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * 128-bit fingerprint of a generic patch, so patches can be compared, or
+ * used as keys, without comparing their XML.  It is computed from a
+ * canonical form of the patch: the modules, parms and jacks which would be
+ * written to XML, each sorted by name, with connections given by source
+ * module and jack name.  Two patches which differ only in the order of
+ * their modules, parms or jacks get the same fingerprint.
+ * <p>
+ * The topology-only fingerprint leaves out parm values and morph amounts,
+ * so it's the same for all patches wired alike.  Patch name, number, bank
+ * and comment are never included.
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.util.*;
+
+public class PatchFingerprint {
+	// low half is FNV-1a; high half uses another multiplier and a rotate
+	// so the halves don't collide together
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	private static final long MIX_OFFSET = 0x6a09e667f3bcc909L;
+	private static final long MIX_PRIME = 0x9e3779b97f4a7c15L;
+	private String canonicalForm;
+	private long high;
+	private long low;
+
+	/**
+	 * @param gp
+	 * @param withValues include parm values and morph amounts
+	 */
+	public PatchFingerprint(GenericPatch gp, boolean withValues) throws PatchDefinitionException {
+		long h1 = FNV_OFFSET, h2 = MIX_OFFSET;
+		char c;
+
+		canonicalForm = canonicalForm(gp, withValues);
+		for (int i = 0; i < canonicalForm.length(); i++) {
+			c = canonicalForm.charAt(i);
+			h1 = (h1 ^ c) * FNV_PRIME;
+			h2 = (h2 ^ c) * MIX_PRIME;
+			h2 = (h2 << 31) | (h2 >>> 33);
+		}
+		low = mix(h1 ^ canonicalForm.length());
+		high = mix(h2 ^ canonicalForm.length());
+	}
+
+	public String getCanonicalForm() {
+		return canonicalForm;
+	}
+
+	public long getHigh() {
+		return high;
+	}
+
+	/**
+	 * Low 64 bits, to use as a 64-bit fingerprint
+	 */
+	public long getLow() {
+		return low;
+	}
+
+	public boolean equals(Object o) {
+		if (o instanceof PatchFingerprint == false) {
+			return false;
+		}
+		PatchFingerprint pf = (PatchFingerprint)o;
+		return high == pf.high && low == pf.low;
+	}
+
+	public int hashCode() {
+		return (int)low;
+	}
+
+	/**
+	 * @return 32 hex digits, high half first
+	 */
+	public String toString() {
+		return toHex(high) + toHex(low);
+	}
+
+	static String toHex(long l) {
+		String s = Long.toHexString(l);
+		return "0000000000000000".substring(s.length()) + s;
+	}
+
+	/**
+	 * One line per module, modules sorted.  Each module's parms and jacks
+	 * follow on tab-indented lines, also sorted.
+	 */
+	static String canonicalForm(GenericPatch gp, boolean withValues) throws PatchDefinitionException {
+		ArrayList mods = new ArrayList();
+		Module mod;
+		int i;
+
+		for (i = 0; i < gp.getModules().size(); i++) {
+			mod = (Module)gp.getModules().get(i);
+			if (mod.getUsed() >= 3) {
+				mods.add(moduleForm(mod, withValues));
+			}
+		}
+		Collections.sort(mods);
+		StringBuffer sb = new StringBuffer();
+		for (i = 0; i < mods.size(); i++) {
+			sb.append((String)mods.get(i));
+		}
+		return sb.toString();
+	}
+
+	static String moduleForm(Module mod, boolean withValues) throws PatchDefinitionException {
+		ArrayList lines = new ArrayList();
+		StringBuffer sb;
+		ModuleParm mp;
+		ModuleInputJack mij;
+		ModuleOutputJack moj;
+		int i;
+
+		for (i = 0; i < mod.getParms().size(); i++) {
+			mp = (ModuleParm)mod.getParms().get(i);
+			if (mp.isWritten() == false) {
+				continue;
+			}
+			sb = new StringBuffer("parm\t");
+			sb.append(mp.getName()).append('\t').append(mp.getUnit());
+			sb.append('\t').append(mp.getResponseType());
+			if (withValues) {
+				sb.append('\t').append(mp.getValue());
+			}
+			if (mp.getMorph() != null && mp.getMorph().isUsed()) {
+				sb.append("\tmorph\t").append(mp.getMorph().getSource());
+				sb.append('\t').append(mp.getMorph().getControl());
+				if (withValues) {
+					sb.append('\t').append(mp.getMorph().getValue());
+				}
+			}
+			lines.add(sb.toString());
+		}
+		for (i = 0; i < mod.getInputJacks().size(); i++) {
+			mij = (ModuleInputJack)mod.getInputJacks().get(i);
+			if (mij.isUsed() == false || mij.isConnectedToUsed() == false) {
+				continue;
+			}
+			sb = new StringBuffer("input\t");
+			sb.append(mij.getName()).append('\t').append(mij.getType());
+			sb.append('\t').append((mij.getAttenuator() == null) ? "" : mij.getAttenuator().getName());
+			sb.append('\t').append(mij.getConn().getSourceJack().getMod().getName());
+			sb.append('\t').append(mij.getConn().getSourceJack().getName());
+			lines.add(sb.toString());
+		}
+		for (i = 0; i < mod.getOutputJacks().size(); i++) {
+			moj = (ModuleOutputJack)mod.getOutputJacks().get(i);
+			if (moj.isUsed() == false || moj.isConnectedToUsed() == false) {
+				continue;
+			}
+			sb = new StringBuffer("output\t");
+			sb.append(moj.getName()).append('\t').append(moj.getType());
+			sb.append('\t').append(moj.getPolarity());
+			lines.add(sb.toString());
+		}
+		Collections.sort(lines);
+
+		sb = new StringBuffer("module\t");
+		sb.append(mod.getName()).append('\t').append(mod.getType()).append('\n');
+		for (i = 0; i < lines.size(); i++) {
+			sb.append('\t').append((String)lines.get(i)).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Spread the bits of a hash (MurmurHash3 finalizer)
+	 */
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
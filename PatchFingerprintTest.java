@@ -0,0 +1,113 @@
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * JUnit tests for PatchFingerprint
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.util.*;
+import junit.framework.*;
+
+public class PatchFingerprintTest extends TestCase {
+
+	public PatchFingerprintTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(PatchFingerprintTest.class);
+	}
+
+	private String genericXML(int resonance) throws PatchDefinitionException {
+		NordLead2Prog nl2 = NordLead2Prog.newPatch();
+		nl2.fromSysex(NordLead2Prog.INIT_SYSEX);
+		nl2.findPgmParm("Resonance").setValue(resonance);
+		nl2.toSysex();
+		NordLead2Prog nl2b = NordLead2Prog.newPatch();
+		nl2b.fromSysex(nl2.getSysex());
+		return nl2b.toXML();
+	}
+
+	private GenericPatch read(String xml) throws PatchDefinitionException {
+		GenericPatch gp = new GenericPatch("0.07");
+		assertTrue(gp.readXML(xml));
+		return gp.getInputGP();
+	}
+
+	/**
+	 * Same patch with its modules in reverse order
+	 */
+	private String reverseModules(String xml) {
+		int start = xml.indexOf("<module>");
+		int end = xml.lastIndexOf("</module>") + "</module>".length();
+		ArrayList mods = new ArrayList();
+		int i = start, j;
+		while (i < end) {
+			j = xml.indexOf("</module>", i) + "</module>".length();
+			mods.add(xml.substring(i, j));
+			i = xml.indexOf("<module>", j);
+			if (i == -1) {
+				break;
+			}
+		}
+		Collections.reverse(mods);
+		StringBuffer sb = new StringBuffer(xml.substring(0, start));
+		for (i = 0; i < mods.size(); i++) {
+			sb.append((String)mods.get(i));
+		}
+		sb.append(xml.substring(end));
+		return sb.toString();
+	}
+
+	public void testModuleOrder() throws PatchDefinitionException {
+		String xml = genericXML(20);
+		String reversed = reverseModules(xml);
+		assertFalse(xml.equals(reversed));
+		GenericPatch gp = read(xml);
+		GenericPatch gp2 = read(reversed);
+		assertEquals(gp.getFingerprint(true), gp2.getFingerprint(true));
+		assertEquals(gp.getFingerprint(true).getCanonicalForm(),
+				gp2.getFingerprint(true).getCanonicalForm());
+		assertEquals(32, gp.getFingerprint(true).toString().length());
+	}
+
+	public void testValues() throws PatchDefinitionException {
+		GenericPatch gp = read(genericXML(20));
+		GenericPatch gp2 = read(genericXML(90));
+		assertEquals(gp.getFingerprint(false), gp2.getFingerprint(false));
+		assertFalse(gp.getFingerprint(true).equals(gp2.getFingerprint(true)));
+		assertFalse(gp.getFingerprint(true).getLow() == gp2.getFingerprint(true).getLow());
+		assertFalse(gp.getFingerprint(false).equals(gp.getFingerprint(true)));
+
+		// patch name isn't part of the fingerprint
+		gp2.setPatchName("Other");
+		assertEquals(gp2.getFingerprint(false), read(genericXML(90)).getFingerprint(false));
+	}
+
+	public void testTopology() throws PatchDefinitionException {
+		GenericPatch gp = read(genericXML(20));
+		GenericPatch gp2 = read(genericXML(20));
+		Connection conn = (Connection)gp2.getConnections().get(0);
+		gp2.removeConnection(conn);
+		assertFalse(gp.getFingerprint(false).equals(gp2.getFingerprint(false)));
+	}
+}
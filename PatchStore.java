@@ -0,0 +1,283 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * Library of converted patches kept in two files, rather than a file per
+ * patch.  The data file holds one record per patch (name, bank and
+ * number, then its sysex, source XML and generic XML) and is only ever
+ * appended to.  The index file holds the position and length of each
+ * record, INDEX_WIDTH bytes apiece, so record i is found without looking
+ * at any other.  Both are read through memory maps; the data file is
+ * mapped a window at a time, as SysexScanner does.
+ * <p>
+ * Patches are looked up by the generic patch name, bank and number; if a
+ * patch is added again, find() returns the latest one.  That lookup table
+ * is kept in memory only: opening a store reads the name, bank and number
+ * of every record to rebuild it, so opening takes time in proportion to
+ * the number of records, while find() and reading a record afterwards
+ * don't.  A record whose write was cut short (by a crash, say) is dropped
+ * when the store is next opened.
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+public class PatchStore {
+	static final int INDEX_WIDTH = 12; // long position, int length
+	static final int MAP_SIZE = 1 << 26;
+	// fields of a record, in order
+	static final int NAME = 0;
+	static final int BANK = 1;
+	static final int NUMBER = 2;
+	static final int SYSEX = 3;
+	static final int SOURCE_XML = 4;
+	static final int GENERIC_XML = 5;
+	private int mapSize = MAP_SIZE; // largest window of the data file mapped at once
+	private FileChannel data;
+	private FileChannel index;
+	private long dataLen;
+	private int count; // number of records
+	private MappedByteBuffer dataBuf; // current window of the data file
+	private long dataBufStart; // file position of dataBuf
+	private MappedByteBuffer indexBuf;
+	private int indexBufCount; // number of index entries mapped
+	private HashMap keys; // key() -> Integer latest record
+
+	/**
+	 * Open the store in files path.dat and path.idx, creating them if need be
+	 */
+	PatchStore(String path) throws IOException {
+		data = new RandomAccessFile(path + ".dat", "rw").getChannel();
+		index = new RandomAccessFile(path + ".idx", "rw").getChannel();
+		dataLen = data.size();
+		count = (int)(index.size() / INDEX_WIDTH);
+		keys = new HashMap();
+		// drop index entries for records which didn't get completely written.
+		// This reads the index without mapping it, since a mapped file
+		// can't safely be truncated.
+		ByteBuffer entry = ByteBuffer.allocate(INDEX_WIDTH);
+		long pos;
+		while (count > 0) {
+			entry.clear();
+			pos = (long)(count - 1) * INDEX_WIDTH;
+			while (entry.hasRemaining() && index.read(entry, pos + entry.position()) > 0) {
+				// keep reading until the whole entry is in
+			}
+			if (entry.hasRemaining() == false &&
+					entry.getLong(0) + entry.getInt(8) <= dataLen) {
+				break;
+			}
+			count--;
+		}
+		if (index.size() != (long)count * INDEX_WIDTH) {
+			index.truncate((long)count * INDEX_WIDTH);
+		}
+		mapIndex();
+		for (int i = 0; i < count; i++) {
+			keys.put(key(getString(i, NAME), getString(i, BANK), getString(i, NUMBER)),
+					new Integer(i));
+		}
+	}
+
+	void setMapSize(int i) {
+		mapSize = i;
+	}
+
+	public void close() throws IOException {
+		data.close();
+		index.close();
+	}
+
+	/**
+	 * @return number of patches in the store
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Append a converted patch, keyed by its generic patch name, bank and
+	 * number
+	 * @return record number
+	 */
+	public int add(SynthPatchAbstract sp) throws IOException, PatchDefinitionException {
+		String xml = sp.toXML();
+		GenericPatch gp = sp.getGenPatch();
+		return add(gp.getPatchName(), gp.getPatchBank(), gp.getPatchNumber(),
+				sp.getSysex(), xml, gp.writeXML());
+	}
+
+	/**
+	 * Append a patch; any of the values may be null
+	 * @return record number
+	 */
+	public int add(String name, String bank, String number, byte sysex[],
+			String sourceXML, String genericXML) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bos);
+		writeField(out, toBytes(name));
+		writeField(out, toBytes(bank));
+		writeField(out, toBytes(number));
+		writeField(out, sysex);
+		writeField(out, toBytes(sourceXML));
+		writeField(out, toBytes(genericXML));
+		out.flush();
+
+		// record first, so the index never points past the data file
+		byte rec[] = bos.toByteArray();
+		ByteBuffer bb = ByteBuffer.wrap(rec);
+		while (bb.hasRemaining()) {
+			data.write(bb, dataLen + bb.position());
+		}
+		bb = ByteBuffer.allocate(INDEX_WIDTH);
+		bb.putLong(dataLen);
+		bb.putInt(rec.length);
+		bb.flip();
+		while (bb.hasRemaining()) {
+			index.write(bb, (long)count * INDEX_WIDTH + bb.position());
+		}
+		dataLen += rec.length;
+		keys.put(key(name, bank, number), new Integer(count));
+		return count++;
+	}
+
+	/**
+	 * @return number of the latest record with this name, bank and number,
+	 * or -1 if there's none
+	 */
+	public int find(String name, String bank, String number) {
+		Integer i = (Integer)keys.get(key(name, bank, number));
+		if (i == null) {
+			return -1;
+		}
+		return i.intValue();
+	}
+
+	public String getName(int rec) throws IOException {
+		return getString(rec, NAME);
+	}
+
+	public String getBank(int rec) throws IOException {
+		return getString(rec, BANK);
+	}
+
+	public String getNumber(int rec) throws IOException {
+		return getString(rec, NUMBER);
+	}
+
+	public byte[] getSysex(int rec) throws IOException {
+		return getField(rec, SYSEX);
+	}
+
+	public String getSourceXML(int rec) throws IOException {
+		return getString(rec, SOURCE_XML);
+	}
+
+	public String getGenericXML(int rec) throws IOException {
+		return getString(rec, GENERIC_XML);
+	}
+
+	private String getString(int rec, int field) throws IOException {
+		byte b[] = getField(rec, field);
+		if (b == null) {
+			return null;
+		}
+		return new String(b, "UTF-8");
+	}
+
+	/**
+	 * @return contents of a field of a record, or null if it was null
+	 */
+	private byte[] getField(int rec, int field) throws IOException {
+		int i, len;
+		ByteBuffer bb;
+		byte b[];
+
+		if (rec < 0 || rec >= count) {
+			throw new IndexOutOfBoundsException("record " + rec + " of " + count);
+		}
+		if (rec >= indexBufCount) {
+			mapIndex();
+		}
+		bb = record(indexBuf.getLong(rec * INDEX_WIDTH), indexBuf.getInt(rec * INDEX_WIDTH + 8));
+		for (i = 0; i < field; i++) {
+			len = bb.getInt();
+			if (len > 0) {
+				bb.position(bb.position() + len);
+			}
+		}
+		len = bb.getInt();
+		if (len == -1) {
+			return null;
+		}
+		b = new byte[len];
+		bb.get(b);
+		return b;
+	}
+
+	/**
+	 * @return view of the record at file position p, mapping a new window
+	 * of the data file starting there if the current one doesn't hold it
+	 */
+	private ByteBuffer record(long p, int len) throws IOException {
+		if (dataBuf == null || p < dataBufStart || p + len > dataBufStart + dataBuf.limit()) {
+			dataBufStart = p;
+			dataBuf = data.map(FileChannel.MapMode.READ_ONLY, dataBufStart,
+					Math.min(Math.max(mapSize, len), dataLen - dataBufStart));
+		}
+		ByteBuffer bb = dataBuf.duplicate();
+		bb.position((int)(p - dataBufStart));
+		bb.limit((int)(p - dataBufStart) + len);
+		return bb.slice();
+	}
+
+	/**
+	 * map the index entries of all records, including any just added
+	 */
+	private void mapIndex() throws IOException {
+		indexBuf = index.map(FileChannel.MapMode.READ_ONLY, 0, (long)count * INDEX_WIDTH);
+		indexBufCount = count;
+	}
+
+	private static void writeField(DataOutputStream out, byte b[]) throws IOException {
+		if (b == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(b.length);
+			out.write(b);
+		}
+	}
+
+	private static byte[] toBytes(String s) throws UnsupportedEncodingException {
+		if (s == null) {
+			return null;
+		}
+		return s.getBytes("UTF-8");
+	}
+
+	private static String key(String name, String bank, String number) {
+		return name + '\0' + bank + '\0' + number;
+	}
+}
@@ -0,0 +1,132 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * JUnit tests for PatchStore
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.io.*;
+import java.util.*;
+import junit.framework.*;
+
+public class PatchStoreTest extends TestCase {
+	private File dir;
+	private String path;
+
+	public PatchStoreTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(PatchStoreTest.class);
+	}
+
+	protected void setUp() throws IOException {
+		dir = File.createTempFile("store", "");
+		dir.delete();
+		dir.mkdir();
+		path = new File(dir, "lib").getPath();
+	}
+
+	protected void tearDown() {
+		new File(path + ".dat").delete();
+		new File(path + ".idx").delete();
+		dir.delete();
+	}
+
+	public void testAddAndFind() throws IOException {
+		PatchStore ps = new PatchStore(path);
+		assertEquals(0, ps.size());
+		for (int i = 0; i < 50; i++) {
+			byte syx[] = { (byte)0xF0, (byte)i, (byte)0xF7 };
+			assertEquals(i, ps.add("Patch " + i, "A", Integer.toString(i % 10), syx,
+					"<source>" + i + "</source>", (i % 3 == 0) ? null : "<g>\u00e9" + i + "</g>"));
+		}
+		assertEquals(50, ps.size());
+		int rec = ps.find("Patch 17", "A", "7");
+		assertEquals(17, rec);
+		assertEquals("Patch 17", ps.getName(rec));
+		assertEquals("A", ps.getBank(rec));
+		assertEquals("7", ps.getNumber(rec));
+		assertTrue(Arrays.equals(new byte[] { (byte)0xF0, 17, (byte)0xF7 }, ps.getSysex(rec)));
+		assertEquals("<source>17</source>", ps.getSourceXML(rec));
+		assertEquals("<g>\u00e917</g>", ps.getGenericXML(rec));
+		assertNull(ps.getGenericXML(ps.find("Patch 18", "A", "8")));
+		assertEquals(-1, ps.find("Patch 17", "B", "7"));
+
+		// adding a patch again replaces it for find()
+		assertEquals(50, ps.add("Patch 17", "A", "7", null, "new", null));
+		assertEquals(50, ps.find("Patch 17", "A", "7"));
+		assertNull(ps.getSysex(50));
+		assertEquals("<source>17</source>", ps.getSourceXML(17));
+		ps.close();
+	}
+
+	public void testReopen() throws IOException {
+		PatchStore ps = new PatchStore(path);
+		ps.setMapSize(64); // records will need remapping
+		for (int i = 0; i < 20; i++) {
+			ps.add("Patch " + i, null, null, new byte[i], "source " + i, "generic " + i);
+		}
+		ps.close();
+		ps = new PatchStore(path);
+		ps.setMapSize(64);
+		assertEquals(20, ps.size());
+		for (int i = 19; i >= 0; i--) {
+			assertEquals(i, ps.find("Patch " + i, null, null));
+			assertEquals(i, ps.getSysex(i).length);
+			assertEquals("generic " + i, ps.getGenericXML(i));
+		}
+		ps.close();
+	}
+
+	public void testPartialRecordDropped() throws IOException {
+		PatchStore ps = new PatchStore(path);
+		ps.add("one", null, null, null, "1", null);
+		ps.add("two", null, null, null, "2", null);
+		ps.close();
+		// cut the last record short, as if writing it was interrupted
+		RandomAccessFile raf = new RandomAccessFile(path + ".dat", "rw");
+		raf.setLength(raf.length() - 1);
+		raf.close();
+		ps = new PatchStore(path);
+		assertEquals(1, ps.size());
+		assertEquals(-1, ps.find("two", null, null));
+		assertEquals(1, ps.add("three", null, null, null, "3", null));
+		assertEquals("3", ps.getSourceXML(ps.find("three", null, null)));
+		ps.close();
+	}
+
+	public void testAddPatch() throws IOException, PatchDefinitionException {
+		NordLead2Prog nl2 = NordLead2Prog.newPatch();
+		nl2.fromSysex(NordLead2Prog.INIT_SYSEX);
+		nl2.getGenPatch().setPatchName("Init");
+		PatchStore ps = new PatchStore(path);
+		int rec = ps.add(nl2);
+		assertEquals(rec, ps.find("Init", null, null));
+		assertTrue(Arrays.equals(NordLead2Prog.INIT_SYSEX, ps.getSysex(rec)));
+		assertTrue(ps.getSourceXML(rec).indexOf("<source_patch>") != -1);
+		assertTrue(ps.getGenericXML(rec).startsWith("<generic_patch>"));
+		ps.close();
+	}
+}
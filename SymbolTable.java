@@ -0,0 +1,75 @@
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * Gives each module type, jack type and jack or parm name prefix a small
+ * integer id, ignoring case, so matching can compare ids rather than
+ * calling equalsIgnoreCase() on strings.  Ids are assigned as modules and
+ * jacks are read or built and are never reused; the table only grows by
+ * the number of distinct names seen.
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.util.*;
+
+final class SymbolTable {
+	private static HashMap ids = new HashMap(); // lower-case string -> Integer
+
+	private SymbolTable() {
+	}
+
+	/**
+	 * @return id of the string, assigning a new one if it hasn't been seen
+	 * (-1 for null)
+	 */
+	static synchronized int intern(String s) {
+		String key;
+		Integer id;
+
+		if (s == null) {
+			return -1;
+		}
+		key = s.toLowerCase();
+		id = (Integer)ids.get(key);
+		if (id == null) {
+			id = new Integer(ids.size());
+			ids.put(key, id);
+		}
+		return id.intValue();
+	}
+
+	/**
+	 * @return id of the string, or -1 if it has never been interned (so
+	 * can't match anything that has)
+	 */
+	static synchronized int find(String s) {
+		Integer id;
+
+		if (s == null) {
+			return -1;
+		}
+		id = (Integer)ids.get(s.toLowerCase());
+		if (id == null) {
+			return -1;
+		}
+		return id.intValue();
+	}
+}
@@ -29,7 +29,7 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
-interface SynthParm {
+interface SynthParm extends Copyable {
 	void getValueFromSysex(byte pSysexData[]);
 	void putValueToSysex(byte pSysexData[]);
 	boolean isValid();
@@ -26,6 +26,8 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.util.*;
+
 public abstract class SynthParmAbstract implements SynthParm {
 	protected boolean valid;
 	protected boolean defined;
@@ -65,4 +67,21 @@ public abstract class SynthParmAbstract implements SynthParm {
 	public void putValueToSysex(byte pSysexData[]) {
 		sp.setSysexParm(pSysexData, value);
 	}
+
+	public int getIntValue() {
+		return value;
+	}
+
+	/**
+	 * store the position of this parm in sysex in a SysexLayout field table
+	 */
+	void compile(int fields[], int pos) {
+		sp.compile(fields, pos);
+	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		Object o = super.clone();
+		copies.put(this, o);
+		return o;
+	}
 }
@@ -26,6 +26,8 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
+import java.util.*;
+
 public class SynthParmName implements SynthParm {
 	private boolean valid;
 	private boolean defined;
@@ -88,4 +90,10 @@ public class SynthParmName implements SynthParm {
 			pSysexData[offset + i] = nameBytes[i];
 		}
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		Object o = super.clone();
+		copies.put(this, o);
+		return o;
+	}
 }
@@ -46,10 +46,6 @@ public class SynthParmRange extends SynthParmAbstract {
 		return Integer.toString(value);
 	}
 
-	public int getIntValue() {
-		return value;
-	}
-
 	/**
 	 * @param i
 	 */
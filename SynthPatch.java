@@ -29,16 +29,22 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
-//import java.io.*;
+import java.io.*;
+import java.nio.*;
 
 interface SynthPatch {
 	boolean isValid();
 	boolean matchSysex(byte sysex[]);
+	boolean matchSysex(ByteBuffer frame);
 	void toSysex();
 	void fromSysex(byte syx[]);
 	boolean matchXMLStored(String xml);
 	boolean matchXMLEdit(String xml);
 	String toXML() throws PatchDefinitionException;
-	void fromXML(String xml) throws PatchDefinitionException;
+	void toXML(Writer out) throws PatchDefinitionException, IOException;
+	boolean fromXML(String xml) throws PatchDefinitionException;
+	/**
+	 * @return sysex, in an array which the next conversion may overwrite
+	 */
 	public byte[] getSysex();
 }
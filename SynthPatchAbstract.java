@@ -26,10 +26,11 @@ package PatchConversion;
  * @author Kenneth L. Martinez
  */
 
-//import java.io.*;
+import java.io.*;
+import java.nio.*;
 import java.util.*;
 
-public abstract class SynthPatchAbstract implements SynthPatch {
+public abstract class SynthPatchAbstract implements SynthPatch, Copyable {
 	protected String manufacturerName;
 	protected String itemName;
 	protected String invalidMsg;
@@ -65,6 +66,57 @@ public abstract class SynthPatchAbstract implements SynthPatch {
 		initSysexEdit = pInitSysexEdit;
 	}
 
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		SynthPatchAbstract spa = (SynthPatchAbstract)super.clone();
+		copies.put(this, spa);
+		spa.sourceTags = Util.copyList(sourceTags, copies);
+		spa.sourceTagsEdit = Util.copyList(sourceTagsEdit, copies);
+		spa.pgmParms = Util.copyList(pgmParms, copies);
+		spa.hdrParms = Util.copyList(hdrParms, copies);
+		spa.hdrParmsEdit = Util.copyList(hdrParmsEdit, copies);
+		spa.genPatch = (GenericPatch)Util.copyOf(genPatch, copies);
+		spa.parmTranslators = Util.copyList(parmTranslators, copies);
+		spa.parmLinks = Util.copyList(parmLinks, copies);
+		if (sysex != null) {
+			spa.sysex = sysex.clone();
+		}
+		return spa;
+	}
+
+	/**
+	 * Creates a copy of this patch definition which shares nothing mutable
+	 * with the original, so a patch built once can be used as a template
+	 * instead of running the constructor again for every patch.
+	 */
+	public SynthPatchAbstract copyPatch() {
+		try {
+			return (SynthPatchAbstract)copy(new IdentityHashMap());
+		} catch(CloneNotSupportedException e) {
+			e.printStackTrace(System.err);
+		}
+		return null;
+	}
+
+	/**
+	 * Save the state of the patch definition for reset().  Subclass
+	 * constructors should call this once the definition has been built.
+	 */
+	void saveInitialState() {
+		genPatch.saveState();
+	}
+
+	/**
+	 * Return the patch to the state it had when constructed, with parm
+	 * values taken from the init sysex, so the same object can be used to
+	 * convert another patch.  Nothing is reallocated.
+	 */
+	public void reset() {
+		genPatch.restoreState();
+		fromSysex(initSysex);
+		programType = 0;
+		invalidMsg = null;
+	}
+
 	/**
 	 * see if all voice and global parameters have values within their valid ranges
 	 * @return valid
@@ -153,87 +205,126 @@ public abstract class SynthPatchAbstract implements SynthPatch {
 	 */
 	public String matchXMLTop(String xml) {
 		int i;
-		String tag[];
 
 		i = xml.indexOf("<synth_patch"); // skipping <?xml ... ?>
 		if (i == -1) {
 			return null;
 		}
-		XMLReader xr = new XMLReader(xml.substring(i));
-		tag = xr.getNextTag();
-		if (tag[0].equalsIgnoreCase("synth_patch") == false) {
+		XMLPullParser xp = new XMLPullParser(xml, i, xml.length());
+		if (xp.next() != XMLPullParser.START_TAG || xp.isName("synth_patch") == false) {
 			return null;
 		}
-		xr = new XMLReader(tag[1]);
-		tag = xr.getNextTag();
-		if (tag == null || tag[0].equalsIgnoreCase("source_synth_manufacturer") == false ||
-				tag[1].equalsIgnoreCase(manufacturerName) == false) {
+		if (xp.next() != XMLPullParser.START_TAG || xp.isName("source_synth_manufacturer") == false ||
+				xp.readText().equalsIgnoreCase(manufacturerName) == false) {
 			return null;
 		}
-		tag = xr.getNextTag();
-		if (tag == null || tag[0].equalsIgnoreCase("source_synth_name") == false ||
-				tag[1].equalsIgnoreCase(itemName) == false) {
+		if (xp.next() != XMLPullParser.START_TAG || xp.isName("source_synth_name") == false ||
+				xp.readText().equalsIgnoreCase(itemName) == false) {
 			return null;
 		}
-		tag = xr.getNextTag();
-		if (tag == null || tag[0].equalsIgnoreCase("source_patch") == false) {
+		if (xp.next() != XMLPullParser.START_TAG || xp.isName("source_patch") == false) {
 			return null;
 		}
-		return tag[1];
+		return xp.readValue();
 	}
 
 	/**
 	 * convert patch internal variables to XML
 	 */
 	public String toXML() throws PatchDefinitionException {
+		StringWriter sw = new StringWriter();
+		try {
+			writeXML(new XMLWriter(sw));
+		} catch (IOException e) {
+			e.printStackTrace(System.err); // can't happen with StringWriter
+		}
+		return sw.toString();
+	}
+
+	/**
+	 * convert patch internal variables to formatted XML, writing it
+	 * straight to out
+	 */
+	public void toXML(Writer out) throws PatchDefinitionException, IOException {
+		XMLWriter xw = new XMLWriter(out, -1);
+		writeXML(xw);
+		xw.flush();
+	}
+
+	void writeXML(XMLWriter xw) throws PatchDefinitionException, IOException {
 		int i;
-		StringBuffer sb = new StringBuffer();
 
-		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>");
-		sb.append("<synth_patch version=\"0.1\">");
-		sb.append("<source_synth_manufacturer>" + manufacturerName + "</source_synth_manufacturer>");
-		sb.append("<source_synth_name>" + itemName + "</source_synth_name>");
+		xw.writeDeclaration("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>");
+		xw.startTag("synth_patch", "version=\"0.1\"");
+		xw.element("source_synth_manufacturer", manufacturerName);
+		xw.element("source_synth_name", itemName);
 
 		if (programType == 0) {
 			for (i = 0; i < sourceTags.size(); i++) {
-				sb.append(((XMLTag)sourceTags.get(i)).writeXML());
+				((XMLTag)sourceTags.get(i)).writeXML(xw);
 			}
 		} else {
 			for (i = 0; i < sourceTagsEdit.size(); i++) {
-				sb.append(((XMLTag)sourceTagsEdit.get(i)).writeXML());
+				((XMLTag)sourceTagsEdit.get(i)).writeXML(xw);
 			}
 		}
 
 		if (isDefined()) {
 			translateToGeneric();
-			sb.append(genPatch.writeXML());
+			genPatch.writeXML(xw);
 		} else {
 			System.out.println("input parameter(s) undefined - cannot create generic patch");
 		}
 
-		sb.append("</synth_patch>");
-		return sb.toString();
+		xw.endTag("synth_patch");
+	}
+
+	/**
+	 * read source patch and generic patch info, indexing the XML once.  If
+	 * the XML has a sysex block holding a valid dump, the patch is rebuilt
+	 * exactly from that, rather than from the individual parm tags.
+	 * @return true if patch was read from the sysex block
+	 */
+	boolean readSourceXML(String xml, XMLTag source) throws PatchDefinitionException {
+		XMLTagIndex index = new XMLTagIndex(xml);
+		byte syx[] = XMLTagSysex.readSysex(index, -1);
+		int type = programType;
+		boolean fromBlock = false;
+		if (syx != null && matchSysex(syx)) {
+			fromSysex(syx);
+			fromBlock = (programType == type);
+		}
+		if (fromBlock == false) {
+			// sysex block missing, or isn't the kind of program the tags are
+			fromSysex((type == 0) ? initSysex : initSysexEdit);
+			programType = type;
+			source.readXML(index, -1);
+		}
+		int e = index.find("generic_patch");
+		if (e != -1) {
+			genPatch.readInfoXML(index, e);
+		}
+		return fromBlock;
 	}
 
 	/**
 	 * read XML into internal variables
+	 * @return false if the XML couldn't be converted, in which case
+	 * getSysex() still holds whatever was converted before
 	 */
-	public void fromXML(String xml) throws PatchDefinitionException {
-		xml = XMLReader.convertInputEscapedChars(xml);
+	public boolean fromXML(String xml) throws PatchDefinitionException {
 		if (matchXMLStored(xml) == true) {
-			// Using this to initialize any unmapped parms
-			fromSysex(initSysex);
 			programType = 0;
-			((XMLTag)sourceTags.get(0)).readXML(xml);
-			genPatch.readInfoXML(XMLReader.getTagValue(xml, "generic_patch"));
-			toSysex();
+			if (readSourceXML(xml, (XMLTag)sourceTags.get(0)) == false) {
+				toSysex();
+			}
+			return true;
 		} else if (matchXMLEdit(xml) == true) {
-			// Using this to initialize any unmapped parms
-			fromSysex(initSysexEdit);
 			programType = 1;
-			((XMLTag)sourceTagsEdit.get(0)).readXML(xml);
-			genPatch.readInfoXML(XMLReader.getTagValue(xml, "generic_patch"));
-			toSysex();
+			if (readSourceXML(xml, (XMLTag)sourceTagsEdit.get(0)) == false) {
+				toSysex();
+			}
+			return true;
 		} else if (xml.indexOf("generic_patch") != -1) {
 			System.out.println("input file does not contain a " + manufacturerName +
 					" " + itemName + ", converting from generic patch");
@@ -242,12 +333,14 @@ public abstract class SynthPatchAbstract implements SynthPatch {
 				if (genPatch.convertXML()) {
 					translateFromGeneric();
 					toSysex();
+					return true;
 				}
 			}
 		} else {
 			System.out.println("input file does not contain a " + manufacturerName +
 					" " + itemName + " and has no generic patch");
 		}
+		return false;
 	}
 
 	void adjustFromGeneric() throws PatchDefinitionException {
@@ -283,7 +376,20 @@ public abstract class SynthPatchAbstract implements SynthPatch {
 	}
 
 	/**
-	 * @return sysex
+	 * see if a sysex frame (between frame's position and limit) is this
+	 * type of patch.  This copies the frame; subclasses which can check
+	 * it in place should override.
+	 */
+	public boolean matchSysex(ByteBuffer frame) {
+		byte syx[] = new byte[frame.remaining()];
+		frame.duplicate().get(syx);
+		return matchSysex(syx);
+	}
+
+	/**
+	 * @return sysex.  The array is reused: the next fromSysex(), toSysex(),
+	 * fromXML() or reset() overwrites it in place, so callers which keep it
+	 * past that must clone() it.
 	 */
 	public byte[] getSysex() {
 		return sysex;
@@ -0,0 +1,125 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * A list of sysex parms compiled into a flat table of (index, shift, mask,
+ * offset) fields, so a whole program can be decoded into or encoded from
+ * an int array in one loop.  Parms which aren't stored as a single field
+ * (such as patch names) are left to their own getValueFromSysex() and
+ * putValueToSysex().  A layout doesn't refer to any parm objects, so one
+ * can be shared by every copy of a patch.
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.util.*;
+
+class SysexLayout {
+	static final int INDEX = 0;
+	static final int SHIFT = 1;
+	static final int MASK = 2;
+	static final int OFFSET = 3;
+	static final int WIDTH = 4;
+	private int fields[];
+	private int size;
+
+	SysexLayout(ArrayList parms) {
+		size = parms.size();
+		fields = new int[size * WIDTH];
+		for (int i = 0; i < size; i++) {
+			Object o = parms.get(i);
+			if (o instanceof SynthParmAbstract) {
+				((SynthParmAbstract)o).compile(fields, i * WIDTH);
+			} else {
+				fields[i * WIDTH + INDEX] = -1;
+			}
+		}
+	}
+
+	/**
+	 * @return number of parms in layout
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return field table; entry i starts at i * WIDTH, and has an index
+	 * of -1 if parm i isn't a single field
+	 */
+	int[] getFields() {
+		return fields;
+	}
+
+	/**
+	 * decode every parm in sysex into values
+	 */
+	void decode(byte sysex[], int values[]) {
+		int f[] = fields;
+		for (int i = 0, j = 0; i < size; i++, j += WIDTH) {
+			if (f[j] >= 0) {
+				values[i] = ((sysex[f[j]] & f[j + 2]) >>> f[j + 1]) - f[j + 3];
+			}
+		}
+	}
+
+	/**
+	 * encode values into sysex; bits outside each field are kept
+	 */
+	void encode(int values[], byte sysex[]) {
+		int f[] = fields;
+		for (int i = 0, j = 0; i < size; i++, j += WIDTH) {
+			if (f[j] >= 0) {
+				sysex[f[j]] = (byte)((sysex[f[j]] & ~f[j + 2]) |
+						((values[i] + f[j + 3]) << f[j + 1]));
+			}
+		}
+	}
+
+	/**
+	 * decode sysex into values, then set each of parms from them
+	 */
+	void getValuesFromSysex(ArrayList parms, byte sysex[], int values[]) {
+		decode(sysex, values);
+		for (int i = 0; i < size; i++) {
+			if (fields[i * WIDTH] >= 0) {
+				((SynthParm)parms.get(i)).setValue(values[i]);
+			} else {
+				((SynthParm)parms.get(i)).getValueFromSysex(sysex);
+			}
+		}
+	}
+
+	/**
+	 * collect the value of each of parms into values, then encode them
+	 * into sysex
+	 */
+	void putValuesToSysex(ArrayList parms, int values[], byte sysex[]) {
+		for (int i = 0; i < size; i++) {
+			if (fields[i * WIDTH] >= 0) {
+				values[i] = ((SynthParmAbstract)parms.get(i)).getIntValue();
+			} else {
+				((SynthParm)parms.get(i)).putValueToSysex(sysex);
+			}
+		}
+		encode(values, sysex);
+	}
+}
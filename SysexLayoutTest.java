@@ -0,0 +1,96 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * JUnit tests for SysexLayout
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.util.*;
+import junit.framework.*;
+
+public class SysexLayoutTest extends TestCase {
+
+	public SysexLayoutTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(SysexLayoutTest.class);
+	}
+
+	private ArrayList makeParms() {
+		ArrayList al = new ArrayList();
+		al.add(new SynthParmRange("offset", -64, 63, new SysexParmOffset(0, -64)));
+		al.add(new SynthParmRange("low", 0, 7, new SysexParmBitField(1, 0, 3)));
+		al.add(new SynthParmRange("high", 0, 15, new SysexParmBitField(1, 3, 4)));
+		al.add(new SynthParmName("name", 2, 3));
+		al.add(new SynthParmRange("signed", -128, 127, new SysexParmOffset(5, 0)));
+		return al;
+	}
+
+	public void testDecode() {
+		byte sysex[] = { (byte)0x70, (byte)0x5D, (byte)'a', (byte)'b', (byte)'c', (byte)0xF0 };
+		ArrayList expected = makeParms();
+		ArrayList actual = makeParms();
+		int values[] = new int[actual.size()];
+		for (int i = 0; i < expected.size(); i++) {
+			((SynthParm)expected.get(i)).getValueFromSysex(sysex);
+		}
+		new SysexLayout(actual).getValuesFromSysex(actual, sysex, values);
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(((SynthParm)expected.get(i)).getValue(),
+					((SynthParm)actual.get(i)).getValue());
+		}
+		assertEquals(0x70 + 64, values[0]);
+		assertEquals(5, values[1]);
+		assertEquals(11, values[2]);
+		assertEquals(-16, values[4]);
+	}
+
+	public void testEncode() {
+		ArrayList parms = makeParms();
+		byte expected[] = new byte[6];
+		byte actual[] = new byte[6];
+		int values[] = new int[parms.size()];
+		((SynthParm)parms.get(0)).setValue(-3);
+		((SynthParm)parms.get(1)).setValue(6);
+		((SynthParm)parms.get(2)).setValue(9);
+		((SynthParm)parms.get(3)).setValue("xyz");
+		((SynthParm)parms.get(4)).setValue(-100);
+		for (int i = 0; i < parms.size(); i++) {
+			((SynthParm)parms.get(i)).putValueToSysex(expected);
+		}
+		new SysexLayout(parms).putValuesToSysex(parms, values, actual);
+		assertTrue(Arrays.equals(expected, actual));
+	}
+
+	public void testProgramValues() throws PatchDefinitionException {
+		NordLead2Prog nl2 = NordLead2Prog.newPatch();
+		nl2.fromSysex(NordLead2Prog.INIT_SYSEX);
+		int values[] = nl2.getProgramValues();
+		assertEquals(nl2.pgmParms.size(), nl2.getProgramLayout().size());
+		for (int i = 0; i < nl2.pgmParms.size(); i++) {
+			assertEquals(((SynthParmAbstract)nl2.pgmParms.get(i)).getIntValue(), values[i]);
+		}
+	}
+}
@@ -30,4 +30,9 @@ interface SysexParm {
 	public int getSysexParm(byte sysexData[]);
 	public void setSysexParm(byte sysexData[], int i);
 	public boolean canBeStored(int i);
+	/**
+	 * store this parm's position as (index, shift, mask, offset) at pos in a
+	 * SysexLayout field table
+	 */
+	public void compile(int fields[], int pos);
 }
@@ -59,4 +59,11 @@ class SysexParmBitField implements SysexParm {
 			return true;
 		}
 	}
+
+	public void compile(int fields[], int pos) {
+		fields[pos] = sysexIndex;
+		fields[pos + 1] = bit;
+		fields[pos + 2] = mask;
+		fields[pos + 3] = 0;
+	}
 }
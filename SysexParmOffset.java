@@ -53,4 +53,11 @@ class SysexParmOffset implements SysexParm {
 			return true;
 		}
 	}
+
+	public void compile(int fields[], int pos) {
+		fields[pos] = sysexIndex;
+		fields[pos + 1] = 0;
+		fields[pos + 2] = -1; // keep the sign, as getSysexParm does
+		fields[pos + 3] = valueOffset;
+	}
 }
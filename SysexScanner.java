@@ -0,0 +1,230 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package PatchConversion;
+
+/**
+ * Finds sysex frames (F0 ... F7) in a file of any size, such as an
+ * archive of sysex captures, and identifies each with the registered
+ * SynthPatch whose matchSysex() accepts it.  The file is memory-mapped a
+ * window at a time, and each frame is handed out as a ByteBuffer view of
+ * the mapped file rather than being copied.
+ * <p>
+ * Since sysex data bytes are all below 0x80, an F0 can only be the start
+ * of a frame, so the file can be split into ranges which are scanned
+ * independently (see split()), e.g. one per thread.  A frame belongs to
+ * the range holding its F0, even if it ends in the next range.  A frame
+ * interrupted by any other status byte is incomplete and is skipped.
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+public class SysexScanner implements Iterator {
+	static final int MAP_SIZE = 1 << 28;
+	private int mapSize = MAP_SIZE; // largest window of the file mapped at once
+	private FileChannel channel;
+	private long fileLen;
+	private long start; // range of file positions where this scanner's frames begin
+	private long end;
+	private SynthPatch patchTypes[];
+	private MappedByteBuffer buf; // current window of the file
+	private long bufStart; // file position of buf
+	private long pos; // file position to continue scanning from
+	private SysexFrame nextFrame;
+
+	/**
+	 * Scan the whole file.  The patch objects are only used to call
+	 * matchSysex(), so one set can be shared by several scanners.
+	 */
+	SysexScanner(File f, SynthPatch pPatchTypes[]) throws IOException {
+		this(new RandomAccessFile(f, "r").getChannel(), pPatchTypes);
+	}
+
+	SysexScanner(FileChannel pChannel, SynthPatch pPatchTypes[]) throws IOException {
+		this(pChannel, pChannel.size(), 0, pChannel.size(), pPatchTypes);
+	}
+
+	private SysexScanner(FileChannel pChannel, long pFileLen, long pStart, long pEnd,
+			SynthPatch pPatchTypes[]) {
+		channel = pChannel;
+		fileLen = pFileLen;
+		start = pStart;
+		end = pEnd;
+		patchTypes = pPatchTypes;
+		pos = start;
+	}
+
+	/**
+	 * Divide this scanner's (unscanned) range into roughly equal parts,
+	 * whose frames together are the same as this scanner's
+	 * @param n number of parts
+	 */
+	public SysexScanner[] split(int n) {
+		SysexScanner ss[] = new SysexScanner[n];
+		long len = end - pos;
+		for (int i = 0; i < n; i++) {
+			ss[i] = new SysexScanner(channel, fileLen, pos + len * i / n,
+					pos + len * (i + 1) / n, patchTypes);
+			ss[i].mapSize = mapSize;
+		}
+		return ss;
+	}
+
+	void setMapSize(int i) {
+		mapSize = i;
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	public boolean hasNext() {
+		if (nextFrame == null) {
+			try {
+				nextFrame = findFrame();
+			} catch (IOException e) {
+				e.printStackTrace(System.err);
+			}
+		}
+		return nextFrame != null;
+	}
+
+	public Object next() {
+		if (hasNext() == false) {
+			throw new NoSuchElementException();
+		}
+		SysexFrame frame = nextFrame;
+		nextFrame = null;
+		return frame;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Make sure the window includes file position p, mapping a new window
+	 * starting there if it doesn't
+	 */
+	private boolean map(long p) throws IOException {
+		if (p >= fileLen) {
+			return false;
+		}
+		if (buf == null || p < bufStart || p >= bufStart + buf.limit()) {
+			bufStart = p;
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, bufStart,
+					Math.min(mapSize, fileLen - bufStart));
+		}
+		return true;
+	}
+
+	private SysexFrame findFrame() throws IOException {
+		int i, f0;
+
+		while (pos < end && map(pos)) {
+			// find the start of a frame
+			for (i = (int)(pos - bufStart); i < buf.limit() && buf.get(i) != (byte)0xF0; i++) {
+			}
+			pos = bufStart + i;
+			if (i >= buf.limit()) {
+				continue; // need next window
+			}
+			if (pos >= end) {
+				break; // belongs to next range
+			}
+			// find the end of the frame
+			f0 = i;
+			for (i++; i < buf.limit() && (buf.get(i) & 0x80) == 0; i++) {
+			}
+			if (i >= buf.limit()) {
+				if (bufStart + i >= fileLen || f0 == 0) {
+					// runs off end of file, or is too big to map
+					pos = bufStart + i;
+				} else {
+					// remap starting at the frame, then look again
+					buf = null;
+				}
+				continue;
+			}
+			pos = bufStart + i;
+			if (buf.get(i) != (byte)0xF7) {
+				continue; // incomplete frame, interrupted by another status byte
+			}
+			pos++;
+			return new SysexFrame(bufStart + f0, slice(f0, i + 1));
+		}
+		pos = end;
+		return null;
+	}
+
+	private ByteBuffer slice(int from, int to) {
+		ByteBuffer bb = buf.duplicate();
+		bb.position(from);
+		bb.limit(to);
+		return bb.slice();
+	}
+
+	/**
+	 * A sysex message found by SysexScanner
+	 */
+	public class SysexFrame {
+		private long filePos;
+		private ByteBuffer data;
+		private SynthPatch patchType;
+
+		SysexFrame(long pFilePos, ByteBuffer pData) {
+			filePos = pFilePos;
+			data = pData;
+			for (int i = 0; i < patchTypes.length; i++) {
+				if (patchTypes[i].matchSysex(data)) {
+					patchType = patchTypes[i];
+					break;
+				}
+			}
+		}
+
+		/**
+		 * @return position of frame's F0 in the file
+		 */
+		public long getFilePos() {
+			return filePos;
+		}
+
+		/**
+		 * @return frame from F0 to F7; this is a view of the mapped file, so
+		 * copy it if it's needed after the scan is finished
+		 */
+		public ByteBuffer getData() {
+			return data;
+		}
+
+		/**
+		 * @return registered patch type which matched the frame, or null
+		 */
+		public SynthPatch getPatchType() {
+			return patchType;
+		}
+	}
+}
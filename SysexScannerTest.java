@@ -0,0 +1,123 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+
+package PatchConversion;
+
+/**
+ * JUnit tests for SysexScanner
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.io.*;
+import java.util.*;
+import junit.framework.*;
+
+public class SysexScannerTest extends TestCase {
+	private File file;
+	private ArrayList expected; // file positions of complete frames
+
+	public SysexScannerTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(SysexScannerTest.class);
+	}
+
+	/**
+	 * Write a file of NL2 programs mixed with other sysex, incomplete
+	 * frames and junk
+	 */
+	protected void setUp() throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte other[] = { (byte)0xF0, 0x7E, 0x00, 0x06, 0x01, (byte)0xF7 };
+		byte broken[] = { (byte)0xF0, 0x33, 0x0F, 0x04, (byte)0xF0 };
+		expected = new ArrayList();
+		for (int i = 0; i < 40; i++) {
+			bos.write(i % 3); // junk between frames
+			if (i % 7 == 3) {
+				bos.write(broken, 0, 4); // next frame's F0 ends it
+			}
+			expected.add(new Long(bos.size()));
+			if (i % 5 == 2) {
+				bos.write(other, 0, other.length);
+			} else {
+				bos.write(NordLead2Prog.INIT_SYSEX, 0, NordLead2Prog.INIT_SYSEX.length);
+			}
+		}
+		bos.write(broken, 0, 4); // runs off the end of the file
+		file = File.createTempFile("scan", ".syx");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(bos.toByteArray());
+		out.close();
+	}
+
+	protected void tearDown() {
+		file.delete();
+	}
+
+	private ArrayList scan(SysexScanner ss, int nl2Count[]) {
+		ArrayList a = new ArrayList();
+		SysexScanner.SysexFrame frame;
+		while (ss.hasNext()) {
+			frame = (SysexScanner.SysexFrame)ss.next();
+			a.add(new Long(frame.getFilePos()));
+			if (frame.getPatchType() != null) {
+				nl2Count[0]++;
+				assertEquals(NordLead2Prog.INIT_SYSEX.length, frame.getData().remaining());
+				assertEquals((byte)0xF0, frame.getData().get(0));
+			}
+		}
+		return a;
+	}
+
+	public void testScan() throws IOException, PatchDefinitionException {
+		int count[] = new int[1];
+		SysexScanner ss = new SysexScanner(file, new SynthPatch[] { NordLead2Prog.newPatch() });
+		assertEquals(expected, scan(ss, count));
+		assertEquals(32, count[0]);
+		ss.close();
+	}
+
+	public void testSmallWindow() throws IOException, PatchDefinitionException {
+		// frames will cross window boundaries and need remapping
+		int count[] = new int[1];
+		SysexScanner ss = new SysexScanner(file, new SynthPatch[] { NordLead2Prog.newPatch() });
+		ss.setMapSize(200);
+		assertEquals(expected, scan(ss, count));
+		assertEquals(32, count[0]);
+		ss.close();
+	}
+
+	public void testSplit() throws IOException, PatchDefinitionException {
+		int count[] = new int[1];
+		SysexScanner ss = new SysexScanner(file, new SynthPatch[] { NordLead2Prog.newPatch() });
+		ss.setMapSize(300);
+		SysexScanner parts[] = ss.split(7);
+		ArrayList a = new ArrayList();
+		for (int i = 0; i < parts.length; i++) {
+			a.addAll(scan(parts[i], count));
+		}
+		assertEquals(expected, a);
+		assertEquals(32, count[0]);
+		ss.close();
+	}
+}
@@ -45,8 +45,19 @@ public class TestAll extends TestCase {
 		suite.addTestSuite(SynthParmRangeTest.class);
 		suite.addTestSuite(SynthParmTableTest.class);
 		suite.addTestSuite(XMLReaderTest.class);
+		suite.addTestSuite(XMLPullParserTest.class);
+		suite.addTestSuite(XMLTagIndexTest.class);
+		suite.addTestSuite(XMLWriterTest.class);
+		suite.addTestSuite(XMLTagSysexTest.class);
 		suite.addTestSuite(GenericPatchTest.class);
 		suite.addTestSuite(NordLead2ProgTest.class);
+		suite.addTestSuite(NordLead2BankTest.class);
+		suite.addTestSuite(SysexScannerTest.class);
+		suite.addTestSuite(SysexLayoutTest.class);
+		suite.addTestSuite(PatchStoreTest.class);
+		suite.addTestSuite(ConversionCacheTest.class);
+		suite.addTestSuite(PatchFingerprintTest.class);
+		suite.addTestSuite(WorkerPoolTest.class);
 //		suite.addTestSuite(AccessVirusProgTest.class);
 //		suite.addTestSuite(SupernovaIIProgTest.class);
 		suite.addTestSuite(NordModularPatchTest.class);
@@ -0,0 +1,147 @@
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * Matrix mod routes chosen while trying one trial module match.  Trials
+ * record their routes here rather than in the matrix mods themselves, so
+ * a trial leaves the generic patch unchanged and several can be tried at
+ * once; only the routes of the match finally chosen are applied.
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.util.*;
+
+class TrialRoutes {
+	private ArrayList matrixMods;
+	private BitSet inUse; // matrix mods with a route
+	private int sourceIndex[]; // per matrix mod, -1 if none
+	private int destIndex[];
+	private ArrayList routes; // Integer matrix mod indexes, in order created
+	private ArrayList routeSources; // Integer source index of each route
+
+	TrialRoutes(ArrayList pMatrixMods) {
+		matrixMods = pMatrixMods;
+		inUse = new BitSet(matrixMods.size());
+		sourceIndex = new int[matrixMods.size()];
+		destIndex = new int[matrixMods.size()];
+		Arrays.fill(sourceIndex, -1);
+		Arrays.fill(destIndex, -1);
+		routes = new ArrayList();
+		routeSources = new ArrayList();
+	}
+
+	/**
+	 * If the matrix mod is unused and it can implement the requested mod
+	 * connection, record the route.  A source chosen for another matrix mod
+	 * in the same source group must be used.
+	 * @return the jack the route connects to, or null
+	 */
+	ModuleInputJack createSingleDestMod(int m, String sourceMod, String sourceJack, String destMod,
+			String destJackPrefix) {
+		MatrixMod mm = (MatrixMod)matrixMods.get(m);
+		ModuleInputJack mij[] = new ModuleInputJack[1];
+		int source;
+
+		if (inUse.get(m)) {
+			return null;
+		}
+		source = mm.findSource(sourceMod, sourceJack);
+		if (source == -1 || (sourceIndex[m] != -1 && sourceIndex[m] != source)) {
+			return null;
+		}
+		sourceIndex[m] = source;
+		destIndex[m] = mm.findSingleDest(destMod, destJackPrefix, mij);
+		if (destIndex[m] == -1) {
+			sourceIndex[m] = -1;
+			return null;
+		}
+		updateGroupSources(m);
+		addRoute(m);
+		return mij[0];
+	}
+
+	/**
+	 * If the matrix mod is unused and it can implement the requested mod
+	 * connections, record the route
+	 * @return the jacks the route connects to, or null
+	 */
+	ModuleInputJack[] createMultiDestMod(int m, String sourceMod, String sourceJack, String destMod[],
+			String destJackPrefix) {
+		MatrixMod mm = (MatrixMod)matrixMods.get(m);
+		ModuleInputJack mij[] = new ModuleInputJack[destMod.length];
+		int source;
+
+		if (inUse.get(m)) {
+			return null;
+		}
+		source = mm.findSource(sourceMod, sourceJack);
+		if (source == -1) {
+			return null;
+		}
+		sourceIndex[m] = source;
+		destIndex[m] = mm.findMultiDest(destMod, destJackPrefix, mij);
+		if (destIndex[m] == -1) {
+			sourceIndex[m] = -1;
+			return null;
+		}
+		addRoute(m);
+		return mij;
+	}
+
+	private void addRoute(int m) {
+		inUse.set(m);
+		routes.add(new Integer(m));
+		routeSources.add(new Integer(sourceIndex[m]));
+	}
+
+	/**
+	 * All matrix mods in a source group must have the same source
+	 */
+	private void updateGroupSources(int m) {
+		int i, grp = ((MatrixMod)matrixMods.get(m)).getSourceGroup();
+
+		if (grp == 0) {
+			return;
+		}
+		for (i = 0; i < matrixMods.size(); i++) {
+			if (i != m && ((MatrixMod)matrixMods.get(i)).getSourceGroup() == grp) {
+				sourceIndex[i] = sourceIndex[m];
+			}
+		}
+	}
+
+	/**
+	 * Remove any routes from the matrix mods, then create the ones recorded
+	 * here in the order they were chosen
+	 */
+	void apply() throws PatchDefinitionException {
+		int i, m;
+
+		for (i = 0; i < matrixMods.size(); i++) {
+			((MatrixMod)matrixMods.get(i)).removeCurrentMod();
+		}
+		for (i = 0; i < routes.size(); i++) {
+			m = ((Integer)routes.get(i)).intValue();
+			((MatrixMod)matrixMods.get(m)).createRoute(((Integer)routeSources.get(i)).intValue(),
+					destIndex[m]);
+		}
+	}
+}
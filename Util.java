@@ -20,7 +20,9 @@
 
 package PatchConversion;
 
+import java.io.*;
 import java.text.*;
+import java.util.*;
 
 public class Util {
 
@@ -216,40 +218,126 @@ public class Util {
 	 * XML having line feeds and indentation
 	 */
 	static String formatXML(String xml, int indentLevel) {
-		StringBuffer sb = new StringBuffer();
-		String tag[], subTag[], startTag;
-		int i, start, end;
-		String ls = System.getProperty("line.separator");
-		StringBuffer sbi = new StringBuffer("");
-		for (i = 0; i < indentLevel; i++) {
-			sbi.append("  ");
+		StringWriter sw = new StringWriter();
+		try {
+			formatXML(xml, indentLevel, sw);
+		} catch (IOException e) {
+			e.printStackTrace(System.err); // can't happen with a StringWriter
 		}
+		return sw.toString();
+	}
+
+	/**
+	 * Format XML onto out in a single pass.  An element's start tag is held
+	 * back until its first child element turns up, so an element with no
+	 * children is written on one line along with its value.  Text between
+	 * elements is dropped, and an element which is never closed isn't
+	 * written.
+	 */
+	static void formatXML(String xml, int indentLevel, Writer out) throws IOException {
+		XMLWriter xw = new XMLWriter(out, indentLevel);
+		XMLPullParser xp;
+		ArrayList open = new ArrayList(); // names of start tags written
+		String pendingName = null, pendingAttr = null; // no children yet
+		int start, end, depth;
 
 		start = xml.indexOf("<?xml");
-		if (start != -1) {
-			end = xml.indexOf("?>");
-			sb.append(xml.substring(start, end + 2) + ls);
-			sb.append(formatXML(xml.substring(end + 2), indentLevel));
+		end = (start == -1) ? -1 : xml.indexOf("?>", start);
+		if (end != -1) {
+			xw.writeDeclaration(xml.substring(start, end + 2));
+			xp = new XMLPullParser(xml, end + 2, xml.length());
 		} else {
-			XMLReader xr = new XMLReader(xml);
-			while ((tag = xr.getNextTag()) != null) {
-				if (tag[2] == null) {
-					startTag = tag[0];
-				} else {
-					startTag = tag[0] + " " + tag[2];
+			xp = new XMLPullParser(xml);
+		}
+		while (true) {
+			int ev = xp.next();
+			if (ev == XMLPullParser.START_TAG) {
+				if (pendingName != null) {
+					xw.startTag(pendingName, pendingAttr);
+					open.add(pendingName);
 				}
-				if (new XMLReader(tag[1]).getNextTag() == null) {
-					sb.append(sbi + "<" + startTag + ">" + XMLReader.convertOutputEscapedChars(tag[1]) +
-							"</" + tag[0] + ">" + ls);
+				pendingName = xp.getName();
+				pendingAttr = xp.getAttr();
+				continue;
+			}
+			// elements at depth or deeper are now closed
+			depth = (ev == XMLPullParser.END_TAG) ? xp.getDepth() : 0;
+			if (pendingName != null && ev == XMLPullParser.END_TAG) {
+				if (open.size() == depth) {
+					xw.element(pendingName, pendingAttr, XMLReader.convertInputEscapedChars(
+							xml, xp.getValueStart(), xp.getValueEnd()));
 				} else {
-					// print nested group of tags
-					sb.append(sbi + "<" + startTag + ">" + ls);
-					sb.append(formatXML(tag[1], indentLevel + 1));
-					sb.append(sbi + "</" + tag[0] + ">" + ls);
+					// left open inside the element just closed
+					xw.element(pendingName, pendingAttr, "");
 				}
 			}
+			pendingName = null;
+			while (open.size() > depth) {
+				xw.endTag((String)open.remove(open.size() - 1));
+			}
+			if (ev == XMLPullParser.END_DOCUMENT) {
+				break;
+			}
 		}
+		xw.flush();
+	}
+
+	/**
+	 * Return the copy of an object in a patch definition graph, copying it
+	 * if that hasn't already been done.
+	 */
+	static Object copyOf(Object o, IdentityHashMap copies) throws CloneNotSupportedException {
+		Object c;
+		if (o == null) {
+			return null;
+		}
+		c = copies.get(o);
+		if (c == null) {
+			c = ((Copyable)o).copy(copies);
+		}
+		return c;
+	}
 
-		return sb.toString();
+	/**
+	 * Copy a list whose entries are all Copyable
+	 */
+	static ArrayList copyList(ArrayList al, IdentityHashMap copies) throws CloneNotSupportedException {
+		if (al == null) {
+			return null;
+		}
+		ArrayList a = new ArrayList(al.size());
+		for (int i = 0; i < al.size(); i++) {
+			a.add(copyOf(al.get(i), copies));
+		}
+		return a;
+	}
+
+	/**
+	 * Copy an array (or array of arrays) whose entries are all Copyable.
+	 * The copy has the same component type as the original.
+	 */
+	static Object[] copyArray(Object ar[], IdentityHashMap copies) throws CloneNotSupportedException {
+		if (ar == null) {
+			return null;
+		}
+		Object a[] = ar.clone();
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] instanceof Object[]) {
+				a[i] = copyArray((Object[])a[i], copies);
+			} else {
+				a[i] = copyOf(a[i], copies);
+			}
+		}
+		return a;
+	}
+
+	/**
+	 * Put a list back to the contents saved earlier, reusing its storage
+	 */
+	static void restoreList(ArrayList al, ArrayList saved) {
+		al.clear();
+		for (int i = 0; i < saved.size(); i++) {
+			al.add(saved.get(i));
+		}
 	}
 }
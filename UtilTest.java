@@ -185,5 +185,9 @@ public class UtilTest extends TestCase {
 		assertTrue(actual4.equals("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>" + ls +
 				"<t1>" + ls + "  <t2>" + ls + "    <t3a>hello</t3a>" + ls +
 				"    <t3b>there</t3b>" + ls + "  </t2>" + ls + "</t1>" + ls));
+		String in5 = "<t1>skipped<t2>a &amp; b</t2><t3/><t4>x<k>y</t4></t1>";
+		String actual5 = Util.formatXML(in5, 0);
+		assertEquals("<t1>" + ls + "  <t2>a &amp; b</t2>" + ls + "  <t3></t3>" + ls +
+				"  <t4>" + ls + "    <k></k>" + ls + "  </t4>" + ls + "</t1>" + ls, actual5);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,133 @@
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * Threads kept for running tasks at the same time, so code which does that
+ * for every patch converted (such as trying trial module matches) doesn't
+ * start new threads each time.  A thread waits for more work once its task
+ * is done; they're daemon threads, so they don't keep the program running.
+ * A new thread is started only when none are waiting.
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.util.*;
+
+class WorkerPool {
+	private static LinkedList idle = new LinkedList(); // Workers waiting for a task
+
+	/**
+	 * Run the tasks at the same time, the first in this thread and the rest
+	 * on pool threads, returning once they've all finished
+	 */
+	static void run(Runnable tasks[]) throws InterruptedException {
+		Batch batch = new Batch(tasks.length - 1);
+		Worker w;
+
+		for (int i = 1; i < tasks.length; i++) {
+			synchronized (idle) {
+				w = idle.isEmpty() ? null : (Worker)idle.removeFirst();
+			}
+			if (w == null) {
+				w = new Worker();
+				w.start();
+			}
+			w.assign(tasks[i], batch);
+		}
+		tasks[0].run();
+		batch.await();
+	}
+
+	/**
+	 * @return number of threads waiting for a task
+	 */
+	static int idleCount() {
+		synchronized (idle) {
+			return idle.size();
+		}
+	}
+
+	/**
+	 * Counts the tasks of one run() still going
+	 */
+	private static class Batch {
+		private int running;
+
+		Batch(int n) {
+			running = n;
+		}
+
+		synchronized void done() {
+			running--;
+			notifyAll();
+		}
+
+		synchronized void await() throws InterruptedException {
+			while (running > 0) {
+				wait();
+			}
+		}
+	}
+
+	private static class Worker extends Thread {
+		private Runnable task;
+		private Batch batch;
+
+		Worker() {
+			super("WorkerPool");
+			setDaemon(true);
+		}
+
+		synchronized void assign(Runnable pTask, Batch pBatch) {
+			task = pTask;
+			batch = pBatch;
+			notify();
+		}
+
+		public void run() {
+			Runnable t;
+			Batch b;
+
+			while (true) {
+				synchronized (this) {
+					while (task == null) {
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							// nobody else holds pool threads; keep waiting
+						}
+					}
+					t = task;
+					b = batch;
+					task = null;
+					batch = null;
+				}
+				try {
+					t.run();
+				} finally {
+					b.done();
+				}
+				synchronized (idle) {
+					idle.addLast(this);
+				}
+			}
+		}
+	}
+}
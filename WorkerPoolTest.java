@@ -0,0 +1,111 @@
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * JUnit tests for WorkerPool
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.util.*;
+import junit.framework.*;
+
+public class WorkerPoolTest extends TestCase {
+
+	public WorkerPoolTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(WorkerPoolTest.class);
+	}
+
+	/**
+	 * @return tasks which each record the thread they ran on in threads[i],
+	 * and don't finish until all of them have started
+	 */
+	private Runnable[] tasks(final Thread threads[]) {
+		Runnable r[] = new Runnable[threads.length];
+		final int started[] = { 0 };
+		for (int i = 0; i < r.length; i++) {
+			final int n = i;
+			r[i] = new Runnable() {
+				public void run() {
+					threads[n] = Thread.currentThread();
+					synchronized (started) {
+						started[0]++;
+						started.notifyAll();
+						while (started[0] < threads.length) {
+							try {
+								started.wait();
+							} catch (InterruptedException e) {
+								return;
+							}
+						}
+					}
+				}
+			};
+		}
+		return r;
+	}
+
+	/**
+	 * @return number of pool threads alive
+	 */
+	private int poolThreads() {
+		Thread t[] = new Thread[Thread.activeCount() + 10];
+		int n = 0, cnt = Thread.enumerate(t);
+		for (int i = 0; i < cnt; i++) {
+			if (t[i].getName().equals("WorkerPool")) {
+				n++;
+			}
+		}
+		return n;
+	}
+
+	public void testRun() throws InterruptedException {
+		Thread first[] = new Thread[4];
+		WorkerPool.run(tasks(first));
+		assertSame(Thread.currentThread(), first[0]);
+		HashSet pool = new HashSet();
+		for (int i = 1; i < first.length; i++) {
+			assertNotNull(first[i]);
+			assertNotSame(Thread.currentThread(), first[i]);
+			assertTrue(first[i].isDaemon());
+			pool.add(first[i]);
+		}
+		assertEquals(3, pool.size());
+
+		// threads are reused rather than started again
+		while (WorkerPool.idleCount() < 3) {
+			Thread.sleep(1);
+		}
+		int n = poolThreads();
+		Thread second[] = new Thread[4];
+		WorkerPool.run(tasks(second));
+		assertEquals(n, poolThreads());
+	}
+
+	public void testOneTask() throws InterruptedException {
+		Thread threads[] = new Thread[1];
+		WorkerPool.run(tasks(threads));
+		assertSame(Thread.currentThread(), threads[0]);
+	}
+}
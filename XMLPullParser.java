@@ -0,0 +1,304 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * Pull parser which makes one pass over an XML string, reporting the start
+ * and end of each element as offsets into the string rather than copying
+ * substrings.  A reader is handed the parser just after the START_TAG of
+ * its element, calls next() for each child, and stops at the matching
+ * END_TAG (or at END_DOCUMENT when parsing a fragment):
+ * <pre>
+ *	while (xp.next() == XMLPullParser.START_TAG) {
+ *		if (xp.isName("name")) {
+ *			name = xp.readText();
+ *		} else {
+ *			xp.skip();
+ *		}
+ *	}
+ * </pre>
+ * Like XMLReader, it is forgiving of a stray "&lt;" in a value: an end tag
+ * closes any elements left open inside it, and an end tag which doesn't
+ * match an open element is ignored.
+ *
+ * @author Kenneth L. Martinez
+ */
+
+class XMLPullParser {
+	static final int START_TAG = 1;
+	static final int END_TAG = 2;
+	static final int END_DOCUMENT = 3;
+	private String xml;
+	private int indx;
+	private int end;
+	private int depth;
+	// name start, name end and value start of each open element
+	private int open[] = new int[3 * 16];
+	private boolean emptyTag; // START_TAG was <name/>, END_TAG comes next
+	private int nameStart, nameEnd, attrStart, attrEnd, valueStart, valueEnd;
+
+	XMLPullParser(String pXml) {
+		this(pXml, 0, pXml.length());
+	}
+
+	/**
+	 * parse only the part of pXml between pStart and pEnd
+	 */
+	XMLPullParser(String pXml, int pStart, int pEnd) {
+		xml = pXml;
+		indx = pStart;
+		end = pEnd;
+		depth = 0;
+	}
+
+	/**
+	 * Finds the first element called name the same way getTagValue() does
+	 * @return parser for the contents of the element, or null if not found
+	 */
+	static XMLPullParser forElement(String xml, String name) {
+		int start, end, valueStart;
+
+		start = xml.indexOf("<" + name);
+		if (start == -1) {
+			return null;
+		}
+		valueStart = start + name.length() + 2;
+		end = xml.indexOf("</" + name + ">", valueStart);
+		if (end == -1) {
+			return null;
+		}
+		return new XMLPullParser(xml, valueStart, end);
+	}
+
+	/**
+	 * Move to the next start or end tag, skipping text, comments and
+	 * processing instructions
+	 * @return START_TAG, END_TAG or END_DOCUMENT
+	 */
+	int next() {
+		int i, j, k;
+		char ch;
+
+		if (emptyTag) {
+			emptyTag = false;
+			depth--;
+			valueStart = valueEnd = indx;
+			return END_TAG;
+		}
+		while (true) {
+			i = xml.indexOf('<', indx);
+			if (i == -1 || i + 1 >= end) {
+				indx = end;
+				return END_DOCUMENT;
+			}
+			ch = xml.charAt(i + 1);
+			if (ch == '?' || ch == '!') {
+				if (xml.startsWith("<!--", i)) {
+					j = xml.indexOf("-->", i + 4);
+					j = (j == -1) ? -1 : j + 2;
+				} else {
+					j = xml.indexOf('>', i + 2);
+				}
+				if (j == -1 || j >= end) {
+					indx = end;
+					return END_DOCUMENT;
+				}
+				indx = j + 1;
+				continue;
+			}
+			if (ch != '/' && Character.isLetter(ch) == false && ch != '_') {
+				indx = i + 1; // stray '<' in text
+				continue;
+			}
+			j = xml.indexOf('>', i + 2);
+			if (j == -1 || j >= end) {
+				indx = end;
+				return END_DOCUMENT;
+			}
+			k = xml.indexOf('<', i + 1);
+			if (k != -1 && k < j) {
+				indx = k; // stray '<' in text
+				continue;
+			}
+			if (ch == '/') {
+				indx = j + 1;
+				if (closeElement(i + 2, j, i)) {
+					return END_TAG;
+				}
+				continue; // doesn't match an open element
+			}
+			openElement(i + 1, j);
+			return START_TAG;
+		}
+	}
+
+	/**
+	 * record start tag found between start and gt
+	 */
+	private void openElement(int start, int gt) {
+		int i;
+		char ch;
+
+		emptyTag = xml.charAt(gt - 1) == '/';
+		nameStart = start;
+		for (i = start; i < gt; i++) {
+			ch = xml.charAt(i);
+			if (ch == ' ' || ch == '\t' || ch == '\r' || ch == '\n' || ch == '/') {
+				break;
+			}
+		}
+		nameEnd = i;
+		if (i < gt && xml.charAt(i) != '/') {
+			attrStart = i + 1;
+			attrEnd = emptyTag ? gt - 1 : gt;
+		} else {
+			attrStart = attrEnd = -1;
+		}
+		indx = gt + 1;
+		valueStart = valueEnd = indx;
+		if (emptyTag) {
+			depth++;
+			return;
+		}
+		if (3 * depth == open.length) {
+			int a[] = new int[open.length * 2];
+			System.arraycopy(open, 0, a, 0, open.length);
+			open = a;
+		}
+		open[3 * depth] = nameStart;
+		open[3 * depth + 1] = nameEnd;
+		open[3 * depth + 2] = valueStart;
+		depth++;
+	}
+
+	/**
+	 * close the innermost open element whose name is between start and gt,
+	 * along with any elements left open inside it
+	 * @return false if no open element has that name
+	 */
+	private boolean closeElement(int start, int gt, int lt) {
+		int len = gt - start;
+		for (int d = depth - 1; d >= 0; d--) {
+			int ns = open[3 * d];
+			if (open[3 * d + 1] - ns == len && xml.regionMatches(ns, xml, start, len)) {
+				depth = d;
+				nameStart = ns;
+				nameEnd = open[3 * d + 1];
+				valueStart = open[3 * d + 2];
+				valueEnd = lt;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Skip to the END_TAG of the element whose START_TAG was just read
+	 */
+	void skip() {
+		int d = depth - 1;
+		int ev;
+		while ((ev = next()) != END_DOCUMENT) {
+			if (ev == END_TAG && depth <= d) {
+				return;
+			}
+		}
+		valueEnd = end;
+	}
+
+	/**
+	 * Skip to the END_TAG of the element whose START_TAG was just read, and
+	 * return its contents (including any child tags), as getNextTag() does
+	 */
+	String readValue() {
+		int vs = valueStart;
+		skip();
+		return xml.substring(vs, valueEnd);
+	}
+
+	/**
+	 * same as readValue(), converting "&amp;" to "&", etc
+	 */
+	String readText() {
+		int vs = valueStart;
+		skip();
+		return XMLReader.convertInputEscapedChars(xml, vs, valueEnd);
+	}
+
+	/**
+	 * @return number of elements open, including one whose START_TAG was
+	 * just read
+	 */
+	int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return true if name of current element is s, ignoring case
+	 */
+	boolean isName(String s) {
+		return nameEnd - nameStart == s.length() &&
+				xml.regionMatches(true, nameStart, s, 0, s.length());
+	}
+
+	String getName() {
+		return xml.substring(nameStart, nameEnd);
+	}
+
+	/**
+	 * @return attributes of current start tag, or null if it has none
+	 */
+	String getAttr() {
+		if (attrStart == -1) {
+			return null;
+		}
+		return xml.substring(attrStart, attrEnd);
+	}
+
+	/**
+	 * @return offset of attributes of current start tag, or -1 if none
+	 */
+	int getAttrStart() {
+		return attrStart;
+	}
+
+	int getAttrEnd() {
+		return attrEnd;
+	}
+
+	/**
+	 * @return string being parsed, which all offsets refer to
+	 */
+	String getXML() {
+		return xml;
+	}
+
+	/**
+	 * @return offset of current element's contents; after an END_TAG, of the
+	 * contents of the element it closed
+	 */
+	int getValueStart() {
+		return valueStart;
+	}
+
+	int getValueEnd() {
+		return valueEnd;
+	}
+}
@@ -0,0 +1,102 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * JUnit tests for XMLPullParser
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import junit.framework.*;
+
+public class XMLPullParserTest extends TestCase {
+
+	public XMLPullParserTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(XMLPullParserTest.class);
+	}
+
+	public void testNext() {
+		XMLPullParser xp = new XMLPullParser("<?xml version=\"1.0\" ?>" +
+				"<a x=\"1\"><b>one</b><!-- <c> --><d/></a>");
+		assertEquals(XMLPullParser.START_TAG, xp.next());
+		assertTrue(xp.isName("A"));
+		assertEquals("x=\"1\"", xp.getAttr());
+		assertEquals(1, xp.getDepth());
+		assertEquals(XMLPullParser.START_TAG, xp.next());
+		assertEquals("b", xp.getName());
+		assertNull(xp.getAttr());
+		assertEquals("one", xp.readValue());
+		assertEquals(1, xp.getDepth());
+		assertEquals(XMLPullParser.START_TAG, xp.next());
+		assertEquals("d", xp.getName());
+		assertEquals(XMLPullParser.END_TAG, xp.next());
+		assertEquals(XMLPullParser.END_TAG, xp.next());
+		assertTrue(xp.isName("a"));
+		assertEquals("<b>one</b><!-- <c> --><d/>", xp.getXML().substring(
+				xp.getValueStart(), xp.getValueEnd()));
+		assertEquals(0, xp.getDepth());
+		assertEquals(XMLPullParser.END_DOCUMENT, xp.next());
+	}
+
+	public void testReadValue() {
+		XMLPullParser xp = new XMLPullParser("<m><n>x</n><p><n>y</n></p><q>z</q></m>");
+		xp.next();
+		xp.next();
+		xp.skip();
+		assertEquals(XMLPullParser.START_TAG, xp.next());
+		assertEquals("<n>y</n>", xp.readValue());
+		assertEquals(XMLPullParser.START_TAG, xp.next());
+		assertEquals("z", xp.readValue());
+		assertEquals(XMLPullParser.END_TAG, xp.next());
+	}
+
+	public void testStrayTags() {
+		// same values getNextTag() would find
+		XMLPullParser xp = new XMLPullParser(
+				"<a><n>A & <k></n><c>x < y</z> 1 <w</c><v>&lt;</v></a>");
+		xp.next();
+		xp.next();
+		assertEquals("A & <k>", xp.readValue());
+		xp.next();
+		assertEquals("x < y</z> 1 <w", xp.readValue());
+		xp.next();
+		assertEquals("<", xp.readText());
+		assertEquals(XMLPullParser.END_TAG, xp.next());
+		assertTrue(xp.isName("a"));
+	}
+
+	public void testFragment() {
+		String xml = "<s><generic_patch><v>1</v><module><name>x</name></module>" +
+				"</generic_patch></s>";
+		XMLPullParser xp = XMLPullParser.forElement(xml, "generic_patch");
+		assertEquals(XMLPullParser.START_TAG, xp.next());
+		assertEquals("1", xp.readText());
+		assertEquals(XMLPullParser.START_TAG, xp.next());
+		assertTrue(xp.isName("module"));
+		xp.skip();
+		assertEquals(XMLPullParser.END_DOCUMENT, xp.next());
+		assertNull(XMLPullParser.forElement(xml, "missing"));
+	}
+}
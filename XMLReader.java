@@ -102,71 +102,108 @@ public class XMLReader {
 	}
 
 	/**
-	 * Convert "&amp;" to "&", etc
+	 * Convert "&amp;" to "&", etc.  Returns xml itself if it contains no
+	 * ampersand.
 	 */
 	static String convertInputEscapedChars(String xml) {
-		String s;
-		StringBuffer sb = new StringBuffer();
-		int i = 0, j;
+		return convertInputEscapedChars(xml, 0, xml.length());
+	}
 
-		while (i < xml.length()) {
-			if ((j = xml.indexOf("&", i)) != -1) {
-				s = xml.substring(j);
-				if (s.length() >= 5 && s.substring(0, 5).equals("&amp;")) {
-					sb.append(xml.substring(i, j));
-					sb.append("&");
-					i = j + 5;
-					continue;
-				}
-				if (s.length() >= 4 && s.substring(0, 4).equals("&lt;")) {
-					sb.append(xml.substring(i, j));
-					sb.append("<");
-					i = j + 4;
-					continue;
-				}
-				if (s.length() >= 4 && s.substring(0, 4).equals("&gt;")) {
-					sb.append(xml.substring(i, j));
-					sb.append(">");
-					i = j + 4;
-					continue;
-				}
-//	FIXME failing silently, because when this is called to initially write out XML,
-//   conversion hasn't yet occurred... is this a problem?
-//				System.out.println("convertInputEscapedChars: unexpected ampersand in '" + xml + "'");
+	/**
+	 * Convert "&amp;" to "&", etc in the part of xml between start and end
+	 */
+	static String convertInputEscapedChars(String xml, int start, int end) {
+		int j = start;
+		while (j < end && xml.charAt(j) != '&') {
+			j++;
+		}
+		if (j == end) {
+			if (start == 0 && end == xml.length()) {
+				return xml;
 			}
-			sb.append(xml.substring(i));
-			break;
+			return xml.substring(start, end);
 		}
+		StringBuffer sb = new StringBuffer(end - start);
+		appendUnescaped(sb, xml, start, end);
 		return sb.toString();
 	}
 
 	/**
-	 * Convert "&" to "&amp;", etc
+	 * Append the part of xml between start and end to sb, converting
+	 * "&amp;" to "&", etc.  An ampersand which doesn't start one of these
+	 * is copied as is.
+	 */
+	static void appendUnescaped(StringBuffer sb, String xml, int start, int end) {
+		char c[] = new char[end - start];
+		int i = 0, j, len = c.length;
+
+		xml.getChars(start, end, c, 0);
+		for (j = 0; j < len; j++) {
+			if (c[j] != '&') {
+				continue;
+			}
+			if (j + 5 <= len && c[j + 1] == 'a' && c[j + 2] == 'm' && c[j + 3] == 'p' &&
+					c[j + 4] == ';') {
+				sb.append(c, i, j - i);
+				sb.append('&');
+				i = j + 5;
+				j += 4;
+			} else if (j + 4 <= len && (c[j + 1] == 'l' || c[j + 1] == 'g') &&
+					c[j + 2] == 't' && c[j + 3] == ';') {
+				sb.append(c, i, j - i);
+				sb.append(c[j + 1] == 'l' ? '<' : '>');
+				i = j + 4;
+				j += 3;
+			}
+		}
+		sb.append(c, i, len - i);
+	}
+
+	/**
+	 * Convert "&" to "&amp;", etc.  Returns xml itself if nothing needs
+	 * converting.
 	 */
 	static String convertOutputEscapedChars(String xml) {
-		StringBuffer sb = new StringBuffer();
-		int i = 0, j;
+		int len = xml.length();
+		int j;
 		char ch;
 
-		for (j = 0; j < xml.length(); j++) {
+		for (j = 0; j < len; j++) {
 			ch = xml.charAt(j);
-			if (ch == '&') {
-				sb.append("&amp;");
-				i = j + 1;
-				continue;
+			if (ch == '&' || ch == '<' || ch == '>') {
+				break;
 			}
-			if (ch == '<') {
+		}
+		if (j == len) {
+			return xml;
+		}
+		StringBuffer sb = new StringBuffer(len + 16);
+		appendEscaped(sb, xml);
+		return sb.toString();
+	}
+
+	/**
+	 * Append s to sb, converting "&" to "&amp;", etc
+	 */
+	static void appendEscaped(StringBuffer sb, String s) {
+		char c[] = s.toCharArray();
+		int i = 0, j;
+
+		for (j = 0; j < c.length; j++) {
+			if (c[j] == '&') {
+				sb.append(c, i, j - i);
+				sb.append("&amp;");
+			} else if (c[j] == '<') {
+				sb.append(c, i, j - i);
 				sb.append("&lt;");
-				i = j + 1;
-				continue;
-			}
-			if (ch == '>') {
+			} else if (c[j] == '>') {
+				sb.append(c, i, j - i);
 				sb.append("&gt;");
-				i = j + 1;
+			} else {
 				continue;
 			}
-			sb.append(ch);
+			i = j + 1;
 		}
-		return sb.toString();
+		sb.append(c, i, c.length - i);
 	}
 }
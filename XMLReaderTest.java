@@ -70,4 +70,24 @@ public class XMLReaderTest extends TestCase {
 		s = XMLReader.convertOutputEscapedChars("><");
 		assertTrue(s.equals("&gt;&lt;"));
 	}
+
+	public void testEscapedCharsFastPath() {
+		String s = "nothing to convert";
+		assertSame(s, XMLReader.convertInputEscapedChars(s));
+		assertSame(s, XMLReader.convertOutputEscapedChars(s));
+		s = "<v>a &amp; b</v>";
+		assertEquals("a & b", XMLReader.convertInputEscapedChars(s, 3, s.length() - 4));
+		assertEquals("x", XMLReader.convertInputEscapedChars("<v>x</v>", 3, 4));
+	}
+
+	public void testUnknownAmpersand() {
+		String s;
+		s = XMLReader.convertInputEscapedChars("A & B &lt;C&gt; &amp");
+		assertEquals("A & B <C> &amp", s);
+		s = XMLReader.convertInputEscapedChars("&amp;lt;");
+		assertEquals("&lt;", s);
+		s = XMLReader.convertOutputEscapedChars("A & B <C>");
+		assertEquals("A &amp; B &lt;C&gt;", s);
+		assertEquals("A & B <C>", XMLReader.convertInputEscapedChars(s));
+	}
 }
@@ -20,7 +20,14 @@
 
 package PatchConversion;
 
-interface XMLTag {
+import java.io.*;
+
+interface XMLTag extends Copyable {
 	boolean readXML(String xml) throws PatchDefinitionException;
-	String writeXML() throws PatchDefinitionException;
+	/**
+	 * read tag from an index of the XML, looking only inside element
+	 * number within (or everywhere, if within is -1)
+	 */
+	boolean readXML(XMLTagIndex index, int within) throws PatchDefinitionException;
+	void writeXML(XMLWriter xw) throws PatchDefinitionException, IOException;
 }
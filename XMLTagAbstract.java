@@ -20,6 +20,9 @@
 
 package PatchConversion;
 
+import java.io.*;
+import java.util.*;
+
 public abstract class XMLTagAbstract implements XMLTag {
 	protected String name;
 	protected String attr;
@@ -34,52 +37,50 @@ public abstract class XMLTagAbstract implements XMLTag {
 	}
 
 	public boolean readXML(String xml) throws PatchDefinitionException {
-		int start, end, valueStart;
-		
-		start = xml.indexOf("<" + name);
-		if (start == -1) {
+		return readXML(new XMLTagIndex(xml), -1);
+	}
+
+	public boolean readXML(XMLTagIndex index, int within) throws PatchDefinitionException {
+		int e = index.find(name, within);
+		if (e == -1) {
 			System.out.println("begin tag <" + name + "> not found");
 			return false;
 		}
-		if (attr == null) {
-			valueStart = start + name.length() + 2;
-		} else {
-			start = xml.indexOf(attr + ">");
-			if (start == -1) {
-				System.out.println("attribute '" + attr + "' for begin tag <" +
-						name + "> not found");
-				return false;
-			} else {
-				valueStart = start + attr.length() + 1;
-			}
+		if (attr != null && attr.equals(index.getAttr(e)) == false) {
+			System.out.println("attribute '" + attr + "' for begin tag <" +
+					name + "> not found");
+			return false;
 		}
-		end = xml.indexOf("</" + name + ">");
-		if (end == -1) {
+		if (index.getValueEnd(e) == -1) {
 			System.out.println("end tag </" + name + "> not found");
 			return false;
 		}
-		String s = xml.substring(valueStart, end);
-		readValue(s);
+		readValue(index, e);
 		return true;
 	}
 
+	/**
+	 * read value of element e; a group reads its children from the index
+	 */
+	void readValue(XMLTagIndex index, int e) throws PatchDefinitionException {
+		readValue(index.getText(e));
+	}
+
 	void readValue(String s) throws PatchDefinitionException {
 		throw new PatchDefinitionException("This function of abstract class should never be used");
 	}
 
-	public String writeXML() throws PatchDefinitionException {
-		StringBuffer sb = new StringBuffer("<" + name);
-		if (attr == null) {
-			sb.append(">");
-		} else {
-			sb.append(" " + attr + ">");
-		}
-		sb.append(writeValue());
-		sb.append("</" + name + ">");
-		return sb.toString();
+	public void writeXML(XMLWriter xw) throws PatchDefinitionException, IOException {
+		xw.element(name, attr, writeValue());
 	}
 
 	String writeValue() throws PatchDefinitionException {
 		throw new PatchDefinitionException("This function of abstract class should never be used");
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		Object o = super.clone();
+		copies.put(this, o);
+		return o;
+	}
 }
@@ -20,6 +20,8 @@
 
 package PatchConversion;
 
+import java.util.*;
+
 public class XMLTagFixed extends XMLTagAbstract {
 	private String value;
 
@@ -39,4 +41,12 @@ public class XMLTagFixed extends XMLTagAbstract {
 	String writeValue() {
 		return value;
 	}
+
+	/**
+	 * Fixed tag never changes, so the copy can share it
+	 */
+	public Object copy(IdentityHashMap copies) {
+		copies.put(this, this);
+		return this;
+	}
 }
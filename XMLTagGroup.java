@@ -20,6 +20,7 @@
 
 package PatchConversion;
 
+import java.io.*;
 import java.util.*;
 
 public class XMLTagGroup extends XMLTagAbstract {
@@ -50,21 +51,29 @@ public class XMLTagGroup extends XMLTagAbstract {
 	}
 
 	void readValue(String s) throws PatchDefinitionException {
+		XMLTagIndex index = new XMLTagIndex(s);
 		for (int i = 0; i < children.size(); i++) {
-			((XMLTag)children.get(i)).readXML(s);
+			((XMLTag)children.get(i)).readXML(index, -1);
 		}
 	}
 
-	String writeValue() throws PatchDefinitionException {
-		String s;
-		StringBuffer sb = new StringBuffer();
+	void readValue(XMLTagIndex index, int e) throws PatchDefinitionException {
 		for (int i = 0; i < children.size(); i++) {
-			s = ((XMLTag)children.get(i)).writeXML();
-			if (s.equals("") == false) {
-				sb.append(System.getProperty("line.separator") + s);
-			}
+			((XMLTag)children.get(i)).readXML(index, e);
 		}
-		sb.append(System.getProperty("line.separator"));
-		return sb.toString();
+	}
+
+	public void writeXML(XMLWriter xw) throws PatchDefinitionException, IOException {
+		xw.startTag(name, attr);
+		for (int i = 0; i < children.size(); i++) {
+			((XMLTag)children.get(i)).writeXML(xw);
+		}
+		xw.endTag(name);
+	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		XMLTagGroup xtg = (XMLTagGroup)super.copy(copies);
+		xtg.children = Util.copyList(children, copies);
+		return xtg;
 	}
 }
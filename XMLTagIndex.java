@@ -0,0 +1,206 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * Index of every element in an XML string, built in one pass, so tags can
+ * be looked up by name without rescanning the string each time (as
+ * XMLReader.getTagValue() does).  Each element is identified by a number,
+ * and a lookup can be limited to the elements inside another one.
+ * Like getTagValue(), names are case sensitive and the first element with
+ * the name wins.
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.util.*;
+
+class XMLTagIndex {
+	private String xml;
+	private HashMap names; // name -> Integer number of first element
+	private int count;
+	// for each element: offsets of contents and attributes, and number of
+	// next element with same name (or -1)
+	private int valueStart[], valueEnd[], attrStart[], attrEnd[], nextSame[];
+	// for the first element with each name: number of the last one, so
+	// the next one can be appended without walking the nextSame chain
+	private int lastSame[];
+
+	XMLTagIndex(String pXml) {
+		this(pXml, 0, pXml.length());
+	}
+
+	/**
+	 * index only the part of pXml between start and end
+	 */
+	XMLTagIndex(String pXml, int start, int end) {
+		XMLPullParser xp = new XMLPullParser(pXml, start, end);
+		int ev, e, d, top = 0;
+		int open[] = new int[16]; // number of each open element
+		Integer first;
+		String s;
+
+		xml = pXml;
+		names = new HashMap();
+		grow(32);
+		while ((ev = xp.next()) != XMLPullParser.END_DOCUMENT) {
+			d = xp.getDepth();
+			if (ev == XMLPullParser.START_TAG) {
+				if (count == valueStart.length) {
+					grow(count * 2);
+				}
+				e = count++;
+				valueStart[e] = xp.getValueStart();
+				valueEnd[e] = -1;
+				attrStart[e] = xp.getAttrStart();
+				attrEnd[e] = xp.getAttrEnd();
+				nextSame[e] = -1;
+				s = xp.getName();
+				first = (Integer)names.get(s);
+				if (first == null) {
+					names.put(s, new Integer(e));
+					lastSame[e] = e;
+				} else {
+					int i = first.intValue();
+					nextSame[lastSame[i]] = e;
+					lastSame[i] = e;
+				}
+				if (d > open.length) {
+					int a[] = new int[open.length * 2];
+					System.arraycopy(open, 0, a, 0, open.length);
+					open = a;
+				}
+				open[d - 1] = e;
+				top = d;
+			} else {
+				// the end tag may also close elements left open inside it
+				for (int i = d; i < top; i++) {
+					valueEnd[open[i]] = xp.getValueEnd();
+				}
+				top = d;
+			}
+		}
+	}
+
+	private void grow(int n) {
+		int a[][] = { valueStart, valueEnd, attrStart, attrEnd, nextSame, lastSame };
+		for (int i = 0; i < a.length; i++) {
+			int b[] = new int[n];
+			if (a[i] != null) {
+				System.arraycopy(a[i], 0, b, 0, count);
+			}
+			a[i] = b;
+		}
+		valueStart = a[0];
+		valueEnd = a[1];
+		attrStart = a[2];
+		attrEnd = a[3];
+		nextSame = a[4];
+		lastSame = a[5];
+	}
+
+	/**
+	 * @return number of first element called name, or -1 if none
+	 */
+	int find(String name) {
+		Integer first = (Integer)names.get(name);
+		if (first == null) {
+			return -1;
+		}
+		return first.intValue();
+	}
+
+	/**
+	 * @param within number of element to search inside, or -1 for all
+	 * @return number of first element called name inside it, or -1 if none
+	 */
+	int find(String name, int within) {
+		int e = find(name);
+		if (within == -1) {
+			return e;
+		}
+		while (e != -1 && (valueStart[e] <= valueStart[within] ||
+				(valueEnd[within] != -1 && valueStart[e] > valueEnd[within]))) {
+			e = nextSame[e];
+		}
+		return e;
+	}
+
+	/**
+	 * @return contents of the first element called name, or null if not
+	 * found; same as XMLReader.getTagValue()
+	 */
+	String getValue(String name) {
+		int e = find(name);
+		if (e == -1 || valueEnd[e] == -1) {
+			return null;
+		}
+		return getValue(e);
+	}
+
+	/**
+	 * @return contents of element e, or null if it has no end tag
+	 */
+	String getValue(int e) {
+		if (valueEnd[e] == -1) {
+			return null;
+		}
+		return xml.substring(valueStart[e], valueEnd[e]);
+	}
+
+	/**
+	 * @return contents of element e with "&amp;" converted to "&", etc, or
+	 * null if it has no end tag
+	 */
+	String getText(int e) {
+		if (valueEnd[e] == -1) {
+			return null;
+		}
+		return XMLReader.convertInputEscapedChars(xml, valueStart[e], valueEnd[e]);
+	}
+
+	/**
+	 * @return attributes of element e, or null if it has none
+	 */
+	String getAttr(int e) {
+		if (attrStart[e] == -1) {
+			return null;
+		}
+		return xml.substring(attrStart[e], attrEnd[e]);
+	}
+
+	/**
+	 * @return string indexed, which all offsets refer to
+	 */
+	String getXML() {
+		return xml;
+	}
+
+	int getValueStart(int e) {
+		return valueStart[e];
+	}
+
+	/**
+	 * @return offset of end tag of element e, or -1 if it has none
+	 */
+	int getValueEnd(int e) {
+		return valueEnd[e];
+	}
+}
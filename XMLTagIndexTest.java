@@ -0,0 +1,79 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * JUnit tests for XMLTagIndex
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import junit.framework.*;
+
+public class XMLTagIndexTest extends TestCase {
+
+	public XMLTagIndexTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(XMLTagIndexTest.class);
+	}
+
+	public void testGetValue() {
+		String xml = "<a><rate>1</rate><LFO1><rate>2</rate></LFO1>" +
+				"<LFO2 id=\"x\"><rate>3</rate><name>A & <k></name></LFO2></a>";
+		XMLTagIndex xi = new XMLTagIndex(xml);
+		assertEquals(XMLReader.getTagValue(xml, "rate"), xi.getValue("rate"));
+		assertEquals(XMLReader.getTagValue(xml, "LFO1"), xi.getValue("LFO1"));
+		assertEquals("A & <k>", xi.getValue("name"));
+		assertNull(xi.getValue("RATE"));
+		assertNull(xi.getValue("missing"));
+	}
+
+	public void testFindWithin() {
+		String xml = "<a><rate>1</rate><LFO1><rate>2</rate></LFO1>" +
+				"<LFO2 id=\"x\"><rate>3</rate></LFO2><LFO3/></a>";
+		XMLTagIndex xi = new XMLTagIndex(xml);
+		int lfo2 = xi.find("LFO2");
+		assertEquals("1", xi.getValue(xi.find("rate", -1)));
+		assertEquals("2", xi.getValue(xi.find("rate", xi.find("LFO1"))));
+		assertEquals("3", xi.getValue(xi.find("rate", lfo2)));
+		assertEquals(-1, xi.find("rate", xi.find("LFO3")));
+		assertEquals("id=\"x\"", xi.getAttr(lfo2));
+		assertNull(xi.getAttr(xi.find("LFO1")));
+		assertEquals("", xi.getValue(xi.find("LFO3")));
+	}
+
+	public void testTagGroup() throws PatchDefinitionException {
+		SynthParmRange spr1 = new SynthParmRange("rate", 0, 127, new SysexParmOffset(0, 0));
+		SynthParmRange spr2 = new SynthParmRange("rate", 0, 127, new SysexParmOffset(1, 0));
+		XMLTagGroup top = new XMLTagGroup("a");
+		XMLTagGroup xtg1 = new XMLTagGroup("LFO1");
+		XMLTagGroup xtg2 = new XMLTagGroup("LFO2");
+		xtg1.add(new XMLTagValue("rate", spr1));
+		xtg2.add(new XMLTagValue("rate", spr2));
+		top.add(xtg1);
+		top.add(xtg2);
+		assertTrue(top.readXML("<a><LFO1><rate>5</rate></LFO1><LFO2><rate>7</rate></LFO2></a>"));
+		assertEquals(5, spr1.getIntValue());
+		assertEquals(7, spr2.getIntValue());
+	}
+}
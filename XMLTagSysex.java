@@ -20,45 +20,177 @@
 
 package PatchConversion;
 
+import java.io.*;
+import java.util.*;
+
 public class XMLTagSysex implements XMLTag {
+	private static final String ls = System.getProperty("line.separator");
+	private static final char HEX[] = "0123456789ABCDEF".toCharArray();
+	private static final byte HEX_VALUE[] = new byte['f' + 1]; // -1 if not a digit
 	private SynthPatch sp;
 
+	static {
+		Arrays.fill(HEX_VALUE, (byte)-1);
+		for (int i = 0; i < 16; i++) {
+			HEX_VALUE[HEX[i]] = (byte)i;
+			HEX_VALUE[Character.toLowerCase(HEX[i])] = (byte)i;
+		}
+	}
+
 	XMLTagSysex(SynthPatch pSp) {
 		sp = pSp;
 	}
 
 	public static String byteToHexStr(byte b) {
-		String nibl[] = { "0", "1", "2", "3", "4", "5", "6", "7",
-						"8", "9", "A", "B", "C", "D", "E", "F" };
-		return nibl[(b & 0xF0) >>> 4] + nibl[b & 0x0F];
+		return new String(new char[] { HEX[(b & 0xF0) >>> 4], HEX[b & 0x0F] });
 	}
 
+	/**
+	 * does nothing: the sysex block is read by readSourceXML(), which
+	 * decides whether to use it before the rest of the source tags are
+	 * read, so reading it again here would overwrite those tags
+	 */
 	public boolean readXML(String xml) {
-		return false;
+		return true;
 	}
 
-	public String writeXML() {
+	public boolean readXML(XMLTagIndex index, int within) {
+		return true;
+	}
+
+	/**
+	 * decode the first sysex block inside element within (-1 for anywhere)
+	 * @return sysex bytes, or null if there's no block, it has a character
+	 * which isn't a hex digit, or its length doesn't match its attribute
+	 */
+	static byte[] readSysex(XMLTagIndex index, int within) {
+		int e, len, n;
+		String attr;
+		byte syx[];
+
+		e = index.find("sysex", within);
+		if (e == -1 || index.getValueEnd(e) == -1) {
+			return null;
+		}
+		len = -1;
+		attr = index.getAttr(e);
+		if (attr != null) {
+			n = attr.indexOf("length=\"");
+			if (n != -1) {
+				len = 0;
+				for (n += 8; n < attr.length() && Character.isDigit(attr.charAt(n)); n++) {
+					len = len * 10 + (attr.charAt(n) - '0');
+				}
+			}
+		}
+		syx = new byte[(len == -1) ?
+				(index.getValueEnd(e) - index.getValueStart(e)) / 2 : len];
+		n = hexToBytes(index.getXML(), index.getValueStart(e), index.getValueEnd(e), syx, 0);
+		if (n == -1 || (len != -1 && n != len)) {
+			return null;
+		}
+		if (n < syx.length) {
+			byte b[] = new byte[n];
+			System.arraycopy(syx, 0, b, 0, n);
+			syx = b;
+		}
+		return syx;
+	}
+
+	/**
+	 * decode pairs of hex digits between start and end of s into buf,
+	 * skipping whitespace between pairs
+	 * @return number of bytes decoded, or -1 if s has any other character,
+	 * an odd digit, or more bytes than fit in buf
+	 */
+	static int hexToBytes(String s, int start, int end, byte buf[], int offset) {
+		int i, hi, lo;
+		int j = offset;
+		char ch;
+
+		for (i = start; i < end; i++) {
+			ch = s.charAt(i);
+			if (ch == ' ' || ch == '\n' || ch == '\r' || ch == '\t') {
+				continue;
+			}
+			if (i + 1 == end || j == buf.length) {
+				return -1;
+			}
+			hi = hexValue(ch);
+			lo = hexValue(s.charAt(++i));
+			if (hi == -1 || lo == -1) {
+				return -1;
+			}
+			buf[j++] = (byte)((hi << 4) | lo);
+		}
+		return j - offset;
+	}
+
+	private static int hexValue(char ch) {
+		return (ch < HEX_VALUE.length) ? HEX_VALUE[ch] : -1;
+	}
+
+	/**
+	 * write bytes as hex digits into buf, 20 to a line in groups of 5 the
+	 * way they appear in the sysex block
+	 * @return position in buf after the last character written
+	 */
+	static int bytesToHex(byte syx[], char buf[], int pos) {
 		int i, j;
-		StringBuffer sb = new StringBuffer();
+		char lsc[] = ls.toCharArray();
 
-		sb.append("  <sysex length=\"" + sp.getSysex().length + "\">" + System.getProperty("line.separator"));
-		for (i = 0, j = 1; i < sp.getSysex().length; i++, j++) {
+		for (i = 0, j = 1; i < syx.length; i++, j++) {
 			if (j == 1) {
-				sb.append("    " + byteToHexStr(sp.getSysex()[i]) + " ");
-			} else if (j == 5 || j == 15) {
-				sb.append(byteToHexStr(sp.getSysex()[i]) + "   ");
+				pos = fill(buf, pos, ' ', 4);
+			}
+			buf[pos++] = HEX[(syx[i] & 0xF0) >>> 4];
+			buf[pos++] = HEX[syx[i] & 0x0F];
+			if (j == 5 || j == 15) {
+				pos = fill(buf, pos, ' ', 3);
 			} else if (j == 10) {
-				sb.append(byteToHexStr(sp.getSysex()[i]) + "    ");
+				pos = fill(buf, pos, ' ', 4);
 			} else if (j < 20) {
-				sb.append(byteToHexStr(sp.getSysex()[i]) + " ");
+				buf[pos++] = ' ';
 			} else {
-				sb.append(byteToHexStr(sp.getSysex()[i]) + System.getProperty("line.separator"));
+				System.arraycopy(lsc, 0, buf, pos, lsc.length);
+				pos += lsc.length;
 				j = 0;
 			}
 		}
-		if (j > 2)
-		sb.append(System.getProperty("line.separator"));
-		sb.append("  </sysex>");
-		return sb.toString();
+		return pos;
+	}
+
+	private static int fill(char buf[], int pos, char ch, int n) {
+		for (int i = 0; i < n; i++) {
+			buf[pos++] = ch;
+		}
+		return pos;
+	}
+
+	public void writeXML(XMLWriter xw) throws IOException {
+		byte syx[] = sp.getSysex();
+		// at most 4 leading spaces, 2 digits and 4 trailing spaces per byte
+		char buf[] = new char[syx.length * 10 + 3 * ls.length() + 2];
+		int pos;
+
+		ls.getChars(0, ls.length(), buf, 0);
+		pos = bytesToHex(syx, buf, ls.length());
+		// bytesToHex breaks the line after each full row of 20 bytes; a
+		// last, partial row gets a line break only if it holds 2 or more
+		// bytes, which is what the original writer produced
+		if (syx.length % 20 > 1) {
+			ls.getChars(0, ls.length(), buf, pos);
+			pos += ls.length();
+		}
+		buf[pos++] = ' ';
+		buf[pos++] = ' ';
+		xw.element("sysex", "length=\"" + syx.length + "\"", new String(buf, 0, pos));
+	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		XMLTagSysex xt = (XMLTagSysex)super.clone();
+		copies.put(this, xt);
+		xt.sp = (SynthPatch)Util.copyOf(sp, copies);
+		return xt;
 	}
 }
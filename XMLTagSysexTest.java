@@ -0,0 +1,105 @@
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * JUnit tests for XMLTagSysex
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.util.*;
+import junit.framework.*;
+
+public class XMLTagSysexTest extends TestCase {
+
+	public XMLTagSysexTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(XMLTagSysexTest.class);
+	}
+
+	public void testByteToHexStr() {
+		assertEquals("00", XMLTagSysex.byteToHexStr((byte)0));
+		assertEquals("7F", XMLTagSysex.byteToHexStr((byte)0x7F));
+		assertEquals("F0", XMLTagSysex.byteToHexStr((byte)0xF0));
+	}
+
+	public void testHexRoundTrip() {
+		byte b[] = new byte[256];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (byte)i;
+		}
+		char buf[] = new char[b.length * 10];
+		int len = XMLTagSysex.bytesToHex(b, buf, 0);
+		String s = new String(buf, 0, len);
+		assertTrue(s.startsWith("    00 01 02 03 04   05 06 07 08 09    0A "));
+		byte b2[] = new byte[b.length];
+		assertEquals(b.length, XMLTagSysex.hexToBytes(s, 0, s.length(), b2, 0));
+		assertTrue(Arrays.equals(b, b2));
+		assertEquals(2, XMLTagSysex.hexToBytes(" f0\n7e ", 0, 7, b2, 0));
+		assertEquals((byte)0xF0, b2[0]);
+		assertEquals((byte)0x7E, b2[1]);
+	}
+
+	public void testBadHex() {
+		byte b[] = new byte[4];
+		assertEquals(-1, XMLTagSysex.hexToBytes("F0 7G", 0, 5, b, 0));
+		assertEquals(-1, XMLTagSysex.hexToBytes("F0 7", 0, 4, b, 0));
+		assertEquals(-1, XMLTagSysex.hexToBytes("F0 F 0", 0, 6, b, 0));
+		assertEquals(-1, XMLTagSysex.hexToBytes("00 01 02 03 04", 0, 14, b, 0));
+	}
+
+	public void testReadSysex() {
+		XMLTagIndex xi = new XMLTagIndex("<a><sysex length=\"3\">F0 01 F7</sysex></a>");
+		byte syx[] = XMLTagSysex.readSysex(xi, -1);
+		assertTrue(Arrays.equals(new byte[] { (byte)0xF0, 1, (byte)0xF7 }, syx));
+		xi = new XMLTagIndex("<a><sysex length=\"4\">F0 01 F7</sysex></a>");
+		assertNull(XMLTagSysex.readSysex(xi, -1));
+		xi = new XMLTagIndex("<a><sysex>F0 01 F7</sysex></a>");
+		assertEquals(3, XMLTagSysex.readSysex(xi, -1).length);
+		xi = new XMLTagIndex("<a></a>");
+		assertNull(XMLTagSysex.readSysex(xi, -1));
+	}
+
+	/**
+	 * the sysex block wins over the parm tags when it's present, and the
+	 * parm tags are used when it isn't
+	 */
+	public void testFromXML() throws PatchDefinitionException {
+		NordLead2Prog nl2 = NordLead2Prog.newPatch();
+		nl2.fromSysex(NordLead2Prog.INIT_SYSEX);
+		String xml = Util.formatXML(nl2.toXML(), -1);
+		String edited = xml.replaceFirst("<Resonance>0</Resonance>", "<Resonance>99</Resonance>");
+		assertFalse(edited.equals(xml));
+
+		NordLead2Prog nl2b = NordLead2Prog.newPatch();
+		nl2b.fromXML(edited);
+		assertTrue(Arrays.equals(NordLead2Prog.INIT_SYSEX, nl2b.getSysex()));
+
+		int s = edited.indexOf("<sysex");
+		int e = edited.indexOf("</sysex>") + "</sysex>".length();
+		NordLead2Prog nl2c = NordLead2Prog.newPatch();
+		nl2c.fromXML(edited.substring(0, s) + edited.substring(e));
+		assertFalse(Arrays.equals(NordLead2Prog.INIT_SYSEX, nl2c.getSysex()));
+		assertEquals("99", nl2c.findPgmParm("Resonance").getValue());
+	}
+}
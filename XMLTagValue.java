@@ -20,6 +20,8 @@
 
 package PatchConversion;
 
+import java.util.*;
+
 public class XMLTagValue extends XMLTagAbstract {
 	private SynthParm sp;
 
@@ -35,4 +37,10 @@ public class XMLTagValue extends XMLTagAbstract {
 	String writeValue() {
 		return sp.getValue();
 	}
+
+	public Object copy(IdentityHashMap copies) throws CloneNotSupportedException {
+		XMLTagValue xt = (XMLTagValue)super.copy(copies);
+		xt.sp = (SynthParm)Util.copyOf(sp, copies);
+		return xt;
+	}
 }
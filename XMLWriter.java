@@ -0,0 +1,161 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * Writes XML elements straight to a Writer, so a patch can be streamed out
+ * without building it as a String first.  When formatting, each element
+ * goes on its own line, indented two spaces per level the same way as
+ * Util.formatXML(); an element with no child elements stays on one line.
+ * Element values are escaped ("&" to "&amp;", etc) as they're written.
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.io.*;
+
+class XMLWriter {
+	private static final String ls = System.getProperty("line.separator");
+	private Writer out;
+	private boolean format;
+	private int indentLevel; // level of next element written
+	// start tag held back until we know whether the element has children
+	private String pendingName;
+	private String pendingAttr;
+
+	/**
+	 * Write XML without any line breaks or indentation
+	 */
+	XMLWriter(Writer pOut) {
+		out = pOut;
+		format = false;
+	}
+
+	/**
+	 * Write formatted XML, with top level elements at pIndentLevel; as with
+	 * Util.formatXML(), levels below zero aren't indented
+	 */
+	XMLWriter(Writer pOut, int pIndentLevel) {
+		out = pOut;
+		format = true;
+		indentLevel = pIndentLevel;
+	}
+
+	/**
+	 * write "&lt;?xml ... ?&gt;" declaration or other text which goes on a
+	 * line of its own
+	 */
+	void writeDeclaration(String s) throws IOException {
+		writePending();
+		out.write(s);
+		if (format) {
+			out.write(ls);
+		}
+	}
+
+	void startTag(String name) throws IOException {
+		startTag(name, null);
+	}
+
+	void startTag(String name, String attr) throws IOException {
+		writePending();
+		pendingName = name;
+		pendingAttr = attr;
+	}
+
+	void endTag(String name) throws IOException {
+		if (pendingName != null) {
+			// no children, so write as a single element
+			pendingName = null;
+			element(name, pendingAttr, "");
+			return;
+		}
+		indentLevel--;
+		indent();
+		out.write("</");
+		out.write(name);
+		out.write('>');
+		if (format) {
+			out.write(ls);
+		}
+	}
+
+	/**
+	 * write an element which has no child elements
+	 */
+	void element(String name, String value) throws IOException {
+		element(name, null, value);
+	}
+
+	/**
+	 * a null value is written as "null", as string concatenation would
+	 */
+	void element(String name, String attr, String value) throws IOException {
+		writePending();
+		indent();
+		writeStartTag(name, attr);
+		out.write(XMLReader.convertOutputEscapedChars(String.valueOf(value)));
+		out.write("</");
+		out.write(name);
+		out.write('>');
+		if (format) {
+			out.write(ls);
+		}
+	}
+
+	void flush() throws IOException {
+		writePending();
+		out.flush();
+	}
+
+	/**
+	 * write the held-back start tag of an element which has children
+	 */
+	private void writePending() throws IOException {
+		if (pendingName == null) {
+			return;
+		}
+		indent();
+		writeStartTag(pendingName, pendingAttr);
+		if (format) {
+			out.write(ls);
+		}
+		pendingName = null;
+		indentLevel++;
+	}
+
+	private void writeStartTag(String name, String attr) throws IOException {
+		out.write('<');
+		out.write(name);
+		if (attr != null) {
+			out.write(' ');
+			out.write(attr);
+		}
+		out.write('>');
+	}
+
+	private void indent() throws IOException {
+		if (format) {
+			for (int i = 0; i < indentLevel; i++) {
+				out.write("  ");
+			}
+		}
+	}
+}
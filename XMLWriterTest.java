@@ -0,0 +1,82 @@
+
+/* Synth Patch Conversion
+ * Copyright (C) 2003-4,  Kenneth L. Martinez (kmartin@users.sourceforge.net)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ * 
+ */
+package PatchConversion;
+
+/**
+ * JUnit tests for XMLWriter
+ *
+ * @author Kenneth L. Martinez
+ */
+
+import java.io.*;
+import junit.framework.*;
+
+public class XMLWriterTest extends TestCase {
+
+	public XMLWriterTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return new TestSuite(XMLWriterTest.class);
+	}
+
+	private void write(XMLWriter xw) throws IOException {
+		xw.writeDeclaration("<?xml version=\"1.0\" ?>");
+		xw.startTag("a", "v=\"1\"");
+		xw.element("b", "x & <y>");
+		xw.startTag("c");
+		xw.element("d", null);
+		xw.endTag("c");
+		xw.startTag("e");
+		xw.endTag("e");
+		xw.endTag("a");
+		xw.flush();
+	}
+
+	public void testRaw() throws IOException {
+		StringWriter sw = new StringWriter();
+		write(new XMLWriter(sw));
+		assertEquals("<?xml version=\"1.0\" ?><a v=\"1\"><b>x &amp; &lt;y&gt;</b>" +
+				"<c><d>null</d></c><e></e></a>", sw.toString());
+	}
+
+	public void testFormatted() throws IOException {
+		StringWriter sw = new StringWriter();
+		write(new XMLWriter(sw, 0));
+		String ls = System.getProperty("line.separator");
+		assertEquals("<?xml version=\"1.0\" ?>" + ls + "<a v=\"1\">" + ls +
+				"  <b>x &amp; &lt;y&gt;</b>" + ls + "  <c>" + ls + "    <d>null</d>" + ls +
+				"  </c>" + ls + "  <e></e>" + ls + "</a>" + ls, sw.toString());
+	}
+
+	public void testPatch() throws IOException, PatchDefinitionException {
+		NordLead2Prog nl2 = NordLead2Prog.newPatch();
+		nl2.fromSysex(NordLead2Prog.INIT_SYSEX);
+		nl2.getGenPatch().setPatchName("A & <B>");
+		String expected = Util.formatXML(nl2.toXML(), -1);
+		nl2 = NordLead2Prog.newPatch();
+		nl2.fromSysex(NordLead2Prog.INIT_SYSEX);
+		nl2.getGenPatch().setPatchName("A & <B>");
+		StringWriter sw = new StringWriter();
+		nl2.toXML(sw);
+		assertEquals(expected, sw.toString());
+	}
+}